@@ -1,12 +1,21 @@
 package bearmaps;
 
 
-import bearmaps.utils.graph.streetmap.Node;
+import bearmaps.utils.graph.Components;
+import bearmaps.utils.graph.RouteCache;
+import bearmaps.utils.graph.alt.Landmarks;
+import bearmaps.utils.graph.arcflags.ArcFlags;
+import bearmaps.utils.graph.ch.ContractionHierarchy;
+import bearmaps.utils.graph.ch.HubLabels;
+import bearmaps.utils.graph.chain.ChainGraph;
+import bearmaps.utils.graph.streetmap.GraphSnapshot;
 import bearmaps.utils.graph.streetmap.StreetMapGraph;
-import bearmaps.utils.ps.Point;
-import bearmaps.utils.ps.PointSet;
-import bearmaps.utils.ps.WeirdPointSet;
+import bearmaps.utils.graph.turn.TurnTable;
+import bearmaps.utils.ps.KDTreePointSet;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -16,42 +25,278 @@ import java.util.*;
  * @author Alan Yao, Josh Hug, ________
  */
 public class AugmentedStreetMapGraph extends StreetMapGraph {
-    private HashMap<Point, Node> pnMap;
-    private PointSet ps;
-    private List<Node> nodes;
-    private Trie dictionary;
+    /** Spatial index over the vertices that have at least one outgoing edge. */
+    private KDTreePointSet ps;
+    /**
+     * Spatial index over the vertices of the largest strong component, or
+     * null unless closest is restricted to it.
+     */
+    private volatile KDTreePointSet largestPs;
+    /** Distinct location names in sorted order. */
+    private String[] sortedNames;
+    /** The vertices named sortedNames[i] are locations[nameStarts[i], nameStarts[i + 1]). */
+    private int[] nameStarts;
+    private int[] locations;
+    /** Built offline and read from the snapshot, or null if there is none. */
+    private ContractionHierarchy ch;
+    /**
+     * The contraction hierarchy customized with the travel times under the
+     * latest speed updates, or null if there is no hierarchy. Never persisted.
+     */
+    private volatile ContractionHierarchy travelTimeCh;
+    /** Built offline and read from the snapshot, or null if there are none. */
+    private ArcFlags arcFlags;
+    /** Built offline and mapped from their own file, or null if there are none. */
+    private volatile HubLabels hubLabels;
+    /** Distance tables for the ALT heuristic. */
+    private Landmarks landmarks;
+    /** The graph with its degree-2 chains collapsed. Cheap to build, so never persisted. */
+    private ChainGraph chains;
+    /** Connected components, for answering unreachable queries at once. Never persisted. */
+    private Components components;
+    /** Kinds of turn at intersections, for routing with turn costs. Never persisted. */
+    private TurnTable turns;
+    /** Routes solved on this graph. A reloaded graph starts with an empty cache. */
+    private final RouteCache routeCache = new RouteCache();
 
     public AugmentedStreetMapGraph(String dbPath) {
         super(dbPath);
-        // You might find it helpful to uncomment the line below:
-        nodes = this.getNodes();
-        pnMap = new HashMap<Point, Node>();
-        dictionary = new Trie();
-        List<Point> points = new ArrayList<Point>();
-        for (Node temp : nodes) {
-            if (neighbors(temp.id()).size() > 0) {
-                pnMap.put(new Point(temp.lon(), temp.lat()), temp);
-                points.add(new Point(temp.lon(), temp.lat()));
+        if (GraphSnapshot.isSnapshot(dbPath)) {
+            try {
+                readIndexes(GraphSnapshot.open(dbPath));
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        buildIndexes();
+    }
+
+    private void buildIndexes() {
+        int n = numVertices();
+        int[] routable = new int[n];
+        int numRoutable = 0;
+        List<Integer> named = new ArrayList<>();
+        for (int v = 0; v < n; v++) {
+            if (outEnd(v) > outBegin(v)) {
+                routable[numRoutable++] = v;
+            }
+            String name = name(idOf(v));
+            if (name != null && !name.equals("")) {
+                named.add(v);
             }
-            if (temp.name() != null && temp.name() != "") {
-                dictionary.add(temp.name());
+        }
+        ps = new KDTreePointSet(Arrays.copyOf(routable, numRoutable), lons(), lats());
+
+        named.sort(Comparator.comparing(v -> name(idOf(v))));
+        List<String> distinct = new ArrayList<>();
+        List<Integer> starts = new ArrayList<>();
+        locations = new int[named.size()];
+        for (int i = 0; i < named.size(); i++) {
+            locations[i] = named.get(i);
+            String name = name(idOf(locations[i]));
+            if (distinct.isEmpty() || !distinct.get(distinct.size() - 1).equals(name)) {
+                distinct.add(name);
+                starts.add(i);
             }
         }
-        ps = new WeirdPointSet(points);
+        starts.add(named.size());
+        sortedNames = distinct.toArray(new String[0]);
+        nameStarts = starts.stream().mapToInt(Integer::intValue).toArray();
+        landmarks = Landmarks.select(this, Landmarks.DEFAULT_COUNT);
+        chains = ChainGraph.build(this);
+        components = Components.of(this);
+        turns = TurnTable.build(this);
+    }
+
+    private void readIndexes(GraphSnapshot snapshot) throws IOException {
+        ByteBuffer spatial = snapshot.section(GraphSnapshot.SPATIAL_INDEX);
+        ps = KDTreePointSet.ofOrder(GraphSnapshot.readInts(spatial), lons(), lats());
+        ByteBuffer search = snapshot.section(GraphSnapshot.SEARCH_INDEX);
+        sortedNames = GraphSnapshot.readStrings(search);
+        nameStarts = GraphSnapshot.readInts(search);
+        locations = GraphSnapshot.readInts(search);
+        if (snapshot.hasSection(GraphSnapshot.CONTRACTION_HIERARCHY)) {
+            ch = ContractionHierarchy.read(
+                    snapshot.section(GraphSnapshot.CONTRACTION_HIERARCHY));
+            customizeTravelTimes();
+        }
+        if (snapshot.hasSection(GraphSnapshot.ARC_FLAGS)) {
+            arcFlags = ArcFlags.read(snapshot.section(GraphSnapshot.ARC_FLAGS));
+        }
+        if (snapshot.hasSection(GraphSnapshot.LANDMARKS)) {
+            landmarks = Landmarks.read(snapshot.section(GraphSnapshot.LANDMARKS));
+        } else {
+            landmarks = Landmarks.select(this, Landmarks.DEFAULT_COUNT);
+        }
+        chains = ChainGraph.build(this);
+        components = Components.of(this);
+        turns = TurnTable.build(this);
+    }
+
+    @Override
+    protected void writeSnapshot(GraphSnapshot.Writer snapshot) throws IOException {
+        super.writeSnapshot(snapshot);
+        DataOutputStream spatial = snapshot.section(GraphSnapshot.SPATIAL_INDEX);
+        GraphSnapshot.writeInts(spatial, ps.order());
+        DataOutputStream search = snapshot.section(GraphSnapshot.SEARCH_INDEX);
+        GraphSnapshot.writeStrings(search, sortedNames);
+        GraphSnapshot.writeInts(search, nameStarts);
+        GraphSnapshot.writeInts(search, locations);
+        if (ch != null) {
+            ch.write(snapshot.section(GraphSnapshot.CONTRACTION_HIERARCHY));
+        }
+        if (arcFlags != null) {
+            arcFlags.write(snapshot.section(GraphSnapshot.ARC_FLAGS));
+        }
+        landmarks.write(snapshot.section(GraphSnapshot.LANDMARKS));
+    }
+
+    /** Builds the contraction hierarchy used by Router. Takes seconds on a city. */
+    public void buildContractionHierarchy() {
+        ch = ContractionHierarchy.build(this, lons(), lats());
+        customizeTravelTimes();
+    }
+
+    /** Returns the contraction hierarchy, or null if it has not been built. */
+    public ContractionHierarchy contractionHierarchy() {
+        return ch;
+    }
+
+    /**
+     * Returns the contraction hierarchy customized with the current travel
+     * times, or null if there is no hierarchy.
+     */
+    public ContractionHierarchy travelTimeHierarchy() {
+        return travelTimeCh;
+    }
+
+    /**
+     * Same as StreetMapGraph.updateSpeeds, and then customizes the
+     * contraction hierarchy with the new travel times. Only the arc weights
+     * are recomputed, which takes seconds on a city, and queries keep using
+     * the previous hierarchy until they are ready.
+     */
+    @Override
+    public synchronized void updateSpeeds(int[] edges, double[] mph) {
+        super.updateSpeeds(edges, mph);
+        customizeTravelTimes();
+    }
+
+    @Override
+    public synchronized void clearTraffic() {
+        super.clearTraffic();
+        customizeTravelTimes();
+    }
+
+    private synchronized void customizeTravelTimes() {
+        ContractionHierarchy distances = ch;
+        travelTimeCh = distances == null ? null : distances.customized(travelTimes());
+    }
+
+    /**
+     * Builds the arc flags Router uses when there is no contraction
+     * hierarchy. Takes one Dijkstra per cell boundary vertex, spread over
+     * all cores.
+     */
+    public void buildArcFlags() {
+        arcFlags = ArcFlags.build(this, lons(), lats(), ArcFlags.DEFAULT_CELLS);
+    }
+
+    /** Returns the arc flags, or null if they have not been built. */
+    public ArcFlags arcFlags() {
+        return arcFlags;
+    }
+
+    /** Makes Router answer distance queries with LABELS, which must be of this graph. */
+    public void useHubLabels(HubLabels labels) {
+        if (labels != null && labels.size() != numVertices()) {
+            throw new IllegalArgumentException("Hub labels are of a different graph.");
+        }
+        hubLabels = labels;
+    }
+
+    /** Returns the hub labels, or null if there are none. */
+    public HubLabels hubLabels() {
+        return hubLabels;
+    }
+
+    /** Returns the cache Router keeps the routes solved on this graph in. */
+    public RouteCache routeCache() {
+        return routeCache;
+    }
+
+    /** Returns the graph with its degree-2 chains collapsed, which Router searches. */
+    public ChainGraph chains() {
+        return chains;
+    }
+
+    /** Returns the connected components of this graph. */
+    public Components components() {
+        return components;
+    }
+
+    /** Returns the kinds of turn at the intersections of this graph. */
+    public TurnTable turnTable() {
+        return turns;
+    }
+
+    /**
+     * Sets whether closest only returns vertices of the largest strong
+     * component, from which every other vertex of it can be reached and
+     * back. Keeps a click near a parking-lot fragment or a one-way stub from
+     * snapping to a vertex most of the map cannot route to.
+     */
+    public synchronized void snapToLargestComponent(boolean restrict) {
+        if (!restrict) {
+            largestPs = null;
+            return;
+        }
+        int c = components.largest();
+        int[] members = new int[components.size(c)];
+        int k = 0;
+        for (int v = 0; v < numVertices(); v++) {
+            if (components.component(v) == c) {
+                members[k++] = v;
+            }
+        }
+        largestPs = new KDTreePointSet(members, lons(), lats());
+    }
+
+    /** Returns the landmark tables for the ALT heuristic. */
+    public Landmarks landmarks() {
+        return landmarks;
+    }
+
+    private double[] lons() {
+        double[] lons = new double[numVertices()];
+        for (int v = 0; v < lons.length; v++) {
+            lons[v] = lonAt(v);
+        }
+        return lons;
+    }
+
+    private double[] lats() {
+        double[] lats = new double[numVertices()];
+        for (int v = 0; v < lats.length; v++) {
+            lats[v] = latAt(v);
+        }
+        return lats;
     }
 
 
     /**
      * For Project Part II
-     * Returns the vertex closest to the given longitude and latitude.
+     * Returns the vertex closest to the given longitude and latitude, among
+     * those of the largest strong component if snapToLargestComponent is set.
      *
      * @param lon The target longitude.
      * @param lat The target latitude.
      * @return The id of the node in the graph closest to the target.
      */
     public long closest(double lon, double lat) {
-        Point toFind = ps.nearest(lon, lat);
-        return pnMap.get(toFind).id();
+        KDTreePointSet largest = largestPs;
+        return idOf((largest != null ? largest : ps).nearestId(lon, lat));
     }
 
 
@@ -69,7 +314,14 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
             return null;
         } else {
             String prefix2 = prefix.substring(0,1).toUpperCase() + prefix.substring(1);
-            return dictionary.keysWithPrefix(prefix2);
+            int from = Arrays.binarySearch(sortedNames, prefix2);
+            boolean exact = from >= 0;
+            from = exact ? from + 1 : -from - 1;
+            List<String> rtn = new ArrayList<>();
+            for (int i = from; i < sortedNames.length && sortedNames[i].startsWith(prefix2); i++) {
+                rtn.add(sortedNames[i]);
+            }
+            return exact || !rtn.isEmpty() ? rtn : null;
         }
     }
 
@@ -88,22 +340,21 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
      * "id" -> Number, The id of the node. <br>
      */
     public List<Map<String, Object>> getLocations(String locationName) {
-        if (dictionary.contains(locationName)){
-            List<Map<String, Object>> toReutrn = new LinkedList<Map<String, Object>>();
-            for (Node temp : nodes){
-                if (temp.name().equals(locationName)){
-                    HashMap<String,Object> toInsert = new HashMap<String,Object>();
-                    toInsert.put("lat",temp.lat());
-                    toInsert.put("lon",temp.lon());
-                    toInsert.put("name",temp.name());
-                    toInsert.put("id",temp.id());
-                    toReutrn.add(toInsert);
-                }
-            }
-            return toReutrn;
-        }else{
+        int i = locationName == null ? -1 : Arrays.binarySearch(sortedNames, locationName);
+        if (i < 0) {
             return null;
         }
+        List<Map<String, Object>> toReturn = new LinkedList<>();
+        for (int k = nameStarts[i]; k < nameStarts[i + 1]; k++) {
+            long id = idOf(locations[k]);
+            HashMap<String, Object> toInsert = new HashMap<>();
+            toInsert.put("lat", lat(id));
+            toInsert.put("lon", lon(id));
+            toInsert.put("name", name(id));
+            toInsert.put("id", id);
+            toReturn.add(toInsert);
+        }
+        return toReturn;
     }
 
 
@@ -118,120 +369,4 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
         return s.replaceAll("[^a-zA-Z ]", "").toLowerCase();
     }
 
-
-    private class Trie {
-        TrieNode root;
-
-        public Trie() {
-            root = new TrieNode();
-        }
-
-        public void clear() {
-            root = new TrieNode();
-        }
-
-        public boolean contains(String key) {
-            if (key == null || key.equals("")) {
-                return false;
-            } else {
-                return root.contains(key);
-            }
-        }
-
-        public void add(String key) {
-            if (key != null && !key.equals("")) {
-                root.add(key);
-            }
-        }
-
-        public List<String> keysWithPrefix(String prefix) {
-            if (prefix == null || prefix.equals("")) {
-                return null;
-            } else {
-                if (longestPrefixOf(prefix).equals(prefix)) {
-                    ArrayList<String> rtn = new ArrayList<String>();
-                    String temp = prefix;
-                    TrieNode pointer = root;
-                    while (temp.length() > 0) {
-                        pointer = pointer.children.get(String.valueOf(temp.charAt(0)));
-                        temp = temp.substring(1);
-                    }
-                    pointer.prefixListHelper(prefix, rtn);
-                    return rtn;
-                } else {
-                    return null;
-                }
-            }
-        }
-
-        public String longestPrefixOf(String key) {
-            if (key == null || key.equals("")) {
-                return "";
-            } else {
-                return root.longestPrefixOf(key);
-            }
-        }
-
-        private class TrieNode {
-            public HashMap<String, TrieNode> children;
-            boolean flag;
-
-            public TrieNode() {
-                children = new HashMap<String, TrieNode>();
-                flag = false;
-            }
-
-            public void add(String temp) {
-                String toInsert = String.valueOf(temp.charAt(0));
-                if (temp.length() == 1) {
-                    if (!children.containsKey(toInsert)) {
-                        children.put(toInsert, new TrieNode());
-                    }
-                    children.get(toInsert).flag = true;
-                } else {
-                    if (!children.containsKey(toInsert)) {
-                        children.put(toInsert, new TrieNode());
-                    }
-                    children.get(toInsert).add(temp.substring(1));
-                }
-            }
-
-            public boolean contains(String key) {
-                String toFind = String.valueOf(key.charAt(0));
-                if (children.containsKey(toFind)) {
-                    if (key.length() > 1) {
-                        return children.get(toFind).contains(key.substring(1));
-                    } else {
-                        return children.get(toFind).flag;
-                    }
-                } else {
-                    return false;
-                }
-            }
-
-            public String longestPrefixOf(String key) {
-                String toFind = String.valueOf(key.charAt(0));
-                if (children.containsKey(toFind)) {
-                    if (key.length() > 1) {
-                        return toFind + children.get(toFind).longestPrefixOf(key.substring(1));
-                    } else {
-                        return toFind;
-                    }
-                }
-                return "";
-            }
-
-            public void prefixListHelper(String word, ArrayList<String> list) {
-                if (!children.isEmpty()) {
-                    for (HashMap.Entry<String, TrieNode> entry : children.entrySet()) {
-                        if (entry.getValue().flag) {
-                            list.add(word + entry.getKey());
-                        }
-                        entry.getValue().prefixListHelper(word + entry.getKey(), list);
-                    }
-                }
-            }
-        }
-    }
-
 }
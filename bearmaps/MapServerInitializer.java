@@ -2,7 +2,10 @@ package bearmaps;
 
 import bearmaps.server.handler.APIRouteHandler;
 import bearmaps.utils.Constants;
+import bearmaps.utils.graph.ch.HubLabels;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -14,6 +17,9 @@ import static spark.Spark.*;
  */
 public class MapServerInitializer {
 
+    /** Threads on top of the lanes' capacity, for Jetty and static files. */
+    private static final int SERVER_THREADS = 16;
+
 
     /**
      * Place any initialization statements that will be run before the server main loop here.
@@ -21,8 +27,30 @@ public class MapServerInitializer {
      **/
     public static void initializeServer(Map<String, APIRouteHandler> apiHandlers){
 
-        Constants.SEMANTIC_STREET_GRAPH = new AugmentedStreetMapGraph(Constants.OSM_DB_PATH);
+        String dbPath = new File(Constants.SNAPSHOT_PATH).exists()
+                ? Constants.SNAPSHOT_PATH : Constants.OSM_DB_PATH;
+        Constants.SEMANTIC_STREET_GRAPH = new AugmentedStreetMapGraph(dbPath);
+        Constants.SEMANTIC_STREET_GRAPH.snapToLargestComponent(
+                Constants.SNAP_TO_LARGEST_COMPONENT);
+        if (new File(Constants.HUB_LABELS_PATH).exists()) {
+            try {
+                Constants.SEMANTIC_STREET_GRAPH.useHubLabels(
+                        HubLabels.open(Constants.HUB_LABELS_PATH));
+            } catch (IOException | IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+        }
         staticFileLocation("/page");
+        /* Enough threads for every lane to be full at once, plus some for
+           Jetty itself and static files, so that a full lane rejects its
+           requests instead of holding threads other paths need. */
+        int threads = SERVER_THREADS;
+        for (APIRouteHandler<?, ?> handler : apiHandlers.values()) {
+            if (handler.lane() != null) {
+                threads += handler.lane().capacity();
+            }
+        }
+        threadPool(threads);
         /* Allow for all origin requests (since this is not an authenticated server, we do not
          * care about CSRF).  */
         before((request, response) -> {
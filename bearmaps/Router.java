@@ -1,18 +1,41 @@
 package bearmaps;
 
-import bearmaps.utils.graph.AStarSolver;
+import bearmaps.utils.graph.AlternativeRoutes;
+import bearmaps.utils.graph.BidirectionalAStarSolver;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.IndexedAStarSolver;
+import bearmaps.utils.graph.IndexedGraph;
+import bearmaps.utils.graph.LowerBound;
+import bearmaps.utils.graph.NoPathSolver;
+import bearmaps.utils.graph.OneToMany;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.alt.Landmarks;
+import bearmaps.utils.graph.ch.CHSolver;
+import bearmaps.utils.graph.ch.ContractionHierarchy;
+import bearmaps.utils.graph.ch.HubLabels;
+import bearmaps.utils.graph.ch.ManyToMany;
+import bearmaps.utils.graph.chain.ChainSolver;
+import bearmaps.utils.graph.streetmap.RoutingProfile;
+import bearmaps.utils.graph.streetmap.TravelTimeGraph;
+import bearmaps.utils.graph.turn.EdgeBasedAStarSolver;
+import bearmaps.utils.graph.turn.TurnCosts;
 import org.apache.commons.math3.geometry.spherical.twod.Vertex;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
 /**
  * This class acts as a helper for the RoutingAPIHandler.
  * @author Josh Hug, ______
  */
 public class Router {
+    /** Seconds a search may take when the caller gives no deadline. */
+    public static final double DEFAULT_TIMEOUT = 20;
 
     /**
      * Overloaded method for shortestPath that has flexibility to specify a solver
@@ -27,9 +50,297 @@ public class Router {
      */
     public static List<Long> shortestPath(AugmentedStreetMapGraph g, double stlon, double stlat,
                                           double destlon, double destlat) {
+        return shortestPathSolver(g, stlon, stlat, destlon, destlat).solution();
+    }
+
+    /**
+     * Returns the length of the shortest path from the node closest to the
+     * start location to the node closest to the destination location, or
+     * infinity if there is none. Answered from the hub labels without any
+     * search if the graph has them, and with shortestPathSolver if not.
+     * @param g The graph to use.
+     * @param stlon The longitude of the start location.
+     * @param stlat The latitude of the start location.
+     * @param destlon The longitude of the destination location.
+     * @param destlat The latitude of the destination location.
+     * @return The distance along the shortest path.
+     */
+    public static double distance(AugmentedStreetMapGraph g, double stlon, double stlat,
+                                  double destlon, double destlat) {
+        HubLabels labels = g.hubLabels();
+        if (labels != null) {
+            return labels.distance(g.indexOf(g.closest(stlon, stlat)),
+                    g.indexOf(g.closest(destlon, destlat)));
+        }
+        ShortestPathsSolver<Long> solver = shortestPathSolver(g, stlon, stlat, destlon, destlat);
+        return solver.outcome() == SolverOutcome.SOLVED
+                ? solver.solutionWeight() : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Same as shortestPath, but returns the solver so callers can also read its
+     * statistics. Routes are cached by their snapped endpoints, and a cached
+     * route comes back as a solver that explored no states, as does a route
+     * the components of the graph show cannot exist. Otherwise uses
+     * the contraction hierarchy if the graph has one, and if not A* bounded
+     * by the straight-line distance and the landmarks, pruned by the arc
+     * flags if the graph has them and on the graph with its degree-2 chains
+     * collapsed if not.
+     */
+    public static ShortestPathsSolver<Long> shortestPathSolver(AugmentedStreetMapGraph g,
+                                                               double stlon, double stlat,
+                                                               double destlon, double destlat) {
+        return shortestPathSolver(g, stlon, stlat, destlon, destlat,
+                Deadline.after(DEFAULT_TIMEOUT));
+    }
+
+    /**
+     * Same as shortestPathSolver, but gives up with a TIMEOUT outcome once
+     * DEADLINE expires or is cancelled.
+     */
+    public static ShortestPathsSolver<Long> shortestPathSolver(AugmentedStreetMapGraph g,
+                                                               double stlon, double stlat,
+                                                               double destlon, double destlat,
+                                                               Deadline deadline) {
+        long src = g.closest(stlon, stlat);
+        long dest = g.closest(destlon, destlat);
+        return g.routeCache().get(src, dest, () -> solve(g, src, dest, deadline));
+    }
+
+    /**
+     * Same as shortestPathSolver, but minimizing what PROFILE weighs. A
+     * FASTEST route takes the current travel times, live traffic included,
+     * from the contraction hierarchy customized with them. Without a
+     * hierarchy it is A* on the travel times, with the straight-line and
+     * landmark bounds taken at the top speed. The arc flags, degree-2
+     * chains and route cache all hold lengths and are not used.
+     */
+    public static ShortestPathsSolver<Long> shortestPathSolver(AugmentedStreetMapGraph g,
+                                                               double stlon, double stlat,
+                                                               double destlon, double destlat,
+                                                               RoutingProfile profile,
+                                                               Deadline deadline) {
+        if (profile == RoutingProfile.SHORTEST) {
+            return shortestPathSolver(g, stlon, stlat, destlon, destlat, deadline);
+        }
+        long src = g.closest(stlon, stlat);
+        long dest = g.closest(destlon, destlat);
+        if (!g.components().mayReach(g.indexOf(src), g.indexOf(dest))) {
+            return new NoPathSolver<>();
+        }
+        ContractionHierarchy ch = g.travelTimeHierarchy();
+        if (ch != null) {
+            return new CHSolver(ch, g, src, dest);
+        }
+        TravelTimeGraph times = g.travelTimes();
+        return new IndexedAStarSolver(times, lowerBound(g, times.leastSeconds(1)), src, dest,
+                deadline);
+    }
+
+    private static ShortestPathsSolver<Long> solve(AugmentedStreetMapGraph g, long src, long dest,
+                                                   Deadline deadline) {
+        if (!g.components().mayReach(g.indexOf(src), g.indexOf(dest))) {
+            return new NoPathSolver<>();
+        }
+        ContractionHierarchy ch = g.contractionHierarchy();
+        if (ch != null) {
+            return new CHSolver(ch, g, src, dest);
+        }
+        LowerBound bound = lowerBound(g, 1);
+        if (g.arcFlags() != null) {
+            return new IndexedAStarSolver(g, bound, g.arcFlags(), src, dest, deadline);
+        }
+        return new ChainSolver(g.chains(), bound, src, dest, deadline);
+    }
+
+    /**
+     * The straight-line distance, or the landmark bound where that is
+     * larger, times PERMILE, the least a mile can weigh.
+     */
+    private static LowerBound lowerBound(AugmentedStreetMapGraph g, double perMile) {
+        Landmarks landmarks = g.landmarks();
+        if (landmarks == null) {
+            return (v, goal) -> g.estimatedDistance(v, goal) * perMile;
+        }
+        return (v, goal) -> Math.max(g.estimatedDistance(v, goal),
+                landmarks.lowerBound(v, goal)) * perMile;
+    }
+
+    /**
+     * Same as shortestPathSolver, but with bidirectional A* on the whole
+     * graph, bounded by the straight-line distance and the landmarks as the
+     * default solver is, and with the backward search on a second thread if
+     * PARALLEL. Routes are not cached.
+     */
+    public static ShortestPathsSolver<Long> bidirectionalSolver(AugmentedStreetMapGraph g,
+                                                                double stlon, double stlat,
+                                                                double destlon, double destlat,
+                                                                RoutingProfile profile,
+                                                                boolean parallel,
+                                                                Deadline deadline) {
+        long src = g.closest(stlon, stlat);
+        long dest = g.closest(destlon, destlat);
+        if (!g.components().mayReach(g.indexOf(src), g.indexOf(dest))) {
+            return new NoPathSolver<>();
+        }
+        if (profile == RoutingProfile.FASTEST) {
+            TravelTimeGraph times = g.travelTimes();
+            return new BidirectionalAStarSolver(times, lowerBound(g, times.leastSeconds(1)),
+                    src, dest, deadline, parallel);
+        }
+        return new BidirectionalAStarSolver(g, lowerBound(g, 1), src, dest, deadline, parallel);
+    }
+
+    /**
+     * Same as shortestPathSolver, but searches the directed edges of the
+     * graph instead of its vertices, so that every turn costs what COSTS
+     * charges for its kind and turns banned by turn restrictions are never
+     * taken. Routes are not cached, since they depend on COSTS.
+     */
+    public static ShortestPathsSolver<Long> turnAwareSolver(AugmentedStreetMapGraph g,
+                                                            double stlon, double stlat,
+                                                            double destlon, double destlat,
+                                                            RoutingProfile profile,
+                                                            TurnCosts costs, Deadline deadline) {
         long src = g.closest(stlon, stlat);
         long dest = g.closest(destlon, destlat);
-        return new AStarSolver<>(g, src, dest, 20).solution();
+        if (!g.components().mayReach(g.indexOf(src), g.indexOf(dest))) {
+            return new NoPathSolver<>();
+        }
+        if (profile == RoutingProfile.FASTEST) {
+            TravelTimeGraph times = g.travelTimes();
+            return new EdgeBasedAStarSolver(times, g.turnTable(), costs.in(profile),
+                    lowerBound(g, times.leastSeconds(1)), src, dest, deadline);
+        }
+        return new EdgeBasedAStarSolver(g, g.turnTable(), costs.in(profile),
+                lowerBound(g, 1), src, dest, deadline);
+    }
+
+    /**
+     * Returns up to K routes from the node closest to the start location to
+     * the node closest to the destination location: the best one by PROFILE
+     * first and then alternatives that are meaningfully different from it,
+     * all from one forward and one backward search run in parallel.
+     */
+    public static AlternativeRoutes alternatives(AugmentedStreetMapGraph g,
+                                                 double stlon, double stlat,
+                                                 double destlon, double destlat,
+                                                 RoutingProfile profile, int k,
+                                                 Deadline deadline) {
+        return new AlternativeRoutes(g.weighted(profile), g.closest(stlon, stlat),
+                g.closest(destlon, destlat), k, deadline);
+    }
+
+    /**
+     * Solves the same query as shortestPathSolver with plain A* and the
+     * straight-line heuristic, as a baseline for the statistics of the others.
+     */
+    public static ShortestPathsSolver<Long> straightLineSolver(AugmentedStreetMapGraph g,
+                                                               double stlon, double stlat,
+                                                               double destlon, double destlat) {
+        return straightLineSolver(g, stlon, stlat, destlon, destlat,
+                Deadline.after(DEFAULT_TIMEOUT));
+    }
+
+    /** Same as straightLineSolver, but gives up once DEADLINE expires or is cancelled. */
+    public static ShortestPathsSolver<Long> straightLineSolver(AugmentedStreetMapGraph g,
+                                                               double stlon, double stlat,
+                                                               double destlon, double destlat,
+                                                               Deadline deadline) {
+        return straightLineSolver(g, stlon, stlat, destlon, destlat, RoutingProfile.SHORTEST,
+                null, deadline);
+    }
+
+    /**
+     * Same as straightLineSolver, but minimizing what PROFILE weighs and,
+     * if COSTS is not null, over directed edges with turn costs as in
+     * turnAwareSolver. The search runs over the same states as the solver
+     * it is a baseline for, so their numbers of states explored compare.
+     */
+    public static ShortestPathsSolver<Long> straightLineSolver(AugmentedStreetMapGraph g,
+                                                               double stlon, double stlat,
+                                                               double destlon, double destlat,
+                                                               RoutingProfile profile,
+                                                               TurnCosts costs,
+                                                               Deadline deadline) {
+        long src = g.closest(stlon, stlat);
+        long dest = g.closest(destlon, destlat);
+        IndexedGraph view = g;
+        double perMile = 1;
+        if (profile == RoutingProfile.FASTEST) {
+            TravelTimeGraph times = g.travelTimes();
+            view = times;
+            perMile = times.leastSeconds(1);
+        }
+        double scale = perMile;
+        LowerBound bound = (v, goal) -> g.estimatedDistance(v, goal) * scale;
+        if (costs != null) {
+            return new EdgeBasedAStarSolver(view, g.turnTable(), costs.in(profile), bound,
+                    src, dest, deadline);
+        }
+        return new IndexedAStarSolver(view, bound, src, dest, deadline);
+    }
+
+    /**
+     * Returns the shortest path distances between the nodes closest to the
+     * given sources and targets, with the distance from source i to target j
+     * at [i][j], or infinity if there is no path. Merges hub labels if the
+     * graph has them, uses the bucket algorithm on the contraction hierarchy
+     * if it has one, and otherwise one Dijkstra sweep per source.
+     * @param g The graph to use.
+     * @param srclons The longitudes of the sources.
+     * @param srclats The latitudes of the sources.
+     * @param destlons The longitudes of the targets.
+     * @param destlats The latitudes of the targets.
+     * @return The matrix of distances.
+     */
+    public static double[][] distanceMatrix(AugmentedStreetMapGraph g,
+                                            double[] srclons, double[] srclats,
+                                            double[] destlons, double[] destlats) {
+        long[] sources = new long[srclons.length];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = g.closest(srclons[i], srclats[i]);
+        }
+        long[] targets = new long[destlons.length];
+        for (int j = 0; j < targets.length; j++) {
+            targets[j] = g.closest(destlons[j], destlats[j]);
+        }
+        return distanceMatrix(g, sources, targets);
+    }
+
+    /**
+     * Same as distanceMatrix, but between nodes already snapped to, for
+     * callers that also need the ids of those nodes.
+     * @param g The graph to use.
+     * @param sourceIds The ids of the source nodes.
+     * @param targetIds The ids of the target nodes.
+     * @return The matrix of distances.
+     */
+    public static double[][] distanceMatrix(AugmentedStreetMapGraph g,
+                                            long[] sourceIds, long[] targetIds) {
+        int[] sources = new int[sourceIds.length];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = g.indexOf(sourceIds[i]);
+        }
+        int[] targets = new int[targetIds.length];
+        for (int j = 0; j < targets.length; j++) {
+            targets[j] = g.indexOf(targetIds[j]);
+        }
+        HubLabels labels = g.hubLabels();
+        if (labels != null) {
+            double[][] table = new double[sources.length][targets.length];
+            IntStream.range(0, sources.length).parallel().forEach(i -> {
+                for (int j = 0; j < targets.length; j++) {
+                    table[i][j] = labels.distance(sources[i], targets[j]);
+                }
+            });
+            return table;
+        }
+        ContractionHierarchy ch = g.contractionHierarchy();
+        if (ch != null) {
+            return ManyToMany.distances(ch, sources, targets);
+        }
+        return OneToMany.distances(g, sources, targets);
     }
 
     /**
@@ -42,8 +353,63 @@ public class Router {
      */
     public static List<NavigationDirection> routeDirections(AugmentedStreetMapGraph g,
                                                             List<Long> route) {
-        /* fill in for part IV */
-        return null;
+        List<NavigationDirection> directions = new ArrayList<>();
+        if (route.size() < 2) {
+            return directions;
+        }
+        /* One pass over the edges of the route. Consecutive edges on the same
+           way are merged into the current direction, and a change of way
+           emits it and starts the next one, turning by the bearings of the
+           edges on either side of the change. Each vertex after the first
+           is found as the target of the edge to it, so a step looks at the
+           few edges of an intersection instead of searching for its id. */
+        int u = -1;
+        int v = g.indexOf(route.get(0));
+        NavigationDirection current = null;
+        String currentWay = null;
+        for (int i = 1; i < route.size(); i++) {
+            long id = route.get(i);
+            int e = edgeTo(g, v, id);
+            int w = e == -1 ? g.indexOf(id) : g.target(e);
+            String way = e == -1 ? null : g.edgeName(e);
+            if (current == null || !Objects.equals(way, currentWay)) {
+                if (current != null) {
+                    directions.add(current);
+                }
+                current = new NavigationDirection();
+                if (u == -1) {
+                    current.direction = NavigationDirection.START;
+                } else {
+                    /* Bearings are only needed where the way changes. */
+                    current.direction = NavigationDirection.getDirection(
+                            NavigationDirection.bearing(g.lonAt(u), g.lonAt(v),
+                                    g.latAt(u), g.latAt(v)),
+                            NavigationDirection.bearing(g.lonAt(v), g.lonAt(w),
+                                    g.latAt(v), g.latAt(w)));
+                }
+                current.way = way == null || way.isEmpty() ? NavigationDirection.UNKNOWN_ROAD : way;
+                currentWay = way;
+            }
+            current.distance += e == -1 ? g.estimatedDistance(v, w) : g.weight(e);
+            u = v;
+            v = w;
+        }
+        directions.add(current);
+        return directions;
+    }
+
+    /**
+     * Returns the lightest edge of G from vertex index V to the vertex with
+     * id ID, or -1 if there is none.
+     */
+    private static int edgeTo(AugmentedStreetMapGraph g, int v, long id) {
+        int best = -1;
+        for (int e = g.outBegin(v); e < g.outEnd(v); e++) {
+            if (g.idOf(g.target(e)) == id && (best == -1 || g.weight(e) < g.weight(best))) {
+                best = e;
+            }
+        }
+        return best;
     }
 
     /**
@@ -165,7 +531,7 @@ public class Router {
          * @param currBearing A double in [0, 360.0]
          * @return the Navigation Direction type
          */
-        private static int getDirection(double prevBearing, double currBearing) {
+        public static int getDirection(double prevBearing, double currBearing) {
             double absDiff = Math.abs(currBearing - prevBearing);
             if (numInRange(absDiff, 0.0, 15.0)) {
                 return NavigationDirection.STRAIGHT;
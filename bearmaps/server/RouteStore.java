@@ -0,0 +1,101 @@
+package bearmaps.server;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The routes of the users of the server, each under the token /route
+ * returned for it. Routes are immutable arrays of node ids, so any number
+ * of requests can render them at once. A route expires when it has not
+ * been used for the time to live; expired routes are dropped by a sweep
+ * that put() runs at most once per time to live. A route can be put under
+ * an owner, such as an alternative under the route it is an alternative
+ * to, and is then also dropped when the owner is removed.
+ */
+public class RouteStore {
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final ConcurrentHashMap<String, Entry> routes = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+    private volatile long nextSweep;
+
+    private static final class Entry {
+        final long[] route;
+        /** Tokens of the routes put under this one. */
+        final Set<String> dependents = ConcurrentHashMap.newKeySet();
+        volatile long lastUsed;
+
+        Entry(long[] route, long now) {
+            this.route = route;
+            lastUsed = now;
+        }
+    }
+
+    /** Keeps each route until TTLMILLIS after it was last put or read. */
+    public RouteStore(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        nextSweep = System.currentTimeMillis() + ttlMillis;
+    }
+
+    /** Stores ROUTE, which must not be modified afterwards, and returns its new token. */
+    public String put(long[] route) {
+        long now = System.currentTimeMillis();
+        if (now >= nextSweep) {
+            nextSweep = now + ttlMillis;
+            routes.values().removeIf(e -> now - e.lastUsed > ttlMillis);
+        }
+        byte[] bytes = new byte[16];
+        RANDOM.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        routes.put(token, new Entry(route, now));
+        return token;
+    }
+
+    /**
+     * Stores ROUTE like put(ROUTE), and also drops it when the route stored
+     * under OWNER is removed. Returns the new token.
+     */
+    public String put(long[] route, String owner) {
+        String token = put(route);
+        Entry e = owner == null ? null : routes.get(owner);
+        if (e != null) {
+            e.dependents.add(token);
+        }
+        return token;
+    }
+
+    /** Returns the route stored under TOKEN, or null if there is none or it expired. */
+    public long[] get(String token) {
+        if (token == null) {
+            return null;
+        }
+        Entry e = routes.get(token);
+        if (e == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (now - e.lastUsed > ttlMillis) {
+            routes.remove(token, e);
+            return null;
+        }
+        e.lastUsed = now;
+        return e.route;
+    }
+
+    /** Forgets the route stored under TOKEN, if any, and the routes put under it. */
+    public void remove(String token) {
+        Entry e = token == null ? null : routes.remove(token);
+        if (e != null) {
+            for (String dependent : e.dependents) {
+                routes.remove(dependent);
+            }
+        }
+    }
+
+    /** Returns the number of routes stored, including expired ones not yet swept. */
+    public int size() {
+        return routes.size();
+    }
+}
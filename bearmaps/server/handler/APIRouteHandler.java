@@ -20,16 +20,40 @@ import static spark.Spark.halt;
 public abstract class APIRouteHandler<Req, Res> implements Route {
 
     /** HTTP failed response. */
-    private static final int HALT_RESPONSE = 403;
+    protected static final int HALT_RESPONSE = 403;
 
     private Gson gson;
 
+    /** Admission control for this handler's requests, or null for none. */
+    private ExecutionLane lane;
+
     public APIRouteHandler() {
         gson = new Gson();
     }
 
+    /** Runs this handler's requests in LANE, or without limits if it is null. */
+    public APIRouteHandler<Req, Res> withLane(ExecutionLane lane) {
+        this.lane = lane;
+        return this;
+    }
+
+    public ExecutionLane lane() {
+        return lane;
+    }
+
     @Override
     public Object handle(Request request, Response response) throws Exception {
+        if (lane == null) {
+            return respond(request, response);
+        }
+        return lane.run(() -> respond(request, response));
+    }
+
+    /**
+     * Parses, processes and builds the response to one request, once the
+     * lane has admitted it.
+     */
+    protected Object respond(Request request, Response response) throws Exception {
         Req requestParams = parseRequestParams(request);
         Res result = processRequest(requestParams, response);
         return buildJsonResponse(result);
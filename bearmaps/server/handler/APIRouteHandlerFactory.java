@@ -16,13 +16,29 @@ public class APIRouteHandlerFactory {
 
     public static final Map<String, APIRouteHandler> handlerMap;
 
+    /** Number of cores, which the lanes of CPU-bound paths are sized by. */
+    private static final int CPUS = Runtime.getRuntime().availableProcessors();
+
     static {
         handlerMap = new HashMap<>();
-        handlerMap.put("raster", new RasterAPIHandler());
-        handlerMap.put("route", new RoutingAPIHandler());
-        handlerMap.put("clear_route", new ClearRouteAPIHandler());
-        handlerMap.put("search", new SearchAPIHandler());
-        handlerMap.put("", new RedirectAPIHandler());
+        /* Each path gets its own lane, so a burst of expensive raster or
+           route requests is rejected instead of taking the threads the
+           cheap search and clear requests need. */
+        handlerMap.put("raster", new RasterAPIHandler()
+                .withLane(new ExecutionLane("raster", CPUS, 2 * CPUS, 2000)));
+        handlerMap.put("route", new RoutingAPIHandler()
+                .withLane(new ExecutionLane("route", CPUS, 2 * CPUS, 2000)));
+        handlerMap.put("clear_route", new ClearRouteAPIHandler()
+                .withLane(new ExecutionLane("clear_route", 2, 16, 500)));
+        handlerMap.put("search", new SearchAPIHandler()
+                .withLane(new ExecutionLane("search", CPUS, 8 * CPUS, 500)));
+        /* A matrix already runs its sources on every core. */
+        handlerMap.put("matrix", new MatrixAPIHandler()
+                .withLane(new ExecutionLane("matrix", 1, 2, 5000)));
+        handlerMap.put("isochrone", new IsochroneAPIHandler()
+                .withLane(new ExecutionLane("isochrone", 2, 4, 2000)));
+        handlerMap.put("", new RedirectAPIHandler()
+                .withLane(new ExecutionLane("redirect", 2, 16, 500)));
     }
 
 
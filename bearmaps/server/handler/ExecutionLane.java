@@ -0,0 +1,108 @@
+package bearmaps.server.handler;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static spark.Spark.halt;
+
+/**
+ * Admission control for one API path. At most PERMITS requests of the lane
+ * run at once and at most QUEUELIMIT more wait for a permit, each for at
+ * most MAXWAITMILLIS. Any other request is rejected at once with 503, so a
+ * burst on one path holds at most capacity() server threads and cannot
+ * starve the others.
+ *
+ * The limits of a lane named NAME can be overridden with the system
+ * property bearmaps.lane.NAME=permits,queueLimit,maxWaitMillis. An
+ * override that does not parse as three such limits is reported and
+ * ignored as a whole.
+ */
+public class ExecutionLane {
+    /** HTTP response for a request the lane has no room for. */
+    public static final int UNAVAILABLE_RESPONSE = 503;
+
+    private final String name;
+    private final int permits;
+    private final int queueLimit;
+    private final long maxWaitMillis;
+    private final Semaphore running;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public ExecutionLane(String name, int permits, int queueLimit, long maxWaitMillis) {
+        String override = System.getProperty("bearmaps.lane." + name);
+        if (override != null) {
+            /* Parsed into locals, so a malformed override changes none of the limits. */
+            try {
+                String[] limits = override.split(",");
+                if (limits.length != 3) {
+                    throw new IllegalArgumentException("Expected permits,queueLimit,"
+                            + "maxWaitMillis for lane " + name + ", got " + override + ".");
+                }
+                int newPermits = Integer.parseInt(limits[0].trim());
+                int newQueueLimit = Integer.parseInt(limits[1].trim());
+                long newMaxWaitMillis = Long.parseLong(limits[2].trim());
+                if (newPermits < 1 || newQueueLimit < 0 || newMaxWaitMillis < 0) {
+                    throw new IllegalArgumentException("Limits of lane " + name
+                            + " must be at least 1, 0 and 0, got " + override + ".");
+                }
+                permits = newPermits;
+                queueLimit = newQueueLimit;
+                maxWaitMillis = newMaxWaitMillis;
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+        }
+        this.name = name;
+        this.permits = permits;
+        this.queueLimit = queueLimit;
+        this.maxWaitMillis = maxWaitMillis;
+        running = new Semaphore(permits, true);
+    }
+
+    /** Runs TASK once the lane has a permit for it, or halts with 503 if it has no room. */
+    public <T> T run(Callable<T> task) throws Exception {
+        if (!running.tryAcquire()) {
+            if (waiting.incrementAndGet() > queueLimit) {
+                waiting.decrementAndGet();
+                reject();
+            }
+            boolean acquired;
+            try {
+                acquired = running.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+            } finally {
+                waiting.decrementAndGet();
+            }
+            if (!acquired) {
+                reject();
+            }
+        }
+        try {
+            return task.call();
+        } finally {
+            running.release();
+        }
+    }
+
+    private void reject() {
+        rejected.incrementAndGet();
+        throw halt(UNAVAILABLE_RESPONSE, "Server busy - " + name + " requests are rejected.");
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /** Returns the most requests the lane holds at once, running or waiting. */
+    public int capacity() {
+        return permits + queueLimit;
+    }
+
+    /** Returns the number of requests the lane has rejected. */
+    public long rejected() {
+        return rejected.get();
+    }
+}
@@ -4,7 +4,8 @@ import bearmaps.server.handler.APIRouteHandler;
 import spark.Request;
 import spark.Response;
 
-import static bearmaps.utils.Constants.ROUTE_LIST;
+import static bearmaps.utils.Constants.ROUTE_STORE;
+import static bearmaps.utils.Constants.ROUTE_TOKEN_PARAM;
 
 
 /**
@@ -16,12 +17,12 @@ public class ClearRouteAPIHandler extends APIRouteHandler {
 
     @Override
     protected Object parseRequestParams(Request request) {
-        return null;
+        return request.queryParams(ROUTE_TOKEN_PARAM);
     }
 
     @Override
     protected Object processRequest(Object requestParams, Response response) {
-        ROUTE_LIST.clear();
+        ROUTE_STORE.remove((String) requestParams);
         return true;
     }
 }
@@ -0,0 +1,141 @@
+package bearmaps.server.handler.impl;
+
+import bearmaps.server.handler.APIRouteHandler;
+import bearmaps.utils.graph.Isochrone;
+import spark.Request;
+import spark.Response;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static bearmaps.utils.Constants.SEMANTIC_STREET_GRAPH;
+import static spark.Spark.halt;
+
+/**
+ * Handles requests for the area reachable within a distance of a location.
+ * The location is snapped to its closest node, and the search from that
+ * node is cached by (node, budget), so panning the map over the same
+ * isochrone does not search again.
+ */
+public class IsochroneAPIHandler extends APIRouteHandler<Map<String, Double>, Map<String, Object>> {
+
+    /**
+     * Each isochrone request has the following parameters as keys in the
+     * params map.<br>
+     * lon : longitude of the location,<br> lat : latitude of the location,<br>
+     * budget : the distance in miles, at most MAX_BUDGET.
+     */
+    private static final String[] REQUIRED_ISOCHRONE_REQUEST_PARAMS = {"lon", "lat", "budget"};
+
+    /** Optional parameter: the number of contours to split the budget into. Defaults to 1. */
+    private static final String BANDS_PARAM = "bands";
+
+    private static final int MAX_BANDS = 16;
+
+    /**
+     * Largest budget in miles. A search keeps every node it settles, and the
+     * cache keeps the search, so an unbounded budget would let each request
+     * pin an array the size of the whole graph.
+     */
+    private static final double MAX_BUDGET = 5;
+
+    /** Number of searches kept in the cache. */
+    private static final int CACHE_SIZE = 64;
+
+    /** Searches by (node, budget), least recently used first. */
+    private static final Map<Key, Isochrone> CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<Key, Isochrone>(CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Isochrone> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+
+    private static final class Key {
+        final long node;
+        final double budget;
+
+        Key(long node, double budget) {
+            this.node = node;
+            this.budget = budget;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).node == node && ((Key) o).budget == budget;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(node, budget);
+        }
+    }
+
+    @Override
+    protected Map<String, Double> parseRequestParams(Request request) {
+        Map<String, Double> params = getRequestParams(request, REQUIRED_ISOCHRONE_REQUEST_PARAMS);
+        if (!(params.get("budget") > 0 && params.get("budget") <= MAX_BUDGET)) {
+            halt(HALT_RESPONSE, "Incorrect parameters - budget must be positive and at most "
+                    + MAX_BUDGET + " miles.");
+        }
+        double bands = 1;
+        if (request.queryParams(BANDS_PARAM) != null) {
+            try {
+                bands = Integer.parseInt(request.queryParams(BANDS_PARAM));
+            } catch (NumberFormatException e) {
+                e.printStackTrace();
+                halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+            }
+            if (bands < 1 || bands > MAX_BANDS) {
+                halt(HALT_RESPONSE, "Incorrect parameters - bands must be 1 to " + MAX_BANDS + ".");
+            }
+        }
+        params.put(BANDS_PARAM, bands);
+        return params;
+    }
+
+    /**
+     * Finds the area reachable within the budget of the requested location.
+     * @param requestParams Map of the request's query parameters.
+     * @param response : Not used by this function.
+     * @return A map of results for the front end as specified: <br>
+     * "node" : Number, the id of the node the location snapped to. <br>
+     * "bands" : Array of objects, one per contour from the nearest out, each with
+     *           "budget" : Number, the distance in miles the contour is drawn at, and
+     *           "polygon" : Array of [lon, lat] pairs, the closed hull of the
+     *           nodes reachable within that distance.
+     */
+    @Override
+    protected Map<String, Object> processRequest(Map<String, Double> requestParams,
+                                                 Response response) {
+        double budget = requestParams.get("budget");
+        int bands = requestParams.get(BANDS_PARAM).intValue();
+        long node = SEMANTIC_STREET_GRAPH.closest(requestParams.get("lon"),
+                requestParams.get("lat"));
+        Key key = new Key(node, budget);
+        Isochrone isochrone = CACHE.get(key);
+        if (isochrone == null) {
+            isochrone = new Isochrone(SEMANTIC_STREET_GRAPH,
+                    SEMANTIC_STREET_GRAPH.indexOf(node), budget);
+            CACHE.put(key, isochrone);
+        }
+
+        List<Map<String, Object>> contours = new ArrayList<>();
+        for (int i = 1; i <= bands; i++) {
+            double within = budget * i / bands;
+            Map<String, Object> contour = new HashMap<>();
+            contour.put("budget", within);
+            contour.put("polygon", isochrone.boundary(SEMANTIC_STREET_GRAPH, within));
+            contours.add(contour);
+        }
+        Map<String, Object> isochroneParams = new HashMap<>();
+        isochroneParams.put("node", node);
+        isochroneParams.put("bands", contours);
+        return isochroneParams;
+    }
+}
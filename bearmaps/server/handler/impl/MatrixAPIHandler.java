@@ -0,0 +1,111 @@
+package bearmaps.server.handler.impl;
+
+import bearmaps.Router;
+import bearmaps.server.handler.APIRouteHandler;
+import bearmaps.utils.Tuple;
+import spark.Request;
+import spark.Response;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static bearmaps.utils.Constants.SEMANTIC_STREET_GRAPH;
+import static spark.Spark.halt;
+
+/**
+ * Handles requests for the shortest path distances between every source and
+ * every target of a set of locations. Each location is snapped to its
+ * closest node, as for routes.
+ */
+public class MatrixAPIHandler extends APIRouteHandler<Tuple<double[], double[]>, Map<String, Object>> {
+
+    /**
+     * Each matrix request has the following parameters, both lists of
+     * locations written as "lon,lat;lon,lat;...".<br>
+     * sources : the locations the distances are from,<br>
+     * targets : the locations the distances are to.
+     */
+    private static final String SOURCES_PARAM = "sources";
+    private static final String TARGETS_PARAM = "targets";
+
+    /** Most locations accepted on either side of a request. */
+    private static final int MAX_POINTS = 500;
+
+    /**
+     * Parses the sources and targets into arrays of alternating longitudes
+     * and latitudes.
+     */
+    @Override
+    protected Tuple<double[], double[]> parseRequestParams(Request request) {
+        return new Tuple<>(parsePoints(request.queryParams(SOURCES_PARAM)),
+                parsePoints(request.queryParams(TARGETS_PARAM)));
+    }
+
+    private double[] parsePoints(String param) {
+        if (param == null || param.isEmpty()) {
+            halt(HALT_RESPONSE, "Request failed - parameters missing.");
+        }
+        String[] points = param.split(";");
+        if (points.length > MAX_POINTS) {
+            halt(HALT_RESPONSE, "Request failed - at most " + MAX_POINTS + " locations allowed.");
+        }
+        double[] lonLats = new double[2 * points.length];
+        for (int i = 0; i < points.length; i++) {
+            String[] lonLat = points[i].split(",");
+            if (lonLat.length != 2) {
+                halt(HALT_RESPONSE, "Incorrect parameters - provide lon,lat pairs.");
+            }
+            try {
+                lonLats[2 * i] = Double.parseDouble(lonLat[0]);
+                lonLats[2 * i + 1] = Double.parseDouble(lonLat[1]);
+            } catch (NumberFormatException e) {
+                e.printStackTrace();
+                halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+            }
+        }
+        return lonLats;
+    }
+
+    /**
+     * Computes the distance matrix between the requested locations.
+     * @param requestParams The sources and targets as alternating longitudes
+     *                      and latitudes.
+     * @param response : Not used by this function.
+     * @return A map of results for the front end as specified: <br>
+     * "sources" : Array of numbers, the ids of the nodes the sources snapped to. <br>
+     * "targets" : Array of numbers, the ids of the nodes the targets snapped to. <br>
+     * "distances" : Array of arrays of numbers, the distance in miles from
+     *               source i to target j at [i][j], or -1 if there is no path.
+     */
+    @Override
+    protected Map<String, Object> processRequest(Tuple<double[], double[]> requestParams,
+                                                 Response response) {
+        double[] sources = requestParams.getFirst();
+        double[] targets = requestParams.getSecond();
+        /* Snapped once here, since the response reports the nodes too. */
+        long[] srcIds = new long[sources.length / 2];
+        for (int i = 0; i < srcIds.length; i++) {
+            srcIds[i] = SEMANTIC_STREET_GRAPH.closest(sources[2 * i], sources[2 * i + 1]);
+        }
+        long[] destIds = new long[targets.length / 2];
+        for (int j = 0; j < destIds.length; j++) {
+            destIds[j] = SEMANTIC_STREET_GRAPH.closest(targets[2 * j], targets[2 * j + 1]);
+        }
+
+        double[][] distances = Router.distanceMatrix(SEMANTIC_STREET_GRAPH, srcIds, destIds);
+        /* JSON has no infinity, so unreachable targets are reported as -1. */
+        for (double[] row : distances) {
+            for (int j = 0; j < row.length; j++) {
+                if (row[j] == Double.POSITIVE_INFINITY) {
+                    row[j] = -1;
+                }
+            }
+        }
+
+        Map<String, Object> matrixParams = new HashMap<>();
+        matrixParams.put("sources", srcIds);
+        matrixParams.put("targets", destIds);
+        matrixParams.put("distances", distances);
+        return matrixParams;
+    }
+}
@@ -162,13 +162,28 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
         return results;
     }
 
+    /**
+     * Same as the default, except that the route whose token the request
+     * carries, if any, is drawn on the image.
+     */
+    @Override
+    protected Object respond(Request request, Response response) throws Exception {
+        Map<String, Object> result = processRequest(parseRequestParams(request), response);
+        return buildJsonResponse(result, ROUTE_STORE.get(request.queryParams(ROUTE_TOKEN_PARAM)));
+    }
+
     @Override
     protected Object buildJsonResponse(Map<String, Object> result) {
+        return buildJsonResponse(result, null);
+    }
+
+    /** Builds the response with ROUTE, or no route if it is null, drawn on the image. */
+    private Object buildJsonResponse(Map<String, Object> result, long[] route) {
         boolean rasterSuccess = validateRasteredImgParams(result);
 
         if (rasterSuccess) {
             ByteArrayOutputStream os = new ByteArrayOutputStream();
-            writeImagesToOutputStream(result, os);
+            writeImagesToOutputStream(result, route, os);
             String encodedImage = Base64.getEncoder().encodeToString(os.toByteArray());
             result.put("b64_encoded_image_data", encodedImage);
         }
@@ -213,9 +228,10 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
      * Writes the images corresponding to rasteredImgParams to the output stream.
      * In Spring 2016, students had to do this on their own, but in 2017,
      * we made this into provided code since it was just a bit too low level.
+     * ROUTE, if not null, is drawn over the images.
      */
     private void writeImagesToOutputStream(Map<String, Object> rasteredImageParams,
-                                           ByteArrayOutputStream os) {
+                                           long[] route, ByteArrayOutputStream os) {
         String[][] renderGrid = (String[][]) rasteredImageParams.get("render_grid");
         int numVertTiles = renderGrid.length;
         int numHorizTiles = renderGrid[0].length;
@@ -245,20 +261,20 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
         final double wdpp = (lrlon - ullon) / img.getWidth();
         final double hdpp = (ullat - lrlat) / img.getHeight();
         AugmentedStreetMapGraph graph = SEMANTIC_STREET_GRAPH;
-        List<Long> route = ROUTE_LIST;
 
-        if (route != null && !route.isEmpty()) {
+        if (route != null && route.length > 0) {
             Graphics2D g2d = (Graphics2D) graphic;
             g2d.setColor(Constants.ROUTE_STROKE_COLOR);
             g2d.setStroke(new BasicStroke(Constants.ROUTE_STROKE_WIDTH_PX,
                     BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            route.stream().reduce((v, w) -> {
+            for (int i = 0; i + 1 < route.length; i++) {
+                long v = route[i];
+                long w = route[i + 1];
                 g2d.drawLine((int) ((graph.lon(v) - ullon) * (1 / wdpp)),
                         (int) ((ullat - graph.lat(v)) * (1 / hdpp)),
                         (int) ((graph.lon(w) - ullon) * (1 / wdpp)),
                         (int) ((ullat - graph.lat(w)) * (1 / hdpp)));
-                return w;
-            });
+            }
         }
 
         rasteredImageParams.put("raster_width", img.getWidth());
@@ -2,22 +2,34 @@ package bearmaps.server.handler.impl;
 
 import bearmaps.Router;
 import bearmaps.server.handler.APIRouteHandler;
+import bearmaps.utils.Tuple;
+import bearmaps.utils.graph.AlternativeRoutes;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.RouteCache;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.streetmap.RoutingProfile;
+import bearmaps.utils.graph.turn.TurnCosts;
 import spark.Request;
 import spark.Response;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import static bearmaps.utils.Constants.SEMANTIC_STREET_GRAPH;
-import static bearmaps.utils.Constants.ROUTE_LIST;
+import static bearmaps.utils.Constants.ROUTE_STORE;
+import static bearmaps.utils.Constants.ROUTE_TOKEN_PARAM;
+import static spark.Spark.halt;
 
 /**
  * Handles requests from the web browser for routes between locations. The
  * route will be returned as image data, as well as (optionally) driving directions. *
  * Created by rahul
  */
-public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<String, Object>> {
+public class RoutingAPIHandler
+        extends APIRouteHandler<Tuple<Map<String, Double>, String>, Map<String, Object>> {
 
     /**
      * Each route request to the server will have the following parameters
@@ -28,9 +40,101 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
     private static final String[] REQUIRED_ROUTE_REQUEST_PARAMS = {"start_lat", "start_lon",
             "end_lat", "end_lon"};
 
+    /**
+     * Optional parameter. If present, the query is also solved with plain A*
+     * over the same states and weights, and the response reports how many
+     * fewer states the real solver explored.
+     */
+    private static final String COMPARE_PARAM = "compare_heuristic";
+
+    /**
+     * Optional parameter: the seconds the request may spend searching, at
+     * most Router.DEFAULT_TIMEOUT, which is also the default.
+     */
+    private static final String TIME_BUDGET_PARAM = "time_budget";
+
+    /**
+     * Optional parameter: how many alternatives to the route to also return,
+     * at most MAX_ALTERNATIVES. Alternatives are found without turn costs,
+     * so the request cannot also have turn_costs.
+     */
+    private static final String ALTERNATIVES_PARAM = "alternatives";
+    private static final int MAX_ALTERNATIVES = 2;
+
+    /**
+     * Optional parameter. If present, the route pays TurnCosts.DEFAULT for
+     * its turns and obeys turn restrictions.
+     */
+    private static final String TURN_COSTS_PARAM = "turn_costs";
+
+    /**
+     * Optional parameter: shortest, the default, for the shortest route, or
+     * fastest for the quickest one at the speeds of the roads.
+     */
+    private static final String PROFILE_PARAM = "profile";
+
+    /**
+     * Optional parameter. If present, the route is found with bidirectional
+     * A* instead of the default solver, with its backward search on a second
+     * thread if the value is parallel. It has no turn costs, so the request
+     * cannot also have turn_costs.
+     */
+    private static final String BIDIRECTIONAL_PARAM = "bidirectional";
+
+    /**
+     * Returns the coordinates, and the token of the user's previous route if
+     * the request carries one, since the new route replaces it.
+     */
     @Override
-    protected Map<String, Double> parseRequestParams(Request request) {
-        return getRequestParams(request, REQUIRED_ROUTE_REQUEST_PARAMS);
+    protected Tuple<Map<String, Double>, String> parseRequestParams(Request request) {
+        Map<String, Double> params = getRequestParams(request, REQUIRED_ROUTE_REQUEST_PARAMS);
+        if (request.queryParams(COMPARE_PARAM) != null) {
+            params.put(COMPARE_PARAM, 1.0);
+        }
+        if (request.queryParams(TURN_COSTS_PARAM) != null) {
+            if (request.queryParams(ALTERNATIVES_PARAM) != null) {
+                halt(HALT_RESPONSE, "Incorrect parameters - alternatives ignore turn_costs.");
+            }
+            params.put(TURN_COSTS_PARAM, 1.0);
+        }
+        if (request.queryParams(BIDIRECTIONAL_PARAM) != null) {
+            if (request.queryParams(TURN_COSTS_PARAM) != null) {
+                halt(HALT_RESPONSE, "Incorrect parameters - bidirectional ignores turn_costs.");
+            }
+            params.put(BIDIRECTIONAL_PARAM,
+                    "parallel".equals(request.queryParams(BIDIRECTIONAL_PARAM)) ? 1.0 : 0.0);
+        }
+        RoutingProfile profile = RoutingProfile.SHORTEST;
+        if (request.queryParams(PROFILE_PARAM) != null) {
+            try {
+                profile = RoutingProfile.valueOf(request.queryParams(PROFILE_PARAM).toUpperCase());
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+                halt(HALT_RESPONSE, "Incorrect parameters - profile is shortest or fastest.");
+            }
+        }
+        params.put(PROFILE_PARAM, (double) profile.ordinal());
+        double budget = Router.DEFAULT_TIMEOUT;
+        if (request.queryParams(TIME_BUDGET_PARAM) != null) {
+            try {
+                budget = Math.min(budget, Double.parseDouble(request.queryParams(TIME_BUDGET_PARAM)));
+            } catch (NumberFormatException e) {
+                e.printStackTrace();
+                halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+            }
+        }
+        params.put(TIME_BUDGET_PARAM, budget);
+        if (request.queryParams(ALTERNATIVES_PARAM) != null) {
+            try {
+                int alternatives = Integer.parseInt(request.queryParams(ALTERNATIVES_PARAM));
+                params.put(ALTERNATIVES_PARAM,
+                        (double) Math.max(0, Math.min(MAX_ALTERNATIVES, alternatives)));
+            } catch (NumberFormatException e) {
+                e.printStackTrace();
+                halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+            }
+        }
+        return new Tuple<>(params, request.queryParams(ROUTE_TOKEN_PARAM));
     }
 
     /**
@@ -38,47 +142,147 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
      * street directions between the given points. THis method has been
      * completed for you.
      *
-     * The route to draw on the map should be added to the end of
-     * Constants.ROUTE_LIST. This is a LinkedList of longs,
-     * where each long corresponds to one point on the map.
+     * The route to draw on the map is kept in Constants.ROUTE_STORE as an
+     * array of node ids, under a token the front end passes to /raster.
      *
      * Street directions can also be provided in the form of text as a return
      * value to this function.
      *
      * @param requestParams Map of the HTTP GET request's query parameters - the starting lat/long
-     *                      and the destination lat/lon.
+     *                      and the destination lat/lon - and the token of the route
+     *                      this one replaces, or null.
      *
      * @param response : Not used by this function. You may ignore.
      * @return A map of results for the front end as specified: <br>
      * "routing_success" : Boolean, whether the route list should be drawn (i.e. if not empty).
+     * "route_token"     : String, the token to draw the route with, if there is a route.
      *
      * "directions_success" : Boolean, whether the query generated text directions (i.e. if
      *                        length of directions is > 0).
      * "directions"      : String. The text directions you want to display, in HTML format.
+     * "outcome"         : String, SOLVED, UNSOLVABLE, or TIMEOUT if the time budget ran out. <br>
+     * "states_explored" : Number, the number of states the solver explored, up to the
+     *                        timeout if there was one. <br>
+     * "exploration_time" : Number, the seconds the solver ran. <br>
+     * "cached"          : Boolean, whether the route came from the route cache, in which
+     *                        case no states were explored and none are compared. <br>
+     * "baseline_outcome", "baseline_states_explored" : only with compare_heuristic and a
+     *                        route that was not cached; how plain A* with the same profile
+     *                        and turn costs ended on what was left of the time budget, and
+     *                        the states it explored. <br>
+     * "states_reduction" : Number, the fraction of the baseline's states saved, left out
+     *                        if either search ran out of time. <br>
+     * "alternatives"    : List, only with alternatives; for each alternative found, a map
+     *                        of its "route_token", "weight" and "directions". The
+     *                        weight is in miles, or in seconds with profile=fastest. <br>
      */
     @Override
-    protected Map<String, Object> processRequest(Map<String, Double> requestParams, Response response) {
-        List<Long> route = Router.shortestPath(
-                SEMANTIC_STREET_GRAPH,
-                requestParams.get("start_lon"), requestParams.get("start_lat"),
-                requestParams.get("end_lon"), requestParams.get("end_lat"));
-        ROUTE_LIST.addAll(route);
-        String directions = getDirectionsText();
+    protected Map<String, Object> processRequest(Tuple<Map<String, Double>, String> requestParams,
+                                                 Response response) {
+        Map<String, Double> params = requestParams.getFirst();
+        ROUTE_STORE.remove(requestParams.getSecond());
+        /* The compare baseline shares the budget, so the request as a whole stays within it. */
+        Deadline deadline = Deadline.after(params.get(TIME_BUDGET_PARAM));
+        RoutingProfile profile = RoutingProfile.values()[params.get(PROFILE_PARAM).intValue()];
+        ShortestPathsSolver<Long> solver;
+        if (params.containsKey(TURN_COSTS_PARAM)) {
+            solver = Router.turnAwareSolver(SEMANTIC_STREET_GRAPH,
+                    params.get("start_lon"), params.get("start_lat"),
+                    params.get("end_lon"), params.get("end_lat"),
+                    profile, TurnCosts.DEFAULT, deadline);
+        } else if (params.containsKey(BIDIRECTIONAL_PARAM)) {
+            solver = Router.bidirectionalSolver(SEMANTIC_STREET_GRAPH,
+                    params.get("start_lon"), params.get("start_lat"),
+                    params.get("end_lon"), params.get("end_lat"), profile,
+                    params.get(BIDIRECTIONAL_PARAM) == 1.0, deadline);
+        } else {
+            solver = Router.shortestPathSolver(SEMANTIC_STREET_GRAPH,
+                    params.get("start_lon"), params.get("start_lat"),
+                    params.get("end_lon"), params.get("end_lat"), profile, deadline);
+        }
+        List<Long> route = solver.solution();
+        String directions = getDirectionsText(route);
 
         Map<String, Object> routeParams = new HashMap<>();
         routeParams.put("routing_success", !route.isEmpty());
+        String token = null;
+        if (!route.isEmpty()) {
+            token = ROUTE_STORE.put(route.stream().mapToLong(Long::longValue).toArray());
+            routeParams.put(ROUTE_TOKEN_PARAM, token);
+        }
         routeParams.put("directions_success", directions.length() > 0);
         routeParams.put("directions", directions);
+        routeParams.put("outcome", solver.outcome().toString());
+        routeParams.put("states_explored", solver.numStatesExplored());
+        routeParams.put("exploration_time", solver.explorationTime());
+        boolean cached = RouteCache.isHit(solver);
+        routeParams.put("cached", cached);
+        /* A cached route explored no states, so there is nothing to compare. */
+        if (params.containsKey(COMPARE_PARAM) && !cached) {
+            ShortestPathsSolver<Long> baseline = Router.straightLineSolver(
+                    SEMANTIC_STREET_GRAPH,
+                    params.get("start_lon"), params.get("start_lat"),
+                    params.get("end_lon"), params.get("end_lat"), profile,
+                    params.containsKey(TURN_COSTS_PARAM) ? TurnCosts.DEFAULT : null, deadline);
+            routeParams.put("baseline_outcome", baseline.outcome().toString());
+            routeParams.put("baseline_states_explored", baseline.numStatesExplored());
+            /* The baseline runs on what is left of the budget. A search that
+               ran out of it stopped early, and its count compares to nothing. */
+            if (solver.outcome() != SolverOutcome.TIMEOUT
+                    && baseline.outcome() != SolverOutcome.TIMEOUT) {
+                routeParams.put("states_reduction", baseline.numStatesExplored() == 0 ? 0.0
+                        : 1.0 - (double) solver.numStatesExplored()
+                                / baseline.numStatesExplored());
+            }
+        }
+        if (params.containsKey(ALTERNATIVES_PARAM) && !route.isEmpty()) {
+            /* Asking for none searches for none. */
+            routeParams.put(ALTERNATIVES_PARAM, params.get(ALTERNATIVES_PARAM) == 0
+                    ? new ArrayList<>() : getAlternatives(params, route, token, deadline));
+        }
         return routeParams;
     }
 
     /**
-     * Takes the route of this MapServer and converts it into an HTML friendly
+     * Returns the alternatives to ROUTE the request asks for, each kept in
+     * Constants.ROUTE_STORE under its own token and put under TOKEN, the
+     * token of ROUTE, so that they go when the route they are alternatives
+     * to is replaced or cleared.
+     */
+    private List<Map<String, Object>> getAlternatives(Map<String, Double> params,
+                                                      List<Long> route, String token,
+                                                      Deadline deadline) {
+        int count = params.get(ALTERNATIVES_PARAM).intValue();
+        AlternativeRoutes alternatives = Router.alternatives(SEMANTIC_STREET_GRAPH,
+                params.get("start_lon"), params.get("start_lat"),
+                params.get("end_lon"), params.get("end_lat"),
+                RoutingProfile.values()[params.get(PROFILE_PARAM).intValue()], count + 1,
+                deadline);
+        List<Map<String, Object>> found = new ArrayList<>();
+        /* The first route is a best one, but under a tie not necessarily the
+           one the response already has, so it is only skipped if it is. */
+        for (int i = 0; i < alternatives.routes().size() && found.size() < count; i++) {
+            List<Long> other = alternatives.routes().get(i);
+            if (other.equals(route)) {
+                continue;
+            }
+            Map<String, Object> alternative = new HashMap<>();
+            alternative.put(ROUTE_TOKEN_PARAM,
+                    ROUTE_STORE.put(other.stream().mapToLong(Long::longValue).toArray(), token));
+            alternative.put("weight", alternatives.weights().get(i));
+            alternative.put("directions", getDirectionsText(other));
+            found.add(alternative);
+        }
+        return found;
+    }
+
+    /**
+     * Takes ROUTE and converts it into an HTML friendly
      * String to be passed to the frontend.
      */
-    private String getDirectionsText() {
+    private String getDirectionsText(List<Long> route) {
 
-        List<Router.NavigationDirection> directions = Router.routeDirections(SEMANTIC_STREET_GRAPH, ROUTE_LIST);
+        List<Router.NavigationDirection> directions = Router.routeDirections(SEMANTIC_STREET_GRAPH, route);
         if (directions == null || directions.isEmpty()) {
             return "";
         }
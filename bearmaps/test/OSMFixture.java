@@ -0,0 +1,391 @@
+package bearmaps.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * A small OSM map built in code, for tests that need a map with a given
+ * shape. It is written to a temporary file as OSM XML or as OSM PBF, with
+ * the same content either way, so that the readers can be compared.
+ */
+class OSMFixture {
+    private final List<Long> nodes = new ArrayList<>();
+    private final List<double[]> coordinates = new ArrayList<>();
+    private final List<String> nodeNames = new ArrayList<>();
+    private final List<Long> wayIds = new ArrayList<>();
+    private final List<long[]> wayRefs = new ArrayList<>();
+    private final List<Map<String, String>> wayTags = new ArrayList<>();
+    private final List<long[]> restrictions = new ArrayList<>();
+    private final List<String> restrictionTypes = new ArrayList<>();
+
+    /** Adds the node with id ID at LAT, LON, named NAME if it is not null. */
+    OSMFixture node(long id, double lat, double lon, String name) {
+        nodes.add(id);
+        coordinates.add(new double[]{lat, lon});
+        nodeNames.add(name);
+        return this;
+    }
+
+    OSMFixture node(long id, double lat, double lon) {
+        return node(id, lat, lon, null);
+    }
+
+    /** Adds the way with id ID through REFS, tagged with KEYSANDVALUES in pairs. */
+    OSMFixture way(long id, long[] refs, String... keysAndValues) {
+        Map<String, String> tags = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            tags.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        wayIds.add(id);
+        wayRefs.add(refs);
+        wayTags.add(tags);
+        return this;
+    }
+
+    /** Adds a restriction relation of type RESTRICTION, such as no_left_turn. */
+    OSMFixture restriction(String restriction, long fromWay, long via, long toWay) {
+        restrictions.add(new long[]{fromWay, via, toWay});
+        restrictionTypes.add(restriction);
+        return this;
+    }
+
+    /**
+     * Returns a ROWS by COLS grid of streets about a hundred yards apart,
+     * one way per row and per column, with a random highway type, name and
+     * maxspeed on each, a few named nodes and a few turn restrictions.
+     * Node (r, c) has id 1000 + r * COLS + c.
+     */
+    static OSMFixture grid(int rows, int cols, long seed) {
+        String[] types = {"residential", "tertiary", "secondary", "primary", "unclassified"};
+        String[] speeds = {null, "25 mph", "40", "35 mph", "none"};
+        Random random = new Random(seed);
+        OSMFixture map = new OSMFixture();
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                double lat = 37.87 + r * 0.001 + random.nextDouble() * 0.0002;
+                double lon = -122.26 + c * 0.001 + random.nextDouble() * 0.0002;
+                map.node(1000 + r * cols + c, lat, lon,
+                        random.nextInt(10) == 0 ? "Place " + (r * cols + c) : null);
+            }
+        }
+        long wayId = 1;
+        for (int r = 0; r < rows; r++) {
+            long[] refs = new long[cols];
+            for (int c = 0; c < cols; c++) {
+                refs[c] = 1000 + r * cols + c;
+            }
+            map.way(wayId++, refs, "highway", types[random.nextInt(types.length)],
+                    "name", "Row " + r, "maxspeed", speeds[random.nextInt(speeds.length)]);
+        }
+        for (int c = 0; c < cols; c++) {
+            long[] refs = new long[rows];
+            for (int r = 0; r < rows; r++) {
+                refs[r] = 1000 + r * cols + c;
+            }
+            map.way(wayId++, refs, "highway", types[random.nextInt(types.length)],
+                    "name", "Column " + c, "maxspeed", speeds[random.nextInt(speeds.length)]);
+        }
+        for (int i = 0; i < rows * cols / 20; i++) {
+            int r = random.nextInt(rows);
+            int c = random.nextInt(cols);
+            map.restriction(random.nextBoolean() ? "no_left_turn" : "only_straight_on",
+                    1 + r, 1000 + r * cols + c, 1 + rows + c);
+        }
+        return map;
+    }
+
+    /** Writes the map as OSM XML to a new temporary file and returns its path. */
+    String writeXML() throws IOException {
+        return writeXML(0);
+    }
+
+    /**
+     * Writes the map as OSM XML, with untagged nodes and non-highway ways
+     * that do not change the graph mixed in until the file is at least
+     * PADDING bytes long, and returns its path.
+     */
+    String writeXML(long padding) throws IOException {
+        File file = File.createTempFile("fixture", ".osm.xml");
+        file.deleteOnExit();
+        long fillerPerElement = padding / Math.max(1, nodes.size() + wayIds.size());
+        long fillerId = Long.MAX_VALUE / 2;
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            out.println("<osm version=\"0.6\" generator=\"OSMFixture\">");
+            for (int i = 0; i < nodes.size(); i++) {
+                fillerId = filler(out, fillerPerElement, fillerId, false);
+                out.printf(Locale.ROOT, "  <node id=\"%d\" lat=\"%.7f\" lon=\"%.7f\"",
+                        nodes.get(i), coordinates.get(i)[0], coordinates.get(i)[1]);
+                if (nodeNames.get(i) == null) {
+                    out.println("/>");
+                } else {
+                    out.println(">");
+                    out.println("    <tag k=\"name\" v=\"" + nodeNames.get(i) + "\"/>");
+                    out.println("  </node>");
+                }
+            }
+            for (int i = 0; i < wayIds.size(); i++) {
+                fillerId = filler(out, fillerPerElement, fillerId, true);
+                out.println("  <way id=\"" + wayIds.get(i) + "\">");
+                for (long ref : wayRefs.get(i)) {
+                    out.println("    <nd ref=\"" + ref + "\"/>");
+                }
+                for (Map.Entry<String, String> tag : wayTags.get(i).entrySet()) {
+                    if (tag.getValue() != null) {
+                        out.println("    <tag k=\"" + tag.getKey() + "\" v=\"" + tag.getValue()
+                                + "\"/>");
+                    }
+                }
+                out.println("  </way>");
+            }
+            for (int i = 0; i < restrictions.size(); i++) {
+                long[] r = restrictions.get(i);
+                out.println("  <relation id=\"" + (i + 1) + "\">");
+                out.println("    <member type=\"way\" ref=\"" + r[0] + "\" role=\"from\"/>");
+                out.println("    <member type=\"node\" ref=\"" + r[1] + "\" role=\"via\"/>");
+                out.println("    <member type=\"way\" ref=\"" + r[2] + "\" role=\"to\"/>");
+                out.println("    <tag k=\"type\" v=\"restriction\"/>");
+                out.println("    <tag k=\"restriction\" v=\"" + restrictionTypes.get(i) + "\"/>");
+                out.println("  </relation>");
+            }
+            out.println("</osm>");
+        }
+        return file.getPath();
+    }
+
+    /* Writes about BYTES bytes of elements that add nothing to the graph,
+       nodes or else ways of a building, and returns the next filler id. */
+    private static long filler(PrintWriter out, long bytes, long id, boolean ways) {
+        for (long written = 0; written < bytes; id++) {
+            String element = ways
+                    ? "  <way id=\"" + id + "\"><nd ref=\"" + id + "\"/><nd ref=\"" + (id + 1)
+                    + "\"/><tag k=\"building\" v=\"yes\"/></way>"
+                    : "  <node id=\"" + id + "\" lat=\"37.8\" lon=\"-122.2\"/>";
+            out.println(element);
+            written += element.length() + 1;
+        }
+        return id;
+    }
+
+    /**
+     * Writes the map as OSM PBF to a new temporary file and returns its
+     * path. Nodes are dense, and every block is zlib-compressed.
+     */
+    String writePBF() throws IOException {
+        return writePBF(false);
+    }
+
+    /**
+     * Writes the map as OSM PBF, with the compressed data of its data block
+     * cut short if TRUNCATED, and returns its path.
+     */
+    String writePBF(boolean truncated) throws IOException {
+        File file = File.createTempFile("fixture", ".osm.pbf");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(pbfFile(truncated));
+        }
+        return file.getPath();
+    }
+
+    private byte[] pbfFile(boolean truncated) throws IOException {
+        Protobuf header = new Protobuf();
+        header.string(4, "OsmSchema-V0.6");
+        header.string(4, "DenseNodes");
+
+        List<String> strings = new ArrayList<>();
+        strings.add("");
+        Protobuf dense = new Protobuf();
+        long[] ids = new long[nodes.size()];
+        long[] lats = new long[nodes.size()];
+        long[] lons = new long[nodes.size()];
+        List<Long> keysVals = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            ids[i] = nodes.get(i);
+            lats[i] = Math.round(coordinates.get(i)[0] * 1e7);
+            lons[i] = Math.round(coordinates.get(i)[1] * 1e7);
+            if (nodeNames.get(i) != null) {
+                keysVals.add((long) index(strings, "name"));
+                keysVals.add((long) index(strings, nodeNames.get(i)));
+            }
+            keysVals.add(0L);
+        }
+        dense.packedDelta(1, ids);
+        dense.packedDelta(8, lats);
+        dense.packedDelta(9, lons);
+        dense.packed(10, toArray(keysVals));
+        Protobuf nodeGroup = new Protobuf();
+        nodeGroup.message(2, dense);
+
+        Protobuf wayGroup = new Protobuf();
+        for (int i = 0; i < wayIds.size(); i++) {
+            List<Long> keys = new ArrayList<>();
+            List<Long> vals = new ArrayList<>();
+            for (Map.Entry<String, String> tag : wayTags.get(i).entrySet()) {
+                if (tag.getValue() != null) {
+                    keys.add((long) index(strings, tag.getKey()));
+                    vals.add((long) index(strings, tag.getValue()));
+                }
+            }
+            Protobuf way = new Protobuf();
+            way.varint(1, wayIds.get(i));
+            way.packed(2, toArray(keys));
+            way.packed(3, toArray(vals));
+            way.packedDelta(8, wayRefs.get(i));
+            wayGroup.message(3, way);
+        }
+
+        Protobuf relationGroup = new Protobuf();
+        for (int i = 0; i < restrictions.size(); i++) {
+            Protobuf relation = new Protobuf();
+            relation.varint(1, i + 1);
+            relation.packed(2, new long[]{index(strings, "type"), index(strings, "restriction")});
+            relation.packed(3, new long[]{index(strings, "restriction"),
+                index(strings, restrictionTypes.get(i))});
+            relation.packed(8, new long[]{index(strings, "from"), index(strings, "via"),
+                index(strings, "to")});
+            relation.packedDelta(9, restrictions.get(i));
+            relation.packed(10, new long[]{1, 0, 1});
+            relationGroup.message(4, relation);
+        }
+
+        Protobuf table = new Protobuf();
+        for (String s : strings) {
+            table.string(1, s);
+        }
+        Protobuf block = new Protobuf();
+        block.message(1, table);
+        block.message(2, nodeGroup);
+        block.message(2, wayGroup);
+        block.message(2, relationGroup);
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        writeBlob(file, "OSMHeader", header.toByteArray(), false);
+        writeBlob(file, "OSMData", block.toByteArray(), truncated);
+        return file.toByteArray();
+    }
+
+    /* Writes DATA to OUT as a zlib-compressed blob of type TYPE, keeping
+       only the first half of the compressed data if TRUNCATED. */
+    private static void writeBlob(OutputStream out, String type, byte[] data, boolean truncated)
+            throws IOException {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        byte[] zlibData = compressed.toByteArray();
+        if (truncated) {
+            zlibData = Arrays.copyOf(zlibData, zlibData.length / 2);
+        }
+        Protobuf blob = new Protobuf();
+        blob.varint(2, data.length);
+        blob.bytes(3, zlibData);
+        byte[] blobBytes = blob.toByteArray();
+        Protobuf header = new Protobuf();
+        header.string(1, type);
+        header.varint(3, blobBytes.length);
+        byte[] headerBytes = header.toByteArray();
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(headerBytes.length);
+        dataOut.write(headerBytes);
+        dataOut.write(blobBytes);
+        dataOut.flush();
+    }
+
+    private static int index(List<String> strings, String s) {
+        int i = strings.indexOf(s);
+        if (i < 0) {
+            strings.add(s);
+            i = strings.size() - 1;
+        }
+        return i;
+    }
+
+    private static long[] toArray(List<Long> values) {
+        long[] array = new long[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    /** Just enough of a protobuf encoder for the PBF messages above. */
+    private static class Protobuf {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        void varint(int field, long value) {
+            key(field, 0);
+            raw(value);
+        }
+
+        void bytes(int field, byte[] value) {
+            key(field, 2);
+            raw(value.length);
+            out.write(value, 0, value.length);
+        }
+
+        void string(int field, String value) {
+            bytes(field, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void message(int field, Protobuf value) {
+            bytes(field, value.toByteArray());
+        }
+
+        /* Packed unsigned varints. */
+        void packed(int field, long[] values) {
+            Protobuf packed = new Protobuf();
+            for (long v : values) {
+                packed.raw(v);
+            }
+            bytes(field, packed.toByteArray());
+        }
+
+        /* Packed zigzag varints of the differences between VALUES. */
+        void packedDelta(int field, long[] values) {
+            Protobuf packed = new Protobuf();
+            long previous = 0;
+            for (long v : values) {
+                long delta = v - previous;
+                packed.raw((delta << 1) ^ (delta >> 63));
+                previous = v;
+            }
+            bytes(field, packed.toByteArray());
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+
+        private void key(int field, int wireType) {
+            raw((long) field << 3 | wireType);
+        }
+
+        private void raw(long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package bearmaps.test;
+
+import bearmaps.utils.graph.IndexedGraph;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** Helpers for checking the routes solvers return. */
+class Routes {
+    private Routes() {
+    }
+
+    /**
+     * Returns the weight of ROUTE, a list of vertex ids, in G, or infinity
+     * if two consecutive vertices of it are not joined by an edge.
+     */
+    static double weight(IndexedGraph g, List<Long> route) {
+        double weight = 0;
+        for (int i = 0; i + 1 < route.size(); i++) {
+            int v = g.indexOf(route.get(i));
+            int w = g.indexOf(route.get(i + 1));
+            double best = Double.POSITIVE_INFINITY;
+            for (int e = g.outBegin(v); e < g.outEnd(v); e++) {
+                if (g.target(e) == w) {
+                    best = Math.min(best, g.weight(e));
+                }
+            }
+            weight += best;
+        }
+        return weight;
+    }
+
+    /**
+     * Returns the distance from vertex index SOURCE to every vertex of G by
+     * a plain Dijkstra search, or infinity where there is no path.
+     */
+    static double[] distances(IndexedGraph g, int source) {
+        double[] dist = new double[g.numVertices()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        dist[source] = 0;
+        PriorityQueue<double[]> pq = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+        pq.add(new double[]{0, source});
+        while (!pq.isEmpty()) {
+            double[] entry = pq.poll();
+            int v = (int) entry[1];
+            if (entry[0] > dist[v]) {
+                continue;
+            }
+            for (int e = g.outBegin(v); e < g.outEnd(v); e++) {
+                double nd = dist[v] + g.weight(e);
+                if (nd < dist[g.target(e)]) {
+                    dist[g.target(e)] = nd;
+                    pq.add(new double[]{nd, g.target(e)});
+                }
+            }
+        }
+        return dist;
+    }
+}
@@ -0,0 +1,95 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.graph.AlternativeRoutes;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.IndexedAStarSolver;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the routes AlternativeRoutes keeps on the Berkeley extract
+ * start with a shortest one and pass its stretch and overlap filters.
+ */
+public class TestAlternativeRoutes {
+    private static final String OSM_DB_PATH = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static final int NUM_QUERIES = 200;
+    private static final int K = 3;
+    private static final double DELTA = 1e-9;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        initialized = true;
+    }
+
+    @Test
+    public void testRoutesPassTheFilters() {
+        Random random = new Random(22);
+        int numAlternatives = 0;
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            long start = graph.idOf(random.nextInt(graph.numVertices()));
+            long end = graph.idOf(random.nextInt(graph.numVertices()));
+            ShortestPathsSolver<Long> expected = new IndexedAStarSolver(graph, start, end, 60);
+            AlternativeRoutes actual = new AlternativeRoutes(graph, start, end, K,
+                    Deadline.after(60));
+            assertEquals(expected.outcome(), actual.outcome());
+            if (expected.outcome() != SolverOutcome.SOLVED) {
+                assertTrue(actual.routes().isEmpty());
+                continue;
+            }
+            double shortest = expected.solutionWeight();
+            assertTrue(actual.routes().size() >= 1 && actual.routes().size() <= K);
+            assertEquals(shortest, actual.weights().get(0), DELTA);
+            Set<Integer> used = new HashSet<>();
+            for (int r = 0; r < actual.routes().size(); r++) {
+                List<Long> route = actual.routes().get(r);
+                double weight = actual.weights().get(r);
+                assertEquals(start, (long) route.get(0));
+                assertEquals(end, (long) route.get(route.size() - 1));
+                assertEquals(weight, Routes.weight(graph, route), DELTA);
+                assertTrue(weight <= (1 + AlternativeRoutes.MAX_STRETCH) * shortest + DELTA);
+                assertEquals(route.size(), new HashSet<>(route).size());
+                double shared = 0;
+                Set<Integer> edges = new HashSet<>();
+                for (int j = 0; j + 1 < route.size(); j++) {
+                    int e = graph.edgeIndex(route.get(j), route.get(j + 1));
+                    edges.add(e);
+                    if (used.contains(e)) {
+                        shared += graph.weight(e);
+                    }
+                }
+                if (r > 0) {
+                    assertTrue(shared <= AlternativeRoutes.MAX_SHARING * shortest + DELTA);
+                    numAlternatives++;
+                }
+                used.addAll(edges);
+            }
+        }
+        assertTrue(numAlternatives > 0);
+    }
+
+    @Test
+    public void testSameStartAndEnd() {
+        long v = graph.idOf(0);
+        AlternativeRoutes routes = new AlternativeRoutes(graph, v, v, K, Deadline.after(60));
+        assertEquals(SolverOutcome.SOLVED, routes.outcome());
+        assertEquals(1, routes.routes().size());
+        assertEquals(0, routes.weights().get(0), 0);
+    }
+}
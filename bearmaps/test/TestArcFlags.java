@@ -0,0 +1,86 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.IndexedAStarSolver;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.arcflags.ArcFlags;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Checks A* restricted to flagged edges against plain A* on the Berkeley extract. */
+public class TestArcFlags {
+    private static final String OSM_DB_PATH = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static final int NUM_QUERIES = 500;
+    private static final double DELTA = 1e-9;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        graph.buildArcFlags();
+        initialized = true;
+    }
+
+    @Test
+    public void testMatchesAStar() {
+        ArcFlags flags = graph.arcFlags();
+        Random random = new Random(20);
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            long start = graph.idOf(random.nextInt(graph.numVertices()));
+            long end = graph.idOf(random.nextInt(graph.numVertices()));
+            ShortestPathsSolver<Long> expected = new IndexedAStarSolver(graph, start, end, 60);
+            ShortestPathsSolver<Long> actual = new IndexedAStarSolver(graph,
+                    graph::estimatedDistance, flags, start, end, Deadline.after(60));
+            assertEquals(expected.outcome(), actual.outcome());
+            if (expected.outcome() == SolverOutcome.SOLVED) {
+                assertEquals(expected.solutionWeight(), actual.solutionWeight(), DELTA);
+                assertEquals(actual.solutionWeight(), Routes.weight(graph, actual.solution()),
+                        DELTA);
+            }
+        }
+    }
+
+    /** Every edge between two vertices of one cell starts a shortest path into it. */
+    @Test
+    public void testEdgesInsideACellAreFlagged() {
+        ArcFlags flags = graph.arcFlags();
+        for (int v = 0; v < graph.numVertices(); v++) {
+            for (int e = graph.outBegin(v); e < graph.outEnd(v); e++) {
+                int c = flags.cell(v);
+                if (flags.cell(graph.target(e)) == c) {
+                    assertTrue(flags.allows(e, c));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        ArcFlags flags = graph.arcFlags();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        flags.write(new DataOutputStream(bytes));
+        ArcFlags read = ArcFlags.read(ByteBuffer.wrap(bytes.toByteArray()));
+        for (int v = 0; v < graph.numVertices(); v++) {
+            assertEquals(flags.cell(v), read.cell(v));
+            for (int e = graph.outBegin(v); e < graph.outEnd(v); e++) {
+                for (int c = 0; c < ArcFlags.DEFAULT_CELLS; c++) {
+                    assertEquals(flags.allows(e, c), read.allows(e, c));
+                }
+            }
+        }
+    }
+}
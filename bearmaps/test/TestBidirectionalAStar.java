@@ -0,0 +1,76 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.graph.BidirectionalAStarSolver;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.IndexedAStarSolver;
+import bearmaps.utils.graph.LowerBound;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.alt.Landmarks;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks BidirectionalAStarSolver, on one thread and on two, against plain
+ * A* on a generated grid.
+ */
+public class TestBidirectionalAStar {
+    private static final int NUM_QUERIES = 300;
+    private static final double DELTA = 1e-9;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSMFixture.grid(20, 20, 7).writeXML());
+        initialized = true;
+    }
+
+    @Test
+    public void testMatchesAStar() {
+        assertMatchesAStar(graph::estimatedDistance, false, 7);
+    }
+
+    @Test
+    public void testParallelMatchesAStar() {
+        assertMatchesAStar(graph::estimatedDistance, true, 8);
+    }
+
+    @Test
+    public void testLandmarkBoundMatchesAStar() {
+        Landmarks landmarks = Landmarks.select(graph, Landmarks.DEFAULT_COUNT);
+        LowerBound bound = (v, goal) -> Math.max(graph.estimatedDistance(v, goal),
+                landmarks.lowerBound(v, goal));
+        assertMatchesAStar(bound, false, 9);
+        assertMatchesAStar(bound, true, 10);
+    }
+
+    private static void assertMatchesAStar(LowerBound bound, boolean parallel, long seed) {
+        assertTrue(graph.numVertices() > 0);
+        Random random = new Random(seed);
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            long start = graph.idOf(random.nextInt(graph.numVertices()));
+            long end = graph.idOf(random.nextInt(graph.numVertices()));
+            ShortestPathsSolver<Long> expected = new IndexedAStarSolver(graph, start, end, 60);
+            ShortestPathsSolver<Long> actual = new BidirectionalAStarSolver(graph, bound,
+                    start, end, Deadline.after(60), parallel);
+            assertEquals(expected.outcome(), actual.outcome());
+            if (expected.outcome() == SolverOutcome.SOLVED) {
+                assertEquals(expected.solutionWeight(), actual.solutionWeight(), DELTA);
+                assertEquals(actual.solutionWeight(), Routes.weight(graph, actual.solution()),
+                        DELTA);
+                assertEquals(start, (long) actual.solution().get(0));
+                assertEquals(end, (long) actual.solution().get(actual.solution().size() - 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.IndexedAStarSolver;
+import bearmaps.utils.graph.LowerBound;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.chain.ChainSolver;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks ChainSolver against plain A*, between every pair of vertices of
+ * the tiny extract and between random ones of the Berkeley extract.
+ */
+public class TestChainSolver {
+    private static final String OSM_DB_PATH_TINY = "../library-su19/data/proj3_xml/tiny-clean.osm.xml";
+    private static final String OSM_DB_PATH = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static final int NUM_QUERIES = 500;
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void testAllPairsTiny() throws Exception {
+        AugmentedStreetMapGraph g = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+        assertTrue(g.chains().numChainVertices() > 0);
+        for (int from = 0; from < g.numVertices(); from++) {
+            for (int to = 0; to < g.numVertices(); to++) {
+                assertSameRoute(g, g.idOf(from), g.idOf(to));
+            }
+        }
+    }
+
+    @Test
+    public void testRandomBerkeley() throws Exception {
+        AugmentedStreetMapGraph g = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        assertTrue(g.chains().numChainVertices() > 0);
+        Random random = new Random(18);
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            assertSameRoute(g, g.idOf(random.nextInt(g.numVertices())),
+                    g.idOf(random.nextInt(g.numVertices())));
+        }
+    }
+
+    private static void assertSameRoute(AugmentedStreetMapGraph g, long start, long end) {
+        LowerBound bound = g::estimatedDistance;
+        ShortestPathsSolver<Long> expected = new IndexedAStarSolver(g, start, end, 60);
+        ShortestPathsSolver<Long> actual = new ChainSolver(g.chains(), bound, start, end,
+                Deadline.after(60));
+        assertEquals(expected.outcome(), actual.outcome());
+        if (expected.outcome() == SolverOutcome.SOLVED) {
+            assertEquals(expected.solutionWeight(), actual.solutionWeight(), DELTA);
+            assertEquals(actual.solutionWeight(), Routes.weight(g, actual.solution()), DELTA);
+            assertEquals(start, (long) actual.solution().get(0));
+            assertEquals(end, (long) actual.solution().get(actual.solution().size() - 1));
+        }
+    }
+}
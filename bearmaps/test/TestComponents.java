@@ -0,0 +1,245 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.Router;
+import bearmaps.utils.graph.Components;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.IndexedGraph;
+import bearmaps.utils.graph.NoPathSolver;
+import bearmaps.utils.graph.streetmap.RoutingProfile;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the components Components labels against plain reachability, on
+ * random directed graphs and a long one-way chain, and that Router and
+ * closest use them on a generated grid with an island off its corner.
+ */
+public class TestComponents {
+    private static final int GRID = 15;
+    private static final long ISLAND_FROM = 1, ISLAND_TO = 2;
+    private static final double ISLAND_LAT = 37.86, ISLAND_LON = -122.25;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSMFixture.grid(GRID, GRID, 19)
+                .node(ISLAND_FROM, ISLAND_LAT, ISLAND_LON)
+                .node(ISLAND_TO, ISLAND_LAT, ISLAND_LON + 0.001)
+                .way(100, new long[]{ISLAND_FROM, ISLAND_TO}, "highway", "residential")
+                .writeXML());
+        initialized = true;
+    }
+
+    @Test
+    public void testMatchesReachability() {
+        Random random = new Random(19);
+        for (int k = 0; k < 50; k++) {
+            int n = 1 + random.nextInt(40);
+            int[][] edges = new int[random.nextInt(2 * n)][];
+            for (int i = 0; i < edges.length; i++) {
+                edges[i] = new int[]{random.nextInt(n), random.nextInt(n)};
+            }
+            Digraph g = new Digraph(n, edges);
+            Components components = Components.of(g);
+            boolean[][] reaches = new boolean[n][];
+            for (int v = 0; v < n; v++) {
+                reaches[v] = reachable(g, v);
+            }
+            int total = 0;
+            for (int c = 0; c < components.numComponents(); c++) {
+                total += components.size(c);
+            }
+            assertEquals(n, total);
+            for (int v = 0; v < n; v++) {
+                for (int w = 0; w < n; w++) {
+                    boolean strong = reaches[v][w] && reaches[w][v];
+                    assertEquals(strong, components.component(v) == components.component(w));
+                    if (reaches[v][w]) {
+                        assertTrue(components.mayReach(v, w));
+                        assertTrue(components.component(w) <= components.component(v));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLongChainDoesNotOverflow() {
+        int n = 200000;
+        int[][] edges = new int[n - 1][];
+        for (int v = 0; v + 1 < n; v++) {
+            edges[v] = new int[]{v, v + 1};
+        }
+        Components components = Components.of(new Digraph(n, edges));
+        assertEquals(n, components.numComponents());
+        assertTrue(components.mayReach(0, n - 1));
+        assertFalse(components.mayReach(n - 1, 0));
+    }
+
+    @Test
+    public void testIslandIsUnreachable() {
+        Components components = graph.components();
+        int island = graph.indexOf(ISLAND_FROM);
+        int corner = graph.indexOf(1000);
+        assertTrue(components.mayReach(island, graph.indexOf(ISLAND_TO)));
+        assertFalse(components.mayReach(island, corner));
+        assertFalse(components.mayReach(corner, island));
+        assertEquals(GRID * GRID, components.size(components.largest()));
+    }
+
+    @Test
+    public void testRouterAnswersWithoutSearching() {
+        double lon = graph.lonAt(graph.indexOf(1000));
+        double lat = graph.latAt(graph.indexOf(1000));
+        assertTrue(Router.shortestPathSolver(graph, ISLAND_LON, ISLAND_LAT, lon, lat)
+                instanceof NoPathSolver);
+        assertTrue(Router.shortestPathSolver(graph, lon, lat, ISLAND_LON, ISLAND_LAT,
+                RoutingProfile.FASTEST, Deadline.after(60)) instanceof NoPathSolver);
+        assertTrue(Router.bidirectionalSolver(graph, lon, lat, ISLAND_LON, ISLAND_LAT,
+                RoutingProfile.SHORTEST, false, Deadline.after(60)) instanceof NoPathSolver);
+    }
+
+    @Test
+    public void testClosestSkipsTheIsland() {
+        assertEquals(ISLAND_FROM, graph.closest(ISLAND_LON, ISLAND_LAT));
+        try {
+            graph.snapToLargestComponent(true);
+            int largest = graph.components().largest();
+            Random random = new Random(20);
+            for (int i = 0; i < 500; i++) {
+                double lon = ISLAND_LON - 0.015 + random.nextDouble() * 0.03;
+                double lat = ISLAND_LAT - 0.015 + random.nextDouble() * 0.03;
+                int v = graph.indexOf(graph.closest(lon, lat));
+                assertEquals(largest, graph.components().component(v));
+            }
+            long snapped = graph.closest(ISLAND_LON, ISLAND_LAT);
+            assertTrue(snapped != ISLAND_FROM && snapped != ISLAND_TO);
+        } finally {
+            graph.snapToLargestComponent(false);
+        }
+    }
+
+    /* Returns which vertices of G can be reached from SOURCE. */
+    private static boolean[] reachable(IndexedGraph g, int source) {
+        boolean[] seen = new boolean[g.numVertices()];
+        int[] stack = new int[g.numVertices()];
+        int top = 0;
+        seen[source] = true;
+        stack[top++] = source;
+        while (top > 0) {
+            int v = stack[--top];
+            for (int e = g.outBegin(v); e < g.outEnd(v); e++) {
+                if (!seen[g.target(e)]) {
+                    seen[g.target(e)] = true;
+                    stack[top++] = g.target(e);
+                }
+            }
+        }
+        return seen;
+    }
+
+    /* A directed graph of unit edges, each a {from, to} pair, in CSR form. */
+    private static class Digraph implements IndexedGraph {
+        private final int[] outStart;
+        private final int[] targets;
+        private final int[] inStart;
+        private final int[] inEdges;
+        private final int[] sources;
+
+        Digraph(int n, int[][] edges) {
+            outStart = new int[n + 1];
+            inStart = new int[n + 1];
+            for (int[] edge : edges) {
+                outStart[edge[0] + 1]++;
+                inStart[edge[1] + 1]++;
+            }
+            for (int v = 0; v < n; v++) {
+                outStart[v + 1] += outStart[v];
+                inStart[v + 1] += inStart[v];
+            }
+            targets = new int[edges.length];
+            inEdges = new int[edges.length];
+            sources = new int[edges.length];
+            int[] nextOut = outStart.clone();
+            int[] nextIn = inStart.clone();
+            for (int[] edge : edges) {
+                int e = nextOut[edge[0]]++;
+                targets[e] = edge[1];
+                int i = nextIn[edge[1]]++;
+                inEdges[i] = e;
+                sources[i] = edge[0];
+            }
+        }
+
+        @Override
+        public int numVertices() {
+            return outStart.length - 1;
+        }
+
+        @Override
+        public int indexOf(long id) {
+            return id >= 0 && id < numVertices() ? (int) id : -1;
+        }
+
+        @Override
+        public long idOf(int v) {
+            return v;
+        }
+
+        @Override
+        public int outBegin(int v) {
+            return outStart[v];
+        }
+
+        @Override
+        public int outEnd(int v) {
+            return outStart[v + 1];
+        }
+
+        @Override
+        public int inBegin(int v) {
+            return inStart[v];
+        }
+
+        @Override
+        public int inEnd(int v) {
+            return inStart[v + 1];
+        }
+
+        @Override
+        public int inEdge(int i) {
+            return inEdges[i];
+        }
+
+        @Override
+        public int source(int i) {
+            return sources[i];
+        }
+
+        @Override
+        public int target(int e) {
+            return targets[e];
+        }
+
+        @Override
+        public double weight(int e) {
+            return 1;
+        }
+
+        @Override
+        public double estimatedDistance(int v, int goal) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.Router;
+import bearmaps.utils.graph.IndexedAStarSolver;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.ch.CHSolver;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/** Checks CHSolver against plain A* on the Berkeley extract. */
+public class TestContractionHierarchy {
+    private static final String OSM_DB_PATH = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static final int NUM_QUERIES = 500;
+    private static final double DELTA = 1e-9;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        graph.buildContractionHierarchy();
+        initialized = true;
+    }
+
+    @Test
+    public void testMatchesAStar() {
+        Random random = new Random(5);
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            long start = graph.idOf(random.nextInt(graph.numVertices()));
+            long end = graph.idOf(random.nextInt(graph.numVertices()));
+            ShortestPathsSolver<Long> expected = new IndexedAStarSolver(graph, start, end, 60);
+            ShortestPathsSolver<Long> actual = new CHSolver(graph.contractionHierarchy(), graph,
+                    start, end);
+            assertEquals(expected.outcome(), actual.outcome());
+            if (expected.outcome() == SolverOutcome.SOLVED) {
+                assertEquals(expected.solutionWeight(), actual.solutionWeight(), DELTA);
+                assertEquals(actual.solutionWeight(), Routes.weight(graph, actual.solution()),
+                        DELTA);
+                assertEquals(start, (long) actual.solution().get(0));
+                assertEquals(end, (long) actual.solution().get(actual.solution().size() - 1));
+            }
+        }
+    }
+
+    /** A way that repeats a node ref used to give a self-loop that hung the query. */
+    @Test(timeout = 10000)
+    public void testRepeatedNodeRef() throws Exception {
+        OSMFixture map = new OSMFixture()
+                .node(1, 37.870, -122.260)
+                .node(2, 37.871, -122.260)
+                .node(3, 37.872, -122.260)
+                .node(4, 37.873, -122.260)
+                .way(1, new long[]{1, 2, 2, 3, 4}, "highway", "residential");
+        AugmentedStreetMapGraph g = new AugmentedStreetMapGraph(map.writeXML());
+        int v = g.indexOf(2);
+        assertEquals(2, g.outEnd(v) - g.outBegin(v));
+        g.buildContractionHierarchy();
+        List<Long> route = Router.shortestPath(g, -122.260, 37.870, -122.260, 37.873);
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), route);
+    }
+}
@@ -0,0 +1,155 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.graph.AStarSolver;
+import bearmaps.utils.graph.IndexedAStarSolver;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.pq.IndexedDaryHeapPQ;
+import bearmaps.utils.pq.IntDaryHeap;
+import bearmaps.utils.pq.VertexIndexPQ;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs random inserts, key changes in both directions and polls on the
+ * 4-ary heaps and on a sorted set, and checks that they agree. Keys are
+ * drawn from a small range so that ties are common; under a tie the heaps
+ * may poll any of the tied items.
+ */
+public class TestDaryHeaps {
+    private static final int NUM_ITEMS = 500;
+    private static final int NUM_OPERATIONS = 200000;
+    private static final int NUM_KEYS = 50;
+    private static final int NUM_QUERIES = 200;
+
+    /** Items by key, then by item to break ties, with the key of each item. */
+    private static class ReferencePQ {
+        private final TreeSet<double[]> entries = new TreeSet<>((a, b) ->
+                a[0] != b[0] ? Double.compare(a[0], b[0]) : Double.compare(a[1], b[1]));
+        private final Map<Integer, Double> keys = new HashMap<>();
+
+        void put(int item, double key) {
+            remove(item);
+            keys.put(item, key);
+            entries.add(new double[]{key, item});
+        }
+
+        void remove(int item) {
+            Double key = keys.remove(item);
+            if (key != null) {
+                entries.remove(new double[]{key, item});
+            }
+        }
+
+        boolean contains(int item) {
+            return keys.containsKey(item);
+        }
+
+        double key(int item) {
+            return keys.get(item);
+        }
+
+        double smallestKey() {
+            return entries.first()[0];
+        }
+
+        int size() {
+            return keys.size();
+        }
+    }
+
+    @Test
+    public void testIntDaryHeap() {
+        Random random = new Random(8);
+        IntDaryHeap heap = new IntDaryHeap(NUM_ITEMS);
+        ReferencePQ reference = new ReferencePQ();
+        for (int i = 0; i < NUM_OPERATIONS; i++) {
+            int item = random.nextInt(NUM_ITEMS);
+            double key = random.nextInt(NUM_KEYS);
+            int operation = random.nextInt(4);
+            if (operation == 0 && !reference.contains(item)) {
+                heap.insert(item, key);
+                reference.put(item, key);
+            } else if (operation == 1 && reference.contains(item)) {
+                heap.changeKey(item, key);
+                reference.put(item, key);
+            } else if (operation == 2) {
+                heap.insertOrChange(item, key);
+                reference.put(item, key);
+            } else if (operation == 3 && !heap.isEmpty()) {
+                double smallest = reference.smallestKey();
+                assertEquals(smallest, heap.peekKey(), 0);
+                int polled = heap.poll();
+                assertTrue(reference.contains(polled));
+                assertEquals(smallest, reference.key(polled), 0);
+                reference.remove(polled);
+                assertFalse(heap.contains(polled));
+            }
+            assertEquals(reference.size(), heap.size());
+            assertEquals(reference.contains(item), heap.contains(item));
+            if (heap.contains(item)) {
+                assertEquals(reference.key(item), heap.key(item), 0);
+            }
+        }
+        heap.clear();
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testIndexedDaryHeapPQ() {
+        Random random = new Random(9);
+        IndexedDaryHeapPQ<Integer> pq = new IndexedDaryHeapPQ<>();
+        ReferencePQ reference = new ReferencePQ();
+        for (int i = 0; i < NUM_OPERATIONS; i++) {
+            int item = random.nextInt(NUM_ITEMS);
+            double key = random.nextInt(NUM_KEYS);
+            int operation = random.nextInt(3);
+            if (operation == 0 && !reference.contains(item)) {
+                pq.insert(item, key);
+                reference.put(item, key);
+            } else if (operation == 1 && reference.contains(item)) {
+                pq.changePriority(item, key);
+                reference.put(item, key);
+            } else if (operation == 2 && pq.size() > 0) {
+                double smallest = reference.smallestKey();
+                assertEquals(smallest, reference.key(pq.peek()), 0);
+                int polled = pq.poll();
+                assertTrue(reference.contains(polled));
+                assertEquals(smallest, reference.key(polled), 0);
+                reference.remove(polled);
+            }
+            assertEquals(reference.size(), pq.size());
+            assertEquals(reference.contains(item), pq.contains(item));
+        }
+    }
+
+    /** AStarSolver finds shortest routes on either heap. */
+    @Test
+    public void testAStarSolverOnEitherHeap() throws Exception {
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(
+                OSMFixture.grid(15, 15, 8).writeXML());
+        assertTrue(graph.numVertices() > 0);
+        Random random = new Random(10);
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            long start = graph.idOf(random.nextInt(graph.numVertices()));
+            long end = graph.idOf(random.nextInt(graph.numVertices()));
+            AStarSolver<Long> boxed = new AStarSolver<>(graph, start, end, 60,
+                    new IndexedDaryHeapPQ<>());
+            AStarSolver<Long> primitive = new AStarSolver<>(graph, start, end, 60,
+                    new VertexIndexPQ(graph));
+            ShortestPathsSolver<Long> expected = new IndexedAStarSolver(graph, start, end, 60);
+            assertEquals(expected.outcome(), boxed.outcome());
+            assertEquals(expected.outcome(), primitive.outcome());
+            assertEquals(expected.solutionWeight(), boxed.solutionWeight(), 1e-9);
+            assertEquals(expected.solutionWeight(), primitive.solutionWeight(), 1e-9);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.Router;
+import bearmaps.server.handler.impl.MatrixAPIHandler;
+import bearmaps.utils.Constants;
+import bearmaps.utils.Tuple;
+import bearmaps.utils.graph.IndexedAStarSolver;
+import bearmaps.utils.graph.OneToMany;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.ch.HubLabels;
+import bearmaps.utils.graph.ch.ManyToMany;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks each distance matrix backend, and the matrix handler on top of
+ * them, against plain A* on a generated grid with a small island that no
+ * route reaches.
+ */
+public class TestDistanceMatrix {
+    private static final int GRID = 15;
+    private static final int NUM_POINTS = 12;
+    private static final double DELTA = 1e-9;
+    private static final long ISLAND_FROM = 1, ISLAND_TO = 2;
+    private static final double ISLAND_LAT = 37.86, ISLAND_LON = -122.25;
+    private static AugmentedStreetMapGraph graph;
+    private static HubLabels labels;
+    private static int[] sources;
+    private static int[] targets;
+    private static double[][] expected;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        OSMFixture map = OSMFixture.grid(GRID, GRID, 10)
+                .node(ISLAND_FROM, ISLAND_LAT, ISLAND_LON)
+                .node(ISLAND_TO, ISLAND_LAT, ISLAND_LON + 0.001)
+                .way(100, new long[]{ISLAND_FROM, ISLAND_TO}, "highway", "residential");
+        graph = new AugmentedStreetMapGraph(map.writeXML());
+        graph.buildContractionHierarchy();
+        labels = HubLabels.build(graph.contractionHierarchy());
+
+        Random random = new Random(10);
+        sources = new int[NUM_POINTS];
+        targets = new int[NUM_POINTS];
+        for (int i = 0; i < NUM_POINTS; i++) {
+            sources[i] = graph.indexOf(1000 + random.nextInt(GRID * GRID));
+            targets[i] = graph.indexOf(1000 + random.nextInt(GRID * GRID));
+        }
+        /* One island vertex on either side, so some pairs have no route. */
+        sources[0] = graph.indexOf(ISLAND_FROM);
+        targets[0] = graph.indexOf(ISLAND_TO);
+        expected = new double[NUM_POINTS][NUM_POINTS];
+        for (int i = 0; i < NUM_POINTS; i++) {
+            for (int j = 0; j < NUM_POINTS; j++) {
+                ShortestPathsSolver<Long> solver = new IndexedAStarSolver(graph,
+                        graph.idOf(sources[i]), graph.idOf(targets[j]), 60);
+                expected[i][j] = solver.outcome() == SolverOutcome.SOLVED
+                        ? solver.solutionWeight() : Double.POSITIVE_INFINITY;
+            }
+        }
+        assertEquals(Double.POSITIVE_INFINITY, expected[0][1], 0);
+        assertEquals(Double.POSITIVE_INFINITY, expected[1][0], 0);
+        initialized = true;
+    }
+
+    @Test
+    public void testOneToMany() {
+        assertMatrix(expected, OneToMany.distances(graph, sources, targets));
+    }
+
+    @Test
+    public void testManyToMany() {
+        assertMatrix(expected, ManyToMany.distances(graph.contractionHierarchy(),
+                sources, targets));
+    }
+
+    @Test
+    public void testHubLabels() {
+        double[][] actual = new double[NUM_POINTS][NUM_POINTS];
+        for (int i = 0; i < NUM_POINTS; i++) {
+            for (int j = 0; j < NUM_POINTS; j++) {
+                actual[i][j] = labels.distance(sources[i], targets[j]);
+            }
+        }
+        assertMatrix(expected, actual);
+    }
+
+    @Test
+    public void testRouterUsesEveryBackend() {
+        long[] sourceIds = ids(sources);
+        long[] targetIds = ids(targets);
+        try {
+            graph.useHubLabels(labels);
+            assertMatrix(expected, Router.distanceMatrix(graph, sourceIds, targetIds));
+        } finally {
+            graph.useHubLabels(null);
+        }
+        assertMatrix(expected, Router.distanceMatrix(graph, sourceIds, targetIds));
+    }
+
+    @Test
+    public void testHandlerReportsUnreachableAsMinusOne() {
+        double[] sourcePoints = points(sources);
+        double[] targetPoints = points(targets);
+        Map<String, Object> result;
+        AugmentedStreetMapGraph before = Constants.SEMANTIC_STREET_GRAPH;
+        try {
+            Constants.SEMANTIC_STREET_GRAPH = graph;
+            result = new Handler().process(sourcePoints, targetPoints);
+        } finally {
+            Constants.SEMANTIC_STREET_GRAPH = before;
+        }
+        assertArrayEquals(ids(sources), (long[]) result.get("sources"));
+        assertArrayEquals(ids(targets), (long[]) result.get("targets"));
+        double[][] distances = (double[][]) result.get("distances");
+        for (int i = 0; i < NUM_POINTS; i++) {
+            for (int j = 0; j < NUM_POINTS; j++) {
+                if (expected[i][j] == Double.POSITIVE_INFINITY) {
+                    assertEquals(-1, distances[i][j], 0);
+                } else {
+                    assertEquals(expected[i][j], distances[i][j], DELTA);
+                }
+            }
+        }
+        assertEquals(-1, distances[0][1], 0);
+        assertNull(result.get("cached"));
+    }
+
+    /* Exposes processRequest, which the handler only calls from handle. */
+    private static class Handler extends MatrixAPIHandler {
+        Map<String, Object> process(double[] sourcePoints, double[] targetPoints) {
+            return processRequest(new Tuple<>(sourcePoints, targetPoints), null);
+        }
+    }
+
+    private static void assertMatrix(double[][] expected, double[][] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].length, actual[i].length);
+            for (int j = 0; j < expected[i].length; j++) {
+                if (expected[i][j] == Double.POSITIVE_INFINITY) {
+                    assertEquals(Double.POSITIVE_INFINITY, actual[i][j], 0);
+                } else {
+                    assertEquals(expected[i][j], actual[i][j], DELTA);
+                }
+            }
+        }
+    }
+
+    private static long[] ids(int[] vertices) {
+        long[] ids = new long[vertices.length];
+        for (int i = 0; i < vertices.length; i++) {
+            ids[i] = graph.idOf(vertices[i]);
+        }
+        return ids;
+    }
+
+    /* The coordinates of VERTICES as alternating longitudes and latitudes. */
+    private static double[] points(int[] vertices) {
+        double[] points = new double[2 * vertices.length];
+        for (int i = 0; i < vertices.length; i++) {
+            points[2 * i] = graph.lonAt(vertices[i]);
+            points[2 * i + 1] = graph.latAt(vertices[i]);
+        }
+        return points;
+    }
+}
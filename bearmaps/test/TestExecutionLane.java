@@ -0,0 +1,131 @@
+package bearmaps.test;
+
+import bearmaps.server.handler.ExecutionLane;
+import org.junit.Test;
+import spark.HaltException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/** Checks the admission, queueing and 503 rejection of ExecutionLane. */
+public class TestExecutionLane {
+    private static final long LONG_WAIT_MILLIS = 10000;
+
+    @Test(timeout = 10000)
+    public void testRejectsWhenFull() throws Exception {
+        ExecutionLane lane = new ExecutionLane("test-full", 1, 0, LONG_WAIT_MILLIS);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            Future<Integer> holder = pool.submit(() -> lane.run(() -> {
+                started.countDown();
+                release.await();
+                return 1;
+            }));
+            started.await();
+            assertRejected(lane);
+            assertEquals(1, lane.rejected());
+            release.countDown();
+            assertEquals(1, (int) holder.get());
+            assertEquals(2, (int) lane.run(() -> 2));
+            assertEquals(1, lane.rejected());
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testQueuesUpToTheLimit() throws Exception {
+        ExecutionLane lane = new ExecutionLane("test-queue", 1, 1, LONG_WAIT_MILLIS);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        int[] waited = new int[1];
+        Thread waiter = new Thread(() -> {
+            try {
+                waited[0] = lane.run(() -> 2);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        try {
+            Future<Integer> holder = pool.submit(() -> lane.run(() -> {
+                started.countDown();
+                release.await();
+                return 1;
+            }));
+            started.await();
+            waiter.start();
+            /* The waiter blocks in a timed wait for the permit once it is queued. */
+            while (waiter.getState() != Thread.State.TIMED_WAITING) {
+                Thread.sleep(10);
+            }
+            assertRejected(lane);
+            assertEquals(1, lane.rejected());
+            release.countDown();
+            assertEquals(1, (int) holder.get());
+            waiter.join();
+            assertEquals(2, waited[0]);
+            assertEquals(1, lane.rejected());
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testRejectsAfterTheLongestWait() throws Exception {
+        ExecutionLane lane = new ExecutionLane("test-wait", 1, 1, 50);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            pool.submit(() -> lane.run(() -> {
+                started.countDown();
+                release.await();
+                return 1;
+            }));
+            started.await();
+            long began = System.nanoTime();
+            assertRejected(lane);
+            assertEquals(1, lane.rejected());
+            if (System.nanoTime() - began < TimeUnit.MILLISECONDS.toNanos(50)) {
+                fail("Rejected before the wait was over.");
+            }
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testOverride() {
+        System.setProperty("bearmaps.lane.test-override", "2, 3, 4");
+        assertEquals(5, new ExecutionLane("test-override", 1, 0, 0).capacity());
+    }
+
+    @Test
+    public void testMalformedOverrideIsIgnored() {
+        for (String override : new String[]{"2,x,4", "2,3", "2,3,4,5", "0,3,4", "2,-1,4"}) {
+            System.setProperty("bearmaps.lane.test-malformed", override);
+            assertEquals(7, new ExecutionLane("test-malformed", 3, 4, 0).capacity());
+        }
+    }
+
+    private static void assertRejected(ExecutionLane lane) throws Exception {
+        try {
+            lane.run(() -> 0);
+            fail("The lane ran a request it had no room for.");
+        } catch (HaltException e) {
+            assertEquals(ExecutionLane.UNAVAILABLE_RESPONSE, e.statusCode());
+        }
+    }
+}
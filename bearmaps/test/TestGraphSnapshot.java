@@ -0,0 +1,119 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.graph.IndexedAStarSolver;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.ch.CHSolver;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Checks that a graph reopened from a snapshot, contraction hierarchy
+ * included, is the graph that was written.
+ */
+public class TestGraphSnapshot {
+    private static final int NUM_QUERIES = 300;
+    private static final double DELTA = 1e-9;
+    private static AugmentedStreetMapGraph graph;
+    private static AugmentedStreetMapGraph reopened;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSMFixture.grid(20, 20, 2).writeXML());
+        graph.buildContractionHierarchy();
+        File snapshot = File.createTempFile("fixture", ".snapshot");
+        snapshot.deleteOnExit();
+        graph.writeSnapshot(snapshot.getPath());
+        reopened = new AugmentedStreetMapGraph(snapshot.getPath());
+        initialized = true;
+    }
+
+    @Test
+    public void testArraysMatch() {
+        assertEquals(graph.numVertices(), reopened.numVertices());
+        assertEquals(graph.numBannedTurns(), reopened.numBannedTurns());
+        assertEquals(graph.maxSpeed(), reopened.maxSpeed());
+        for (int v = 0; v < graph.numVertices(); v++) {
+            long id = graph.idOf(v);
+            assertEquals(id, reopened.idOf(v));
+            assertEquals(graph.lon(id), reopened.lon(id), 0);
+            assertEquals(graph.lat(id), reopened.lat(id), 0);
+            assertEquals(graph.name(id), reopened.name(id));
+            assertEquals(graph.outBegin(v), reopened.outBegin(v));
+            assertEquals(graph.outEnd(v), reopened.outEnd(v));
+            for (int e = graph.outBegin(v); e < graph.outEnd(v); e++) {
+                assertEquals(graph.target(e), reopened.target(e));
+                assertEquals(graph.weight(e), reopened.weight(e), 0);
+                assertEquals(graph.edgeName(e), reopened.edgeName(e));
+                assertEquals(graph.roadClass(e), reopened.roadClass(e));
+                assertEquals(graph.speed(e), reopened.speed(e));
+            }
+            assertEquals(graph.inBegin(v), reopened.inBegin(v));
+            assertEquals(graph.inEnd(v), reopened.inEnd(v));
+            for (int i = graph.inBegin(v); i < graph.inEnd(v); i++) {
+                assertEquals(graph.inEdge(i), reopened.inEdge(i));
+                assertEquals(graph.source(i), reopened.source(i));
+            }
+        }
+    }
+
+    @Test
+    public void testClosestMatches() {
+        Random random = new Random(2);
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            double lon = -122.261 + random.nextDouble() * 0.022;
+            double lat = 37.869 + random.nextDouble() * 0.022;
+            assertEquals(graph.closest(lon, lat), reopened.closest(lon, lat));
+        }
+    }
+
+    @Test
+    public void testSearchMatches() {
+        for (String prefix : new String[]{"Pl", "place", "Place 1", "Place 3", "Nowhere"}) {
+            assertEquals(graph.getLocationsByPrefix(prefix),
+                    reopened.getLocationsByPrefix(prefix));
+        }
+        for (int v = 0; v < graph.numVertices(); v++) {
+            String name = graph.name(graph.idOf(v));
+            if (name != null) {
+                assertEquals(graph.getLocations(name), reopened.getLocations(name));
+            }
+        }
+        assertEquals(null, reopened.getLocations("Nowhere"));
+    }
+
+    @Test
+    public void testContractionHierarchyIsLoaded() {
+        assertNotNull(reopened.contractionHierarchy());
+        assertNotNull(reopened.travelTimeHierarchy());
+        assertEquals(graph.contractionHierarchy().size(),
+                reopened.contractionHierarchy().size());
+        assertEquals(graph.contractionHierarchy().numArcs(),
+                reopened.contractionHierarchy().numArcs());
+        Random random = new Random(2);
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            long start = graph.idOf(random.nextInt(graph.numVertices()));
+            long end = graph.idOf(random.nextInt(graph.numVertices()));
+            ShortestPathsSolver<Long> expected = new IndexedAStarSolver(graph, start, end, 60);
+            ShortestPathsSolver<Long> actual = new CHSolver(
+                    reopened.contractionHierarchy(), reopened, start, end);
+            assertEquals(expected.outcome(), actual.outcome());
+            if (expected.outcome() == SolverOutcome.SOLVED) {
+                assertEquals(expected.solutionWeight(), actual.solutionWeight(), DELTA);
+                assertEquals(actual.solutionWeight(), Routes.weight(reopened, actual.solution()),
+                        DELTA);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.graph.IndexedAStarSolver;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.ch.HubLabels;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/** Checks hub label distances against plain A* on the Berkeley extract. */
+public class TestHubLabels {
+    private static final String OSM_DB_PATH = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static final int NUM_QUERIES = 500;
+    private static final double DELTA = 1e-9;
+    private static AugmentedStreetMapGraph graph;
+    private static HubLabels labels;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        graph.buildContractionHierarchy();
+        labels = HubLabels.build(graph.contractionHierarchy());
+        initialized = true;
+    }
+
+    @Test
+    public void testMatchesAStar() {
+        Random random = new Random(21);
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            int from = random.nextInt(graph.numVertices());
+            int to = random.nextInt(graph.numVertices());
+            ShortestPathsSolver<Long> expected = new IndexedAStarSolver(graph,
+                    graph.idOf(from), graph.idOf(to), 60);
+            double actual = labels.distance(from, to);
+            if (expected.outcome() == SolverOutcome.SOLVED) {
+                assertEquals(expected.solutionWeight(), actual, DELTA);
+            } else {
+                assertEquals(Double.POSITIVE_INFINITY, actual, 0);
+            }
+        }
+    }
+
+    @Test
+    public void testWriteAndOpen() throws Exception {
+        File file = File.createTempFile("labels", ".labels");
+        file.deleteOnExit();
+        labels.write(file.getPath());
+        HubLabels opened = HubLabels.open(file.getPath());
+        assertEquals(labels.size(), opened.size());
+        assertEquals(labels.numEntries(), opened.numEntries());
+        Random random = new Random(22);
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            int from = random.nextInt(graph.numVertices());
+            int to = random.nextInt(graph.numVertices());
+            assertEquals(labels.distance(from, to), opened.distance(from, to), 0);
+        }
+    }
+
+    @Test
+    public void testLabelsOfAnotherGraphAreRejected() throws Exception {
+        AugmentedStreetMapGraph other = new AugmentedStreetMapGraph(
+                new OSMFixture()
+                        .node(1, 37.870, -122.260)
+                        .node(2, 37.871, -122.260)
+                        .way(1, new long[]{1, 2}, "highway", "residential")
+                        .writeXML());
+        try {
+            other.useHubLabels(labels);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertNull(other.hubLabels());
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.graph.Isochrone;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the vertices Isochrone settles against a full Dijkstra search on a
+ * generated grid, the counts at budgets that tie with a distance, and the
+ * hull drawn around them.
+ */
+public class TestIsochrone {
+    private static final int NUM_SOURCES = 20;
+    private static final double BUDGET = 0.4;
+    private static final double DELTA = 1e-9;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSMFixture.grid(20, 20, 11).writeXML());
+        initialized = true;
+    }
+
+    @Test
+    public void testMatchesDijkstra() {
+        Random random = new Random(11);
+        for (int k = 0; k < NUM_SOURCES; k++) {
+            int source = random.nextInt(graph.numVertices());
+            double[] expected = Routes.distances(graph, source);
+            Isochrone isochrone = new Isochrone(graph, source, BUDGET);
+            Set<Integer> settled = new HashSet<>();
+            for (int i = 0; i < isochrone.size(); i++) {
+                assertTrue(settled.add(isochrone.vertex(i)));
+                assertEquals(expected[isochrone.vertex(i)], isochrone.dist(i), DELTA);
+                if (i > 0) {
+                    assertTrue(isochrone.dist(i - 1) <= isochrone.dist(i));
+                }
+            }
+            for (int v = 0; v < graph.numVertices(); v++) {
+                assertEquals(expected[v] <= BUDGET, settled.contains(v));
+            }
+        }
+    }
+
+    @Test
+    public void testSizeCountsEveryTie() {
+        Isochrone isochrone = new Isochrone(graph, graph.indexOf(1000 + 10 * 20 + 10), BUDGET);
+        for (int i = 0; i < isochrone.size(); i++) {
+            double within = isochrone.dist(i);
+            int closer = 0;
+            while (isochrone.dist(closer) < within) {
+                closer++;
+            }
+            int atMost = closer;
+            while (atMost < isochrone.size() && isochrone.dist(atMost) == within) {
+                atMost++;
+            }
+            assertEquals(atMost, isochrone.size(within));
+            assertEquals(closer, isochrone.size(Math.nextDown(within)));
+        }
+        assertEquals(isochrone.size(), isochrone.size(BUDGET));
+    }
+
+    @Test
+    public void testSizeCountsExactTies() throws Exception {
+        /* Two nodes at the same place, each on its own way from the source,
+           so they are at exactly the same distance. */
+        AugmentedStreetMapGraph g = new AugmentedStreetMapGraph(new OSMFixture()
+                .node(1, 37.870, -122.26)
+                .node(2, 37.871, -122.26)
+                .node(3, 37.871, -122.26)
+                .node(4, 37.872, -122.26)
+                .way(1, new long[]{1, 2, 4}, "highway", "residential")
+                .way(2, new long[]{1, 3}, "highway", "residential")
+                .writeXML());
+        Isochrone isochrone = new Isochrone(g, g.indexOf(1), 1);
+        assertEquals(4, isochrone.size());
+        double tie = isochrone.dist(1);
+        assertEquals(tie, isochrone.dist(2), 0);
+        assertTrue(isochrone.dist(3) > tie);
+        assertEquals(1, isochrone.size(0));
+        assertEquals(1, isochrone.size(Math.nextDown(tie)));
+        assertEquals(3, isochrone.size(tie));
+        assertEquals(3, isochrone.size(Math.nextUp(tie)));
+        assertEquals(4, isochrone.size(isochrone.dist(3)));
+    }
+
+    @Test
+    public void testBoundaryIsAClosedCounterclockwiseHull() {
+        Random random = new Random(12);
+        for (int k = 0; k < NUM_SOURCES; k++) {
+            Isochrone isochrone = new Isochrone(graph, random.nextInt(graph.numVertices()),
+                    BUDGET);
+            for (double within : new double[]{BUDGET / 4, BUDGET / 2, BUDGET}) {
+                if (isochrone.size(within) < 3) {
+                    continue;
+                }
+                double[][] ring = isochrone.boundary(graph, within);
+                assertTrue(ring.length >= 4);
+                assertArrayEquals(ring[0], ring[ring.length - 1], 0);
+                double area = 0;
+                for (int i = 0; i + 1 < ring.length; i++) {
+                    area += ring[i][0] * ring[i + 1][1] - ring[i + 1][0] * ring[i][1];
+                }
+                assertTrue(area > 0);
+                for (int i = 0; i < isochrone.size(within); i++) {
+                    int v = isochrone.vertex(i);
+                    for (int j = 0; j + 1 < ring.length; j++) {
+                        double cross = (ring[j + 1][0] - ring[j][0]) * (graph.latAt(v) - ring[j][1])
+                                - (ring[j + 1][1] - ring[j][1]) * (graph.lonAt(v) - ring[j][0]);
+                        assertTrue(cross >= -1e-15);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.graph.AStarSolver;
+import bearmaps.utils.graph.IndexedAStarSolver;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.alt.LandmarkGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks AStarSolver on a LandmarkGraph, which is ALT, against plain A* on
+ * a generated grid, and that the landmark bound never overestimates.
+ */
+public class TestLandmarks {
+    private static final int NUM_QUERIES = 300;
+    private static final double DELTA = 1e-9;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSMFixture.grid(20, 20, 6).writeXML());
+        initialized = true;
+    }
+
+    @Test
+    public void testLandmarkGraphMatchesAStar() {
+        LandmarkGraph alt = new LandmarkGraph(graph, graph.landmarks());
+        Random random = new Random(6);
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            long start = graph.idOf(random.nextInt(graph.numVertices()));
+            long end = graph.idOf(random.nextInt(graph.numVertices()));
+            ShortestPathsSolver<Long> expected = new IndexedAStarSolver(graph, start, end, 60);
+            ShortestPathsSolver<Long> actual = new AStarSolver<>(alt, start, end, 60);
+            assertEquals(expected.outcome(), actual.outcome());
+            if (expected.outcome() == SolverOutcome.SOLVED) {
+                assertEquals(expected.solutionWeight(), actual.solutionWeight(), DELTA);
+                assertEquals(actual.solutionWeight(), Routes.weight(graph, actual.solution()),
+                        DELTA);
+                assertTrue(alt.estimatedDistanceToGoal(start, end)
+                        <= expected.solutionWeight() + DELTA);
+                assertTrue(graph.landmarks().lowerBound(graph.indexOf(start),
+                        graph.indexOf(end)) <= expected.solutionWeight() + DELTA);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package bearmaps.test;
+
+import bearmaps.utils.graph.streetmap.StreetMapGraph;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that ParallelOSMReader and PBFReader build the same graph as the
+ * SAX path in GraphBuildingHandler from the same map.
+ */
+public class TestOSMReaders {
+    /* PBF coordinates are rounded to 100 nanodegrees, XML ones to 7 places. */
+    private static final double COORDINATE_DELTA = 1e-7;
+    private static final double WEIGHT_DELTA = 1e-6;
+
+    @Test
+    public void testParallelReaderMatchesSAX() throws Exception {
+        OSMFixture map = OSMFixture.grid(30, 40, 1);
+        StreetMapGraph sax = new StreetMapGraph(map.writeXML());
+        StreetMapGraph parallel = new StreetMapGraph(
+                map.writeXML(StreetMapGraph.PARALLEL_XML_THRESHOLD + 1));
+        assertSameGraph(sax, parallel);
+    }
+
+    @Test
+    public void testPBFReaderMatchesSAX() throws Exception {
+        OSMFixture map = OSMFixture.grid(30, 40, 2);
+        StreetMapGraph sax = new StreetMapGraph(map.writeXML());
+        StreetMapGraph pbf = new StreetMapGraph(map.writePBF());
+        assertSameGraph(sax, pbf);
+    }
+
+    @Test(timeout = 10000)
+    public void testTruncatedPBFBlobIsRejected() throws Exception {
+        OSMFixture map = OSMFixture.grid(10, 10, 3);
+        StreetMapGraph pbf = new StreetMapGraph(map.writePBF(true));
+        assertEquals(0, pbf.numVertices());
+    }
+
+    private static void assertSameGraph(StreetMapGraph expected, StreetMapGraph actual) {
+        assertTrue(expected.numVertices() > 0);
+        assertTrue(expected.numBannedTurns() > 0);
+        assertEquals(expected.numVertices(), actual.numVertices());
+        assertEquals(expected.numBannedTurns(), actual.numBannedTurns());
+        for (int v = 0; v < expected.numVertices(); v++) {
+            long id = expected.idOf(v);
+            assertEquals(id, actual.idOf(v));
+            assertEquals(expected.latAt(v), actual.latAt(v), COORDINATE_DELTA);
+            assertEquals(expected.lonAt(v), actual.lonAt(v), COORDINATE_DELTA);
+            assertEquals(expected.name(id), actual.name(id));
+            assertEquals(expected.outBegin(v), actual.outBegin(v));
+            assertEquals(expected.outEnd(v), actual.outEnd(v));
+            for (int e = expected.outBegin(v); e < expected.outEnd(v); e++) {
+                assertEquals(expected.target(e), actual.target(e));
+                assertEquals(expected.weight(e), actual.weight(e), WEIGHT_DELTA);
+                assertEquals(expected.edgeName(e), actual.edgeName(e));
+                assertEquals(expected.roadClass(e), actual.roadClass(e));
+                assertEquals(expected.speed(e), actual.speed(e));
+            }
+            for (int i = expected.inBegin(v); i < expected.inEnd(v); i++) {
+                int in = expected.inEdge(i);
+                for (int out = expected.outBegin(v); out < expected.outEnd(v); out++) {
+                    assertEquals(expected.turnBanned(in, out), actual.turnBanned(in, out));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.Router;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.streetmap.RoadClass;
+import bearmaps.utils.graph.streetmap.RoutingProfile;
+import bearmaps.utils.graph.streetmap.StreetMapGraph;
+import bearmaps.utils.graph.streetmap.TravelTimeGraph;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the speeds and road classes read from maxspeed and highway tags,
+ * by both readers, and the fastest routes Router finds without a
+ * contraction hierarchy against Dijkstra on the travel times.
+ */
+public class TestRoadSpeeds {
+    private static final int NUM_QUERIES = 200;
+    private static final double DELTA = 1e-6;
+
+    @Test
+    public void testParsesMaxspeed() {
+        int residential = RoadClass.of("residential");
+        int primary = RoadClass.of("primary");
+        assertEquals(25, RoadClass.speed(primary, "25 mph"));
+        assertEquals(25, RoadClass.speed(primary, "40"));
+        assertEquals(31, RoadClass.speed(primary, "50 km/h"));
+        assertEquals(35, RoadClass.speed(primary, "35 mph;25 mph"));
+        assertEquals(RoadClass.defaultSpeed(primary), RoadClass.speed(primary, "none"));
+        assertEquals(RoadClass.defaultSpeed(primary), RoadClass.speed(primary, "US:urban"));
+        assertEquals(RoadClass.defaultSpeed(primary), RoadClass.speed(primary, "0"));
+        assertEquals(RoadClass.defaultSpeed(residential), RoadClass.speed(residential, null));
+        assertEquals(RoadClass.MAX_SPEED, RoadClass.speed(primary, "1000 mph"));
+        assertEquals(-1, RoadClass.of("footway"));
+    }
+
+    @Test
+    public void testReadsSpeedsAndClasses() throws Exception {
+        OSMFixture map = new OSMFixture();
+        String[][] ways = {{"residential", "25 mph"}, {"primary", "40"},
+            {"secondary", "none"}, {"tertiary", null}, {"motorway_link", "35 mph"}};
+        for (int i = 0; i <= ways.length; i++) {
+            map.node(i + 1, 37.87, -122.26 + i * 0.001);
+        }
+        for (int i = 0; i < ways.length; i++) {
+            map.way(i + 1, new long[]{i + 1, i + 2}, "highway", ways[i][0],
+                    "maxspeed", ways[i][1]);
+        }
+        for (String path : new String[]{map.writeXML(), map.writePBF()}) {
+            StreetMapGraph g = new StreetMapGraph(path);
+            int fastest = 1;
+            for (int i = 0; i < ways.length; i++) {
+                int c = RoadClass.of(ways[i][0]);
+                int speed = RoadClass.speed(c, ways[i][1]);
+                fastest = Math.max(fastest, speed);
+                for (int e : new int[]{g.edgeIndex(i + 1, i + 2), g.edgeIndex(i + 2, i + 1)}) {
+                    assertTrue(e >= 0);
+                    assertEquals(c, g.roadClass(e));
+                    assertEquals(speed, g.speed(e));
+                }
+            }
+            assertEquals(25, g.speed(g.edgeIndex(1, 2)));
+            assertEquals(25, g.speed(g.edgeIndex(2, 3)));
+            assertEquals(RoadClass.defaultSpeed(RoadClass.of("secondary")),
+                    g.speed(g.edgeIndex(3, 4)));
+            assertEquals(RoadClass.defaultSpeed(RoadClass.of("tertiary")),
+                    g.speed(g.edgeIndex(4, 5)));
+            assertEquals(fastest, g.maxSpeed());
+        }
+    }
+
+    @Test
+    public void testFastestMatchesDijkstra() throws Exception {
+        AugmentedStreetMapGraph g = new AugmentedStreetMapGraph(
+                OSMFixture.grid(20, 20, 24).writeXML());
+        TravelTimeGraph times = g.travelTimes();
+        Random random = new Random(24);
+        int numFaster = 0;
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            int start = random.nextInt(g.numVertices());
+            int end = random.nextInt(g.numVertices());
+            double[] expected = Routes.distances(times, start);
+            ShortestPathsSolver<Long> actual = Router.shortestPathSolver(g,
+                    g.lonAt(start), g.latAt(start), g.lonAt(end), g.latAt(end),
+                    RoutingProfile.FASTEST, Deadline.after(60));
+            assertEquals(SolverOutcome.SOLVED, actual.outcome());
+            assertEquals(expected[end], actual.solutionWeight(), DELTA);
+            assertEquals(actual.solutionWeight(), Routes.weight(times, actual.solution()),
+                    DELTA);
+            assertEquals(g.idOf(start), (long) actual.solution().get(0));
+            assertEquals(g.idOf(end), (long) actual.solution().get(actual.solution().size() - 1));
+            /* The fastest route is at least as long as the shortest one. */
+            double shortest = Routes.distances(g, start)[end];
+            double length = Routes.weight(g, actual.solution());
+            assertTrue(length >= shortest - DELTA);
+            if (length > shortest + DELTA) {
+                numFaster++;
+            }
+        }
+        assertTrue(numFaster > 0);
+    }
+}
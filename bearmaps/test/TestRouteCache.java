@@ -0,0 +1,142 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.graph.IndexedAStarSolver;
+import bearmaps.utils.graph.NoPathSolver;
+import bearmaps.utils.graph.RouteCache;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Checks the hits, misses and eviction of RouteCache on a generated grid. */
+public class TestRouteCache {
+    private static final int ROWS = 10;
+    private static final int COLS = 10;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+    private int solves;
+
+    @Before
+    public void setUp() throws Exception {
+        solves = 0;
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSMFixture.grid(ROWS, COLS, 12).writeXML());
+        initialized = true;
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        RouteCache cache = new RouteCache();
+        ShortestPathsSolver<Long> first = get(cache, node(0, 0), node(9, 9));
+        ShortestPathsSolver<Long> second = get(cache, node(0, 0), node(9, 9));
+        assertEquals(SolverOutcome.SOLVED, first.outcome());
+        assertFalse(RouteCache.isHit(first));
+        assertTrue(RouteCache.isHit(second));
+        assertEquals(1, solves);
+        assertEquals(first.solution(), second.solution());
+        assertEquals(first.solutionWeight(), second.solutionWeight(), 0);
+        assertEquals(0, second.numStatesExplored());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.size());
+        assertEquals(first.solution().size() + 1, cache.weight());
+
+        /* The reverse route is another pair. */
+        assertFalse(RouteCache.isHit(get(cache, node(9, 9), node(0, 0))));
+        assertEquals(2, cache.misses());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testEntryEvictionIsLeastRecentlyUsed() {
+        RouteCache cache = new RouteCache(2, RouteCache.DEFAULT_WEIGHT);
+        get(cache, node(0, 0), node(1, 1));
+        get(cache, node(0, 0), node(2, 2));
+        get(cache, node(0, 0), node(1, 1));
+        get(cache, node(0, 0), node(3, 3));
+        assertEquals(2, cache.size());
+        assertTrue(RouteCache.isHit(get(cache, node(0, 0), node(1, 1))));
+        assertFalse(RouteCache.isHit(get(cache, node(0, 0), node(2, 2))));
+    }
+
+    @Test
+    public void testWeightEviction() {
+        ShortestPathsSolver<Long> shortRoute = solve(node(0, 0), node(0, 1));
+        ShortestPathsSolver<Long> longRoute = solve(node(0, 0), node(9, 9));
+        long shortWeight = shortRoute.solution().size() + 1;
+        long longWeight = longRoute.solution().size() + 1;
+        RouteCache cache = new RouteCache(RouteCache.DEFAULT_ENTRIES, longWeight + shortWeight - 1);
+        get(cache, node(0, 0), node(0, 1));
+        get(cache, node(0, 0), node(9, 9));
+        assertEquals(1, cache.size());
+        assertEquals(longWeight, cache.weight());
+        assertTrue(RouteCache.isHit(get(cache, node(0, 0), node(9, 9))));
+
+        /* A route heavier than the whole cache is not kept at all. */
+        RouteCache small = new RouteCache(RouteCache.DEFAULT_ENTRIES, longWeight - 1);
+        get(small, node(0, 0), node(9, 9));
+        assertEquals(0, small.size());
+        assertEquals(0, small.weight());
+    }
+
+    @Test
+    public void testTimeoutIsNotCached() {
+        RouteCache cache = new RouteCache();
+        ShortestPathsSolver<Long> timeout = new NoPathSolver<Long>() {
+            @Override
+            public SolverOutcome outcome() {
+                return SolverOutcome.TIMEOUT;
+            }
+        };
+        assertEquals(SolverOutcome.TIMEOUT, cache.get(node(0, 0), node(9, 9), () -> timeout)
+                .outcome());
+        assertEquals(0, cache.size());
+        ShortestPathsSolver<Long> retried = get(cache, node(0, 0), node(9, 9));
+        assertFalse(RouteCache.isHit(retried));
+        assertEquals(SolverOutcome.SOLVED, retried.outcome());
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    public void testUnsolvableIsCached() {
+        RouteCache cache = new RouteCache();
+        cache.get(node(0, 0), node(9, 9), NoPathSolver::new);
+        ShortestPathsSolver<Long> hit = cache.get(node(0, 0), node(9, 9), NoPathSolver::new);
+        assertTrue(RouteCache.isHit(hit));
+        assertEquals(SolverOutcome.UNSOLVABLE, hit.outcome());
+        assertEquals(1, cache.weight());
+    }
+
+    @Test
+    public void testClear() {
+        RouteCache cache = new RouteCache();
+        get(cache, node(0, 0), node(9, 9));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+        assertFalse(RouteCache.isHit(get(cache, node(0, 0), node(9, 9))));
+    }
+
+    /* The id of grid node (R, C), as OSMFixture.grid numbers them. */
+    private static long node(int r, int c) {
+        return 1000 + r * COLS + c;
+    }
+
+    private ShortestPathsSolver<Long> get(RouteCache cache, long start, long end) {
+        return cache.get(start, end, () -> {
+            solves++;
+            return solve(start, end);
+        });
+    }
+
+    private static ShortestPathsSolver<Long> solve(long start, long end) {
+        return new IndexedAStarSolver(graph, start, end, 60);
+    }
+}
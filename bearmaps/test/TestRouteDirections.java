@@ -0,0 +1,100 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.Router;
+import bearmaps.Router.NavigationDirection;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the directions Router gives for routes on a small map built in
+ * code: consecutive edges on a way are merged, and edges with no name, or
+ * steps with no edge at all, are on the unknown road.
+ */
+public class TestRouteDirections {
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        /* East along Main Street, then north on an unnamed way and on two
+           ways both named Oak Avenue. */
+        graph = new AugmentedStreetMapGraph(new OSMFixture()
+                .node(1, 37.870, -122.262)
+                .node(2, 37.870, -122.261)
+                .node(3, 37.870, -122.260)
+                .node(4, 37.871, -122.260)
+                .node(5, 37.872, -122.260)
+                .node(6, 37.873, -122.260)
+                .way(10, new long[]{1, 2, 3}, "highway", "residential", "name", "Main Street")
+                .way(11, new long[]{3, 4}, "highway", "residential")
+                .way(12, new long[]{4, 5}, "highway", "tertiary", "name", "Oak Avenue")
+                .way(13, new long[]{5, 6}, "highway", "residential", "name", "Oak Avenue")
+                .writeXML());
+        initialized = true;
+    }
+
+    @Test
+    public void testMergesEdgesOnTheSameWay() {
+        List<NavigationDirection> directions = Router.routeDirections(graph,
+                Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L));
+        assertEquals(3, directions.size());
+        assertEquals(direction("Start", "Main Street", weight(1, 2) + weight(2, 3)),
+                directions.get(0).toString());
+        assertEquals(direction("Turn left", NavigationDirection.UNKNOWN_ROAD, weight(3, 4)),
+                directions.get(1).toString());
+        assertEquals(direction("Go straight", "Oak Avenue", weight(4, 5) + weight(5, 6)),
+                directions.get(2).toString());
+    }
+
+    @Test
+    public void testReverseRoute() {
+        List<NavigationDirection> directions = Router.routeDirections(graph,
+                Arrays.asList(6L, 5L, 4L, 3L, 2L));
+        assertEquals(3, directions.size());
+        assertEquals(direction("Start", "Oak Avenue", weight(6, 5) + weight(5, 4)),
+                directions.get(0).toString());
+        assertEquals(direction("Go straight", NavigationDirection.UNKNOWN_ROAD, weight(4, 3)),
+                directions.get(1).toString());
+        assertEquals(direction("Turn right", "Main Street", weight(3, 2)),
+                directions.get(2).toString());
+    }
+
+    @Test
+    public void testStepWithoutAnEdgeIsOnTheUnknownRoad() {
+        List<NavigationDirection> directions = Router.routeDirections(graph,
+                Arrays.asList(1L, 2L, 5L, 6L));
+        assertEquals(3, directions.size());
+        assertEquals(direction("Start", "Main Street", weight(1, 2)),
+                directions.get(0).toString());
+        int v = graph.indexOf(2);
+        int w = graph.indexOf(5);
+        String jump = directions.get(1).toString();
+        assertEquals(direction(jump.substring(0, jump.indexOf(" on ")),
+                NavigationDirection.UNKNOWN_ROAD, graph.estimatedDistance(v, w)), jump);
+        assertEquals(direction("Slight left", "Oak Avenue", weight(5, 6)),
+                directions.get(2).toString());
+    }
+
+    @Test
+    public void testShortRoutes() {
+        assertEquals(0, Router.routeDirections(graph, Arrays.asList(1L)).size());
+        assertEquals(1, Router.routeDirections(graph, Arrays.asList(1L, 2L)).size());
+    }
+
+    private static double weight(long from, long to) {
+        return graph.weight(graph.edgeIndex(from, to));
+    }
+
+    private static String direction(String turn, String way, double miles) {
+        return String.format("%s on %s and continue for %.3f miles.", turn, way, miles);
+    }
+}
@@ -0,0 +1,86 @@
+package bearmaps.test;
+
+import bearmaps.server.RouteStore;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/** Checks the tokens, expiry and removal of RouteStore. */
+public class TestRouteStore {
+    private static final long TTL_MILLIS = 500;
+
+    @Test
+    public void testPutAndGet() {
+        RouteStore store = new RouteStore(TTL_MILLIS);
+        long[] first = {1, 2, 3};
+        long[] second = {4, 5};
+        String a = store.put(first);
+        String b = store.put(second);
+        assertFalse(a.equals(b));
+        assertArrayEquals(first, store.get(a));
+        assertArrayEquals(second, store.get(b));
+        assertNull(store.get("no such token"));
+        assertNull(store.get(null));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void testRemove() {
+        RouteStore store = new RouteStore(TTL_MILLIS);
+        String a = store.put(new long[]{1, 2});
+        String b = store.put(new long[]{3, 4});
+        store.remove(a);
+        store.remove(null);
+        assertNull(store.get(a));
+        assertArrayEquals(new long[]{3, 4}, store.get(b));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testRemoveDropsRoutesPutUnderIt() {
+        RouteStore store = new RouteStore(TTL_MILLIS);
+        String owner = store.put(new long[]{1, 2});
+        String first = store.put(new long[]{1, 3, 2}, owner);
+        String second = store.put(new long[]{1, 4, 2}, owner);
+        String other = store.put(new long[]{5, 6});
+        store.remove(owner);
+        assertNull(store.get(first));
+        assertNull(store.get(second));
+        assertArrayEquals(new long[]{5, 6}, store.get(other));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testRouteExpires() throws InterruptedException {
+        RouteStore store = new RouteStore(TTL_MILLIS);
+        String token = store.put(new long[]{1, 2});
+        Thread.sleep(2 * TTL_MILLIS);
+        assertNull(store.get(token));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testGetKeepsRouteAlive() throws InterruptedException {
+        RouteStore store = new RouteStore(TTL_MILLIS);
+        String token = store.put(new long[]{1, 2});
+        for (int i = 0; i < 4; i++) {
+            Thread.sleep(TTL_MILLIS / 2);
+            assertArrayEquals(new long[]{1, 2}, store.get(token));
+        }
+    }
+
+    @Test
+    public void testPutSweepsExpiredRoutes() throws InterruptedException {
+        RouteStore store = new RouteStore(TTL_MILLIS);
+        store.put(new long[]{1, 2});
+        store.put(new long[]{3, 4});
+        Thread.sleep(2 * TTL_MILLIS);
+        String fresh = store.put(new long[]{5, 6});
+        assertEquals(1, store.size());
+        assertNotNull(store.get(fresh));
+    }
+}
@@ -0,0 +1,41 @@
+package bearmaps.test;
+
+import bearmaps.utils.graph.SearchWorkspace;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Checks that searches over graphs of different sizes keep their workspaces. */
+public class TestSearchWorkspace {
+    @Test
+    public void testSizesDoNotEvictEachOther() {
+        SearchWorkspace graph = SearchWorkspace.acquire(100, 0);
+        SearchWorkspace core = SearchWorkspace.acquire(40, 0);
+        assertTrue(graph != core);
+        assertTrue(graph == SearchWorkspace.acquire(100, 0));
+        assertTrue(core == SearchWorkspace.acquire(40, 0));
+        assertTrue(graph != SearchWorkspace.acquire(100, 1));
+    }
+
+    @Test
+    public void testLeastRecentSizeIsEvicted() {
+        SearchWorkspace first = SearchWorkspace.acquire(10, 0);
+        SearchWorkspace[] others = new SearchWorkspace[SearchWorkspace.MAX_SIZES - 1];
+        for (int i = 0; i < others.length; i++) {
+            others[i] = SearchWorkspace.acquire(11 + i, 0);
+        }
+        SearchWorkspace.acquire(10, 0);
+        SearchWorkspace.acquire(11 + others.length, 0);
+        assertTrue(first == SearchWorkspace.acquire(10, 0));
+        assertTrue(others[0] != SearchWorkspace.acquire(11, 0));
+    }
+
+    @Test
+    public void testAcquireStartsAFreshSearch() {
+        SearchWorkspace w = SearchWorkspace.acquire(10, 0);
+        w.set(3, 1.5, 2);
+        assertTrue(w.reached(3));
+        assertFalse(SearchWorkspace.acquire(10, 0).reached(3));
+    }
+}
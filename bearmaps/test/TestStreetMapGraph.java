@@ -0,0 +1,79 @@
+package bearmaps.test;
+
+import bearmaps.utils.graph.WeightedEdge;
+import bearmaps.utils.graph.streetmap.StreetMapGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Checks that the CSR arrays of StreetMapGraph describe one consistent graph. */
+public class TestStreetMapGraph {
+    private static final String OSM_DB_PATH_TINY = "../library-su19/data/proj3_xml/tiny-clean.osm.xml";
+    private static StreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new StreetMapGraph(OSM_DB_PATH_TINY);
+        initialized = true;
+    }
+
+    @Test
+    public void testIdsAreSortedAndIndexed() {
+        for (int v = 0; v < graph.numVertices(); v++) {
+            assertEquals(v, graph.indexOf(graph.idOf(v)));
+            if (v > 0) {
+                assertTrue(graph.idOf(v - 1) < graph.idOf(v));
+            }
+        }
+        assertEquals(-1, graph.indexOf(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void testNeighborsMatchOutgoingEdges() {
+        for (int v = 0; v < graph.numVertices(); v++) {
+            List<WeightedEdge<Long>> neighbors = graph.neighbors(graph.idOf(v));
+            assertEquals(graph.outEnd(v) - graph.outBegin(v), neighbors.size());
+            for (int e = graph.outBegin(v); e < graph.outEnd(v); e++) {
+                WeightedEdge<Long> edge = neighbors.get(e - graph.outBegin(v));
+                assertEquals(graph.idOf(v), (long) edge.from());
+                assertEquals(graph.idOf(graph.target(e)), (long) edge.to());
+                assertEquals(graph.weight(e), edge.weight(), 0);
+                assertEquals(graph.edgeName(e), edge.getName());
+            }
+        }
+    }
+
+    @Test
+    public void testIncomingEdgesMirrorOutgoingEdges() {
+        int numIncoming = 0;
+        for (int v = 0; v < graph.numVertices(); v++) {
+            for (int i = graph.inBegin(v); i < graph.inEnd(v); i++) {
+                int e = graph.inEdge(i);
+                int u = graph.source(i);
+                assertTrue(e >= graph.outBegin(u) && e < graph.outEnd(u));
+                assertEquals(v, graph.target(e));
+                numIncoming++;
+            }
+        }
+        assertEquals(graph.outEnd(graph.numVertices() - 1), numIncoming);
+    }
+
+    @Test
+    public void testNoRepeatedEdges() {
+        for (int v = 0; v < graph.numVertices(); v++) {
+            for (int e = graph.outBegin(v); e < graph.outEnd(v); e++) {
+                for (int f = graph.outBegin(v); f < e; f++) {
+                    assertTrue(graph.target(f) != graph.target(e));
+                }
+            }
+        }
+    }
+}
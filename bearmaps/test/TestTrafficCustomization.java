@@ -0,0 +1,94 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.graph.IndexedAStarSolver;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.ch.CHSolver;
+import bearmaps.utils.graph.ch.ContractionHierarchy;
+import bearmaps.utils.graph.streetmap.TravelTimeGraph;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the contraction hierarchy customized with the travel times
+ * answers as A* on the travel times does, before any speed update, under
+ * updates, and after the traffic is cleared again.
+ */
+public class TestTrafficCustomization {
+    private static final int NUM_QUERIES = 300;
+    private static final int NUM_UPDATES = 200;
+    private static final double DELTA = 1e-6;
+    private static final long QUERY_SEED = 1;
+
+    @Test
+    public void testMatchesAStarUnderTraffic() throws Exception {
+        AugmentedStreetMapGraph g = new AugmentedStreetMapGraph(
+                OSMFixture.grid(25, 25, 25).writeXML());
+        g.buildContractionHierarchy();
+        double[] free = assertMatchesAStar(g);
+
+        Random random = new Random(25);
+        int numEdges = g.outEnd(g.numVertices() - 1);
+        int[] edges = new int[NUM_UPDATES];
+        double[] mph = new double[NUM_UPDATES];
+        for (int i = 0; i < NUM_UPDATES; i++) {
+            edges[i] = random.nextInt(numEdges);
+            /* Mostly jams, and a few roads faster than any speed limit. */
+            mph[i] = random.nextInt(10) == 0 ? 80 : 2 + random.nextInt(10);
+        }
+        ContractionHierarchy before = g.travelTimeHierarchy();
+        g.updateSpeeds(edges, mph);
+        assertNotSame(before, g.travelTimeHierarchy());
+        double[] jammed = assertMatchesAStar(g);
+        int numChanged = 0;
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            if (Math.abs(jammed[i] - free[i]) > DELTA) {
+                numChanged++;
+            }
+        }
+        assertTrue(numChanged > 0);
+
+        /* Updates stack on the ones before. */
+        g.updateSpeeds(new int[]{edges[0]}, new double[]{1});
+        assertMatchesAStar(g);
+
+        g.clearTraffic();
+        double[] cleared = assertMatchesAStar(g);
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            assertEquals(free[i], cleared[i], DELTA);
+        }
+    }
+
+    /*
+     * Asserts that CHSolver on the travel time hierarchy and plain A* on the
+     * travel times agree on NUM_QUERIES random pairs, the same ones on every
+     * call, and returns the travel times, infinity where there is no route.
+     */
+    private static double[] assertMatchesAStar(AugmentedStreetMapGraph g) {
+        TravelTimeGraph times = g.travelTimes();
+        ContractionHierarchy ch = g.travelTimeHierarchy();
+        double[] result = new double[NUM_QUERIES];
+        Random random = new Random(QUERY_SEED);
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            long start = g.idOf(random.nextInt(g.numVertices()));
+            long end = g.idOf(random.nextInt(g.numVertices()));
+            ShortestPathsSolver<Long> expected = new IndexedAStarSolver(times, start, end, 60);
+            ShortestPathsSolver<Long> actual = new CHSolver(ch, g, start, end);
+            assertEquals(expected.outcome(), actual.outcome());
+            result[i] = Double.POSITIVE_INFINITY;
+            if (expected.outcome() == SolverOutcome.SOLVED) {
+                assertEquals(expected.solutionWeight(), actual.solutionWeight(), DELTA);
+                assertEquals(actual.solutionWeight(), Routes.weight(times, actual.solution()),
+                        DELTA);
+                result[i] = actual.solutionWeight();
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,128 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.Router.NavigationDirection;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.IndexedAStarSolver;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.turn.EdgeBasedAStarSolver;
+import bearmaps.utils.graph.turn.TurnCosts;
+import bearmaps.utils.graph.turn.TurnTable;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks TurnTable and EdgeBasedAStarSolver on generated maps: routes never
+ * take a banned turn, and obeying the restrictions never makes a route
+ * shorter than plain A* finds.
+ */
+public class TestTurnRestrictions {
+    private static final int NUM_QUERIES = 300;
+    private static final double DELTA = 1e-9;
+
+    /**
+     * A crossroads at node 2 of way 1, west to east through 1, 2 and 3, and
+     * way 2, north to south through 4, 2 and 5, where no turn from way 1
+     * onto way 2 is allowed. Way 3 goes around, from 3 through 6 to 4.
+     */
+    private static AugmentedStreetMapGraph crossroads() throws Exception {
+        return new AugmentedStreetMapGraph(new OSMFixture()
+                .node(1, 37.870, -122.262)
+                .node(2, 37.870, -122.261)
+                .node(3, 37.870, -122.260)
+                .node(4, 37.871, -122.261)
+                .node(5, 37.869, -122.261)
+                .node(6, 37.871, -122.260)
+                .way(1, new long[]{1, 2, 3}, "highway", "residential")
+                .way(2, new long[]{4, 2, 5}, "highway", "residential")
+                .way(3, new long[]{3, 6, 4}, "highway", "residential")
+                .restriction("no_left_turn", 1, 2, 2)
+                .writeXML());
+    }
+
+    @Test
+    public void testTurnTable() throws Exception {
+        AugmentedStreetMapGraph g = crossroads();
+        TurnTable turns = g.turnTable();
+        assertTrue(turns.numIntersections() > 0);
+        int in = g.edgeIndex(1L, 2L);
+        assertEquals(TurnTable.BANNED, turns.turn(in, g.edgeIndex(2L, 4L)));
+        assertEquals(TurnTable.BANNED, turns.turn(in, g.edgeIndex(2L, 5L)));
+        assertEquals(TurnTable.U_TURN, turns.turn(in, g.edgeIndex(2L, 1L)));
+        assertEquals(NavigationDirection.STRAIGHT, turns.turn(in, g.edgeIndex(2L, 3L)));
+        /* The restriction is from way 1, so turning the other way round is allowed. */
+        assertEquals(NavigationDirection.RIGHT,
+                turns.turn(g.edgeIndex(4L, 2L), g.edgeIndex(2L, 1L)));
+    }
+
+    @Test
+    public void testRouteGoesAroundABannedTurn() throws Exception {
+        AugmentedStreetMapGraph g = crossroads();
+        ShortestPathsSolver<Long> plain = new IndexedAStarSolver(g, 1, 4, 60);
+        ShortestPathsSolver<Long> restricted = solve(g, TurnCosts.RESTRICTIONS_ONLY, 1, 4);
+        assertEquals(Arrays.asList(1L, 2L, 4L), plain.solution());
+        assertEquals(Arrays.asList(1L, 2L, 3L, 6L, 4L), restricted.solution());
+        assertTrue(restricted.solutionWeight() > plain.solutionWeight());
+        assertEquals(Arrays.asList(4L, 2L, 1L),
+                solve(g, TurnCosts.RESTRICTIONS_ONLY, 4, 1).solution());
+    }
+
+    @Test
+    public void testGridRoutesObeyRestrictions() throws Exception {
+        AugmentedStreetMapGraph g = new AugmentedStreetMapGraph(
+                OSMFixture.grid(20, 20, 23).writeXML());
+        assertTrue(g.numBannedTurns() > 0);
+        Random random = new Random(23);
+        int numDetours = 0;
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            long start = g.idOf(random.nextInt(g.numVertices()));
+            long end = g.idOf(random.nextInt(g.numVertices()));
+            ShortestPathsSolver<Long> plain = new IndexedAStarSolver(g, start, end, 60);
+            ShortestPathsSolver<Long> restricted = solve(g, TurnCosts.RESTRICTIONS_ONLY,
+                    start, end);
+            ShortestPathsSolver<Long> penalized = solve(g, TurnCosts.DEFAULT, start, end);
+            if (plain.outcome() != SolverOutcome.SOLVED) {
+                assertNotEquals(SolverOutcome.SOLVED, restricted.outcome());
+                continue;
+            }
+            if (restricted.outcome() != SolverOutcome.SOLVED) {
+                assertNotEquals(SolverOutcome.SOLVED, penalized.outcome());
+                continue;
+            }
+            assertNoBannedTurn(g, restricted.solution());
+            assertNoBannedTurn(g, penalized.solution());
+            assertEquals(restricted.solutionWeight(), Routes.weight(g, restricted.solution()),
+                    DELTA);
+            assertTrue(restricted.solutionWeight() >= plain.solutionWeight() - DELTA);
+            assertTrue(penalized.solutionWeight() >= restricted.solutionWeight() - DELTA);
+            if (restricted.solutionWeight() > plain.solutionWeight() + DELTA) {
+                numDetours++;
+            }
+        }
+        assertTrue(numDetours > 0);
+    }
+
+    private static ShortestPathsSolver<Long> solve(AugmentedStreetMapGraph g, TurnCosts costs,
+                                                   long start, long end) {
+        return new EdgeBasedAStarSolver(g, g.turnTable(), costs, g::estimatedDistance,
+                start, end, Deadline.after(60));
+    }
+
+    /* Asserts that no two consecutive edges of ROUTE make a banned turn. */
+    private static void assertNoBannedTurn(AugmentedStreetMapGraph g, List<Long> route) {
+        for (int i = 0; i + 2 < route.size(); i++) {
+            int in = g.edgeIndex(route.get(i), route.get(i + 1));
+            int out = g.edgeIndex(route.get(i + 1), route.get(i + 2));
+            assertTrue(in >= 0 && out >= 0);
+            assertNotEquals(TurnTable.BANNED, g.turnTable().turn(in, out));
+        }
+    }
+}
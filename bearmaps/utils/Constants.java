@@ -1,10 +1,9 @@
 package bearmaps.utils;
 
 import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.server.RouteStore;
 
 import java.awt.*;
-import java.util.LinkedList;
-import java.util.List;
 
 /**
  * A class holding all the constant values used throughout the project
@@ -27,6 +26,18 @@ public class Constants {
      **/
     public static final String OSM_DB_PATH = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
 
+    /**
+     * Binary snapshot of the graph built from OSM_DB_PATH, written offline by
+     * GraphSnapshot. Used instead of the XML file when it exists.
+     */
+    public static final String SNAPSHOT_PATH = "../library-su19/data/proj3_xml/berkeley-2019.snapshot";
+
+    /**
+     * Hub labels of the graph in SNAPSHOT_PATH, written offline by HubLabels.
+     * Used for distance-only queries when it exists.
+     */
+    public static final String HUB_LABELS_PATH = "../library-su19/data/proj3_xml/berkeley-2019.labels";
+
     /** The tile images are in the IMG_ROOT folder. */
     public static final String IMG_ROOT = "../library-su19/data/proj3_imgs/";
 
@@ -42,8 +53,22 @@ public class Constants {
     public static AugmentedStreetMapGraph SEMANTIC_STREET_GRAPH;
 
     /**
-     * This is used to maintain a single List of route so that the same instance(object) is accessed
-     * from everywhere in the code. Enum is a cleaner way to achieve such a singleton pattern.
+     * Whether clicks snap only to the largest strongly connected part of the
+     * graph, so they never land on an island routes cannot reach. Set with
+     * the system property bearmaps.snapToLargestComponent=true.
      */
-    public static final List<Long> ROUTE_LIST = new LinkedList<>();
+    public static final boolean SNAP_TO_LARGEST_COMPONENT =
+            Boolean.getBoolean("bearmaps.snapToLargestComponent");
+
+    /** Routes are forgotten after this long without being drawn. */
+    public static final long ROUTE_TTL_MILLIS = 30 * 60 * 1000;
+
+    /**
+     * The routes of all users, by the token /route returned for each. /raster
+     * draws the route whose token it is given, and /clear_route forgets it.
+     */
+    public static final RouteStore ROUTE_STORE = new RouteStore(ROUTE_TTL_MILLIS);
+
+    /** Name of the request parameter that carries a route token. */
+    public static final String ROUTE_TOKEN_PARAM = "route_token";
 }
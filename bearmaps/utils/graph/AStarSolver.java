@@ -1,7 +1,6 @@
 package bearmaps.utils.graph;
 
-import bearmaps.utils.pq.MinHeapPQ;
-import edu.princeton.cs.algs4.Stopwatch;
+import bearmaps.utils.pq.IndexedDaryHeapPQ;
 
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -15,27 +14,43 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
     private HashMap<Vertex, AStarData> visited = new HashMap<>();
 
     public AStarSolver(AStarGraph<Vertex> input, Vertex start, Vertex end, double timeout) {
-        Stopwatch beep = new Stopwatch();
-        MinHeapPQ<Vertex> pq = new MinHeapPQ<>();
+        this(input, start, end, Deadline.after(timeout), new IndexedDaryHeapPQ<>());
+    }
+
+    /* Solves using PQ, which must be empty, as the fringe. Use a VertexIndexPQ
+       to run on the primitive heap when the graph is an IndexedGraph. */
+    public AStarSolver(AStarGraph<Vertex> input, Vertex start, Vertex end, double timeout,
+                       PriorityQueue<Vertex> pq) {
+        this(input, start, end, Deadline.after(timeout), pq);
+    }
+
+    /* Solves using PQ as the fringe, giving up with TIMEOUT once DEADLINE
+       expires. The deadline is checked every Deadline.CHECK_INTERVAL polls. */
+    public AStarSolver(AStarGraph<Vertex> input, Vertex start, Vertex end, Deadline deadline,
+                       PriorityQueue<Vertex> pq) {
+        long began = System.nanoTime();
+        int polls = 0;
         pq.insert(start, input.estimatedDistanceToGoal(start, end));
         visited.put(start, new AStarData(null, 0));
         while (pq.size() > 0) {
             Vertex polled = pq.poll();
-            timeSpan = beep.elapsedTime();
             // If time out
-            if (timeSpan > timeout) {
+            if (deadline.check(++polls)) {
                 outcome = SolverOutcome.TIMEOUT;
+                timeSpan = (System.nanoTime() - began) / 1e9;
                 return;
             }
             // If found solution
             else if (polled.equals(end)) {
                 outcome = SolverOutcome.SOLVED;
+                solutionWeight = visited.get(end).bestWeight;
                 Vertex curr = end;
                 solution.addLast(end);
                 while (visited.get(curr).vertFrom != null) {
                     curr = visited.get(curr).vertFrom;
                     solution.addFirst(curr);
                 }
+                timeSpan = (System.nanoTime() - began) / 1e9;
                 return;
             } else {
                 for (WeightedEdge<Vertex> e : input.neighbors(polled)) {
@@ -60,6 +75,7 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
             }
         }
         outcome = SolverOutcome.UNSOLVABLE;
+        timeSpan = (System.nanoTime() - began) / 1e9;
     }
 
 
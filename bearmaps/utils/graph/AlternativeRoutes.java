@@ -0,0 +1,265 @@
+package bearmaps.utils.graph;
+
+import bearmaps.utils.pq.IntDaryHeap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Up to K routes between two vertices by the plateau method: the shortest
+ * route and alternatives that are meaningfully different from it. A forward
+ * shortest-path tree from the start and a backward one from the end are
+ * grown in parallel, each up to (1 + MAX_STRETCH) times the shortest
+ * distance. A plateau is a maximal path whose edges are in both trees, and
+ * the route through it, down the forward tree to its end and then along
+ * the backward tree, is a candidate. The shortest route is the plateau
+ * from start to end, so all routes cost the two searches.
+ *
+ * Candidates are tried from the best score, twice their length less their
+ * plateau, and kept if they pass these admissibility filters:
+ * <ul>
+ * <li>stretch: at most (1 + MAX_STRETCH) times the shortest distance,</li>
+ * <li>overlap: at most MAX_SHARING of the shortest distance on edges of
+ * the routes already kept,</li>
+ * <li>local optimality: a plateau at least MIN_PLATEAU of the shortest
+ * distance long, so every stretch of the route that long around the
+ * middle of the plateau is itself a shortest path,</li>
+ * </ul>
+ * and if they visit no vertex twice.
+ */
+public class AlternativeRoutes {
+    public static final double MAX_STRETCH = 0.25;
+    public static final double MAX_SHARING = 0.8;
+    public static final double MIN_PLATEAU = 0.25;
+
+    private final List<List<Long>> routes = new ArrayList<>();
+    private final List<Double> weights = new ArrayList<>();
+    private SolverOutcome outcome;
+
+    /**
+     * Shortest-path tree of one search, kept in a SearchWorkspace: the
+     * distances, the vertex at the other end of the edge each vertex was
+     * reached through as its parent, and that edge as its aux value. The
+     * vertices settled are listed in order.
+     */
+    private static class Tree {
+        final SearchWorkspace ws;
+        int[] settled = new int[64];
+        int numSettled;
+        boolean expired;
+
+        Tree(SearchWorkspace ws) {
+            this.ws = ws;
+        }
+
+        boolean reached(int v) {
+            return ws.reached(v);
+        }
+
+        double dist(int v) {
+            return ws.dist(v);
+        }
+
+        int edge(int v) {
+            return (int) ws.aux(v);
+        }
+
+        int next(int v) {
+            return ws.parent(v);
+        }
+    }
+
+    public AlternativeRoutes(IndexedGraph g, long start, long end, int k, Deadline deadline) {
+        int from = g.indexOf(start);
+        int to = g.indexOf(end);
+        outcome = SolverOutcome.UNSOLVABLE;
+        if (from < 0 || to < 0 || k < 1) {
+            return;
+        }
+        /* Both workspaces are this thread's, and the backward one is handed
+           to a helper thread until it is joined. */
+        SearchWorkspace forwardWs = SearchWorkspace.acquire(g.numVertices(), 0);
+        SearchWorkspace backwardWs = SearchWorkspace.acquire(g.numVertices(), 1);
+        CompletableFuture<Tree> backward = CompletableFuture.supplyAsync(
+                () -> grow(g, backwardWs, to, from, true, deadline));
+        Tree f = grow(g, forwardWs, from, to, false, deadline);
+        Tree b = backward.join();
+        if (f.expired || b.expired) {
+            outcome = SolverOutcome.TIMEOUT;
+            return;
+        }
+        if (!f.reached(to)) {
+            return;
+        }
+        outcome = SolverOutcome.SOLVED;
+        double shortest = f.dist(to);
+        if (from == to) {
+            routes.add(Collections.singletonList(start));
+            weights.add(0.0);
+            return;
+        }
+
+        /* plateauStart[v] is the first vertex of the plateau that reaches v,
+           and plateauEnd[v] is true if the plateau ends there. */
+        int n = g.numVertices();
+        int[] plateauStart = new int[n];
+        boolean[] plateauEnd = new boolean[n];
+        for (int i = 0; i < f.numSettled; i++) {
+            int v = f.settled[i];
+            int u = f.next(v);
+            if (u != -1 && b.reached(u) && b.edge(u) == f.edge(v)) {
+                plateauStart[v] = plateauEnd[u] ? plateauStart[u] : u;
+                plateauEnd[u] = false;
+                plateauEnd[v] = true;
+            }
+        }
+
+        List<int[]> candidates = new ArrayList<>();
+        for (int v = 0; v < n; v++) {
+            if (plateauEnd[v]) {
+                candidates.add(new int[]{plateauStart[v], v});
+            }
+        }
+        candidates.sort((x, y) -> Double.compare(score(f, b, x), score(f, b, y)));
+
+        /* The shortest route is taken from the forward tree, so ties in the
+           trees cannot split it over several plateaus. */
+        boolean[] used = new boolean[g.outEnd(n - 1)];
+        addRoute(g, start, edges(f, b, from, to, to), shortest, used);
+        int[] visits = new int[n];
+        int visit = 0;
+        for (int[] c : candidates) {
+            if (routes.size() == k) {
+                break;
+            }
+            double total = f.dist(c[1]) + b.dist(c[1]);
+            double plateau = f.dist(c[1]) - f.dist(c[0]);
+            if (total > (1 + MAX_STRETCH) * shortest || plateau < MIN_PLATEAU * shortest) {
+                continue;
+            }
+            int[] edges = edges(f, b, from, c[1], to);
+            visit++;
+            visits[from] = visit;
+            double shared = 0;
+            boolean simple = true;
+            for (int i = 0; i < edges.length && simple; i++) {
+                int v = g.target(edges[i]);
+                simple = visits[v] != visit;
+                visits[v] = visit;
+                if (used[edges[i]]) {
+                    shared += g.weight(edges[i]);
+                }
+            }
+            if (simple && shared <= MAX_SHARING * shortest) {
+                addRoute(g, start, edges, total, used);
+            }
+        }
+    }
+
+    /** Keeps the route from START along EDGES, and marks its edges USED. */
+    private void addRoute(IndexedGraph g, long start, int[] edges, double weight,
+                          boolean[] used) {
+        List<Long> route = new ArrayList<>(edges.length + 1);
+        route.add(start);
+        for (int e : edges) {
+            used[e] = true;
+            route.add(g.idOf(g.target(e)));
+        }
+        routes.add(route);
+        weights.add(weight);
+    }
+
+    private static double score(Tree f, Tree b, int[] candidate) {
+        double total = f.dist(candidate[1]) + b.dist(candidate[1]);
+        return 2 * total - (f.dist(candidate[1]) - f.dist(candidate[0]));
+    }
+
+    /**
+     * Grows the shortest-path tree from ROOT in WS, backward along edges if
+     * REVERSE, until every vertex within (1 + MAX_STRETCH) times the
+     * distance to OTHER is settled. The edge of a vertex is the edge it
+     * was reached through, which in a backward tree is its first edge
+     * toward ROOT.
+     */
+    private static Tree grow(IndexedGraph g, SearchWorkspace ws, int root, int other,
+                             boolean reverse, Deadline deadline) {
+        Tree t = new Tree(ws);
+        IntDaryHeap pq = ws.heap();
+        ws.set(root, 0, -1);
+        ws.setAux(root, -1);
+        pq.insert(root, 0);
+        double bound = Double.POSITIVE_INFINITY;
+        while (!pq.isEmpty() && pq.peekKey() <= bound) {
+            int v = pq.poll();
+            if (t.numSettled == t.settled.length) {
+                t.settled = Arrays.copyOf(t.settled, 2 * t.numSettled);
+            }
+            t.settled[t.numSettled++] = v;
+            if (deadline.check(t.numSettled)) {
+                t.expired = true;
+                return t;
+            }
+            double d = ws.dist(v);
+            if (v == other) {
+                bound = (1 + MAX_STRETCH) * d;
+            }
+            if (reverse) {
+                for (int i = g.inBegin(v); i < g.inEnd(v); i++) {
+                    int e = g.inEdge(i);
+                    relax(ws, g.source(i), d + g.weight(e), e, v);
+                }
+            } else {
+                for (int e = g.outBegin(v); e < g.outEnd(v); e++) {
+                    relax(ws, g.target(e), d + g.weight(e), e, v);
+                }
+            }
+        }
+        return t;
+    }
+
+    private static void relax(SearchWorkspace ws, int w, double d, int e, int v) {
+        if (d < ws.dist(w)) {
+            ws.set(w, d, v);
+            ws.setAux(w, e);
+            ws.heap().insertOrChange(w, d);
+        }
+    }
+
+    /** Returns the edges from FROM down F to VIA and then along B to TO. */
+    private static int[] edges(Tree f, Tree b, int from, int via, int to) {
+        int forward = 0;
+        for (int v = via; v != from; v = f.next(v)) {
+            forward++;
+        }
+        int count = forward;
+        for (int v = via; v != to; v = b.next(v)) {
+            count++;
+        }
+        int[] edges = new int[count];
+        for (int v = via, i = forward; v != from; v = f.next(v)) {
+            edges[--i] = f.edge(v);
+        }
+        for (int v = via, i = forward; v != to; v = b.next(v)) {
+            edges[i++] = b.edge(v);
+        }
+        return edges;
+    }
+
+    /** Returns SOLVED if there is a route, UNSOLVABLE if not, or TIMEOUT. */
+    public SolverOutcome outcome() {
+        return outcome;
+    }
+
+    /** Returns the routes as node ids, shortest first. */
+    public List<List<Long>> routes() {
+        return routes;
+    }
+
+    /** Returns the length of each route. */
+    public List<Double> weights() {
+        return weights;
+    }
+}
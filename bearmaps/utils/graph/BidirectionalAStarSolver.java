@@ -0,0 +1,267 @@
+package bearmaps.utils.graph;
+
+import bearmaps.utils.pq.IntDaryHeap;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Bidirectional A* on an IndexedGraph. A forward search from the start and
+ * a backward search from the end run on the same reduced graph by using the
+ * average potentials pf(v) = (h(v, end) - h(start, v)) / 2 forward and
+ * pr(v) = -pf(v) backward, where h is a consistent LowerBound. With these,
+ * the searches may stop as soon as the smallest forward key plus the
+ * smallest backward key reaches mu, the length of the best path found where
+ * the two searches met, and on long routes each side settles about half the
+ * vertices a single A* search would.
+ *
+ * In parallel mode the backward search runs on the common ForkJoinPool
+ * while the forward search runs on the calling thread. Each then also
+ * stops once its own smallest key shows it cannot improve mu, and the first
+ * side to stop ends the other.
+ */
+public class BidirectionalAStarSolver implements ShortestPathsSolver<Long> {
+    private SolverOutcome outcome;
+    private double timeSpan;
+    private double solutionWeight;
+    private LinkedList<Long> solution = new LinkedList<>();
+
+    private final IndexedGraph graph;
+    private final LowerBound bound;
+    private final int from;
+    private final int to;
+    private final boolean parallel;
+    private final Deadline deadline;
+    private final Side forward;
+    private final Side backward;
+    /* Guarded by this in parallel mode. */
+    private double mu = Double.POSITIVE_INFINITY;
+    private int meet = -1;
+    private volatile boolean done;
+    private volatile boolean timedOut;
+
+    /** Solves with the graph's own estimate as the bound, on one thread. */
+    public BidirectionalAStarSolver(IndexedGraph g, long start, long end, double timeout) {
+        this(g, g::estimatedDistance, start, end, timeout, false);
+    }
+
+    public BidirectionalAStarSolver(IndexedGraph g, LowerBound bound, long start, long end,
+                                    double timeout, boolean parallel) {
+        this(g, bound, start, end, Deadline.after(timeout), parallel);
+    }
+
+    /**
+     * Gives up with TIMEOUT once DEADLINE expires, keeping the number of
+     * states settled so far. Each side checks the deadline every
+     * Deadline.CHECK_INTERVAL steps.
+     */
+    public BidirectionalAStarSolver(IndexedGraph g, LowerBound bound, long start, long end,
+                                    Deadline deadline, boolean parallel) {
+        long began = System.nanoTime();
+        this.graph = g;
+        this.bound = bound;
+        this.from = g.indexOf(start);
+        this.to = g.indexOf(end);
+        this.parallel = parallel;
+        this.deadline = deadline;
+        if (from < 0 || to < 0) {
+            forward = null;
+            backward = null;
+            outcome = SolverOutcome.UNSOLVABLE;
+            timeSpan = (System.nanoTime() - began) / 1e9;
+            return;
+        }
+        forward = new Side(false, SearchWorkspace.acquire(g.numVertices(), 0));
+        backward = new Side(true, SearchWorkspace.acquire(g.numVertices(), 1));
+        forward.other = backward;
+        backward.other = forward;
+        forward.start(from);
+        backward.start(to);
+
+        if (parallel) {
+            ForkJoinTask<?> task = ForkJoinPool.commonPool().submit(backward::runAlone);
+            forward.runAlone();
+            task.join();
+        } else {
+            runAlternating();
+        }
+
+        if (timedOut) {
+            outcome = SolverOutcome.TIMEOUT;
+        } else if (meet == -1) {
+            outcome = SolverOutcome.UNSOLVABLE;
+        } else {
+            outcome = SolverOutcome.SOLVED;
+            solutionWeight = mu;
+            for (int v = meet; v != -1; v = forward.ws.parent(v)) {
+                solution.addFirst(g.idOf(v));
+            }
+            for (int v = backward.ws.parent(meet); v != -1; v = backward.ws.parent(v)) {
+                solution.addLast(g.idOf(v));
+            }
+        }
+        timeSpan = (System.nanoTime() - began) / 1e9;
+    }
+
+    /* Expands whichever side has the smaller key until the keys prove mu optimal. */
+    private void runAlternating() {
+        for (int steps = 1; ; steps++) {
+            if (deadline.check(steps)) {
+                timedOut = true;
+                return;
+            }
+            double kf = forward.top();
+            double kb = backward.top();
+            /* An exhausted side has found every distance it can, and mu with it. */
+            if (kf == Double.POSITIVE_INFINITY || kb == Double.POSITIVE_INFINITY
+                    || kf + kb >= mu) {
+                return;
+            }
+            if (kf <= kb) {
+                forward.step();
+            } else {
+                backward.step();
+            }
+        }
+    }
+
+    /* Returns pf(V). */
+    private double potential(int v) {
+        return (bound.lowerBound(v, to) - bound.lowerBound(from, v)) / 2;
+    }
+
+    /* Records that SIDE reached V at distance D from PARENT, and the path
+       through V if it beats mu. In parallel mode this happens under the lock,
+       so each side sees every distance the other wrote before it. */
+    private void reach(Side side, int v, double d, int parent) {
+        if (parallel) {
+            synchronized (this) {
+                side.ws.set(v, d, parent);
+                updateMeet(side, v, d);
+            }
+        } else {
+            side.ws.set(v, d, parent);
+            if (side.other.ws.reached(v)) {
+                updateMeet(side, v, d);
+            }
+        }
+    }
+
+    private void updateMeet(Side side, int v, double d) {
+        double total = d + side.other.ws.dist(v);
+        if (total < mu) {
+            mu = total;
+            meet = v;
+        }
+    }
+
+    private synchronized double currentMu() {
+        return mu;
+    }
+
+    /** One direction of the search. */
+    private class Side {
+        final boolean reverse;
+        /* Distances and parents, and pf of each vertex cached as aux. */
+        final SearchWorkspace ws;
+        final IntDaryHeap pq;
+        Side other;
+        int settled;
+        /* Smallest key in pq, for the other side's stopping test. Never decreases. */
+        volatile double published = Double.NEGATIVE_INFINITY;
+
+        Side(boolean reverse, SearchWorkspace ws) {
+            this.reverse = reverse;
+            this.ws = ws;
+            this.pq = ws.heap();
+        }
+
+        double key(int v, double d) {
+            double p = ws.aux(v);
+            if (Double.isNaN(p)) {
+                p = potential(v);
+                ws.setAux(v, p);
+            }
+            return reverse ? d - p : d + p;
+        }
+
+        void start(int v) {
+            reach(this, v, 0, -1);
+            pq.insert(v, key(v, 0));
+        }
+
+        /* Returns the smallest key left, or infinity. */
+        double top() {
+            double k = pq.isEmpty() ? Double.POSITIVE_INFINITY : pq.peekKey();
+            published = k;
+            return k;
+        }
+
+        /* Settles the vertex with the smallest key. */
+        void step() {
+            int v = pq.poll();
+            settled++;
+            double d = ws.dist(v);
+            if (reverse) {
+                for (int i = graph.inBegin(v); i < graph.inEnd(v); i++) {
+                    relax(v, graph.source(i), d + graph.weight(graph.inEdge(i)));
+                }
+            } else {
+                for (int e = graph.outBegin(v); e < graph.outEnd(v); e++) {
+                    relax(v, graph.target(e), d + graph.weight(e));
+                }
+            }
+        }
+
+        void relax(int v, int w, double d) {
+            if (d < ws.dist(w)) {
+                reach(this, w, d, v);
+                pq.insertOrChange(w, key(w, d));
+            }
+        }
+
+        /* Parallel mode: runs this side until it or the other proves mu optimal. */
+        void runAlone() {
+            /* A key of at least mu + pf(to) forward, or mu + pr(from) backward,
+               means nothing this side has left can lead to a shorter path. */
+            double offset = reverse ? -potential(from) : potential(to);
+            for (int steps = 1; !done; steps++) {
+                if (deadline.check(steps)) {
+                    timedOut = true;
+                    done = true;
+                    return;
+                }
+                double k = top();
+                double m = currentMu();
+                if (k == Double.POSITIVE_INFINITY || k >= m + offset
+                        || k + other.published >= m) {
+                    done = true;
+                    return;
+                }
+                step();
+            }
+        }
+    }
+
+    public SolverOutcome outcome() {
+        return outcome;
+    }
+
+    public List<Long> solution() {
+        return solution;
+    }
+
+    public double solutionWeight() {
+        return solutionWeight;
+    }
+
+    public int numStatesExplored() {
+        return forward == null ? 0 : forward.settled + backward.settled;
+    }
+
+    public double explorationTime() {
+        return timeSpan;
+    }
+}
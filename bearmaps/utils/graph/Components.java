@@ -0,0 +1,151 @@
+package bearmaps.utils.graph;
+
+import java.util.Arrays;
+
+/**
+ * The strongly and weakly connected components of an IndexedGraph, so a
+ * search between vertices that cannot reach each other is answered without
+ * exploring anything.
+ *
+ * Strong components are numbered by Tarjan's algorithm, which finishes a
+ * component only after every component reachable from it. A vertex can
+ * therefore only reach vertices whose component number is at most its own,
+ * and never vertices in another weak component. The pass is iterative, so
+ * long chains of one-way streets do not overflow the call stack.
+ */
+public class Components {
+    private final int[] strong;
+    private final int[] weak;
+    private final int[] strongSizes;
+    private final int largest;
+
+    private Components(int[] strong, int[] weak, int[] strongSizes) {
+        this.strong = strong;
+        this.weak = weak;
+        this.strongSizes = strongSizes;
+        int best = 0;
+        for (int c = 1; c < strongSizes.length; c++) {
+            if (strongSizes[c] > strongSizes[best]) {
+                best = c;
+            }
+        }
+        largest = best;
+    }
+
+    /** Labels the components of G. Takes time linear in the size of G. */
+    public static Components of(IndexedGraph g) {
+        int n = g.numVertices();
+        int[] strong = new int[n];
+        int[] order = new int[n];
+        int[] low = new int[n];
+        /* The vertices visited but not yet in a component, in visiting order. */
+        int[] open = new int[n];
+        int numOpen = 0;
+        /* The vertices on the depth-first path, and the next edge of each to follow. */
+        int[] path = new int[n];
+        int[] nextEdge = new int[n];
+        int[] sizes = new int[Math.max(n, 1)];
+        int numStrong = 0;
+        int visited = 0;
+        /* order[v] is 0 until v is visited, and -1 once v is in a component. */
+        for (int root = 0; root < n; root++) {
+            if (order[root] != 0) {
+                continue;
+            }
+            int depth = 0;
+            path[0] = root;
+            nextEdge[0] = g.outBegin(root);
+            order[root] = low[root] = ++visited;
+            open[numOpen++] = root;
+            while (depth >= 0) {
+                int v = path[depth];
+                if (nextEdge[depth] < g.outEnd(v)) {
+                    int w = g.target(nextEdge[depth]++);
+                    if (order[w] == 0) {
+                        order[w] = low[w] = ++visited;
+                        open[numOpen++] = w;
+                        path[++depth] = w;
+                        nextEdge[depth] = g.outBegin(w);
+                    } else if (order[w] > 0 && order[w] < low[v]) {
+                        low[v] = order[w];
+                    }
+                    continue;
+                }
+                if (low[v] == order[v]) {
+                    int w;
+                    do {
+                        w = open[--numOpen];
+                        order[w] = -1;
+                        strong[w] = numStrong;
+                        sizes[numStrong]++;
+                    } while (w != v);
+                    numStrong++;
+                }
+                depth--;
+                if (depth >= 0 && low[v] < low[path[depth]]) {
+                    low[path[depth]] = low[v];
+                }
+            }
+        }
+
+        int[] weak = new int[n];
+        Arrays.fill(weak, -1);
+        int numWeak = 0;
+        for (int root = 0; root < n; root++) {
+            if (weak[root] != -1) {
+                continue;
+            }
+            /* Reuses path as the stack of a depth-first sweep ignoring direction. */
+            int top = 0;
+            path[top++] = root;
+            weak[root] = numWeak;
+            while (top > 0) {
+                int v = path[--top];
+                for (int e = g.outBegin(v); e < g.outEnd(v); e++) {
+                    int w = g.target(e);
+                    if (weak[w] == -1) {
+                        weak[w] = numWeak;
+                        path[top++] = w;
+                    }
+                }
+                for (int i = g.inBegin(v); i < g.inEnd(v); i++) {
+                    int w = g.source(i);
+                    if (weak[w] == -1) {
+                        weak[w] = numWeak;
+                        path[top++] = w;
+                    }
+                }
+            }
+            numWeak++;
+        }
+        return new Components(strong, weak, Arrays.copyOf(sizes, numStrong));
+    }
+
+    /**
+     * Returns false if there is certainly no path from V to W. True means
+     * there may be one, and there is if both are in the same strong component.
+     */
+    public boolean mayReach(int v, int w) {
+        return weak[v] == weak[w] && strong[w] <= strong[v];
+    }
+
+    /** Returns the strong component of V. */
+    public int component(int v) {
+        return strong[v];
+    }
+
+    /** Returns the number of strong components. */
+    public int numComponents() {
+        return strongSizes.length;
+    }
+
+    /** Returns the number of vertices in strong component C. */
+    public int size(int c) {
+        return strongSizes[c];
+    }
+
+    /** Returns the strong component with the most vertices. */
+    public int largest() {
+        return largest;
+    }
+}
@@ -0,0 +1,53 @@
+package bearmaps.utils.graph;
+
+/**
+ * A time budget for a search that can also be cancelled early, shared
+ * between the request that owns it and the solver running it. Reading the
+ * clock costs far more than expanding a vertex, so solvers only call
+ * expired() once every CHECK_INTERVAL expansions; check(count) does that
+ * test for them.
+ */
+public class Deadline {
+    /** Expansions between clock reads. A power of two. */
+    public static final int CHECK_INTERVAL = 256;
+
+    private final long expiresAt;
+    private volatile boolean cancelled;
+
+    private Deadline(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    /** Returns a deadline SECONDS from now. */
+    public static Deadline after(double seconds) {
+        return new Deadline(System.nanoTime() + (long) (seconds * 1e9));
+    }
+
+    /** Makes every later expired() return true. Safe to call from any thread. */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns true if the budget is spent, the deadline was cancelled, or
+     * the thread running the search was interrupted.
+     */
+    public boolean expired() {
+        return cancelled || System.nanoTime() - expiresAt > 0
+                || Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Returns true if COUNT expansions have been done since the last check
+     * and the deadline has expired. Solvers call this with a running count
+     * once per expansion.
+     */
+    public boolean check(int count) {
+        return (count & (CHECK_INTERVAL - 1)) == 0 && expired();
+    }
+
+    /** Returns the seconds left, which are negative once the budget is spent. */
+    public double remaining() {
+        return (expiresAt - System.nanoTime()) / 1e9;
+    }
+}
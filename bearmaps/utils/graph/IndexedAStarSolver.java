@@ -0,0 +1,120 @@
+package bearmaps.utils.graph;
+
+import bearmaps.utils.graph.arcflags.ArcFlags;
+import bearmaps.utils.pq.IntDaryHeap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * AStarSolver on the vertex indices of an IndexedGraph. It runs the same
+ * search in the same order, so outcomes, paths and state counts match
+ * AStarSolver on the same graph, but keeps its distances, parents and heap
+ * in this thread's SearchWorkspace instead of a HashMap of boxed vertices.
+ * Apart from the solution list, a query allocates nothing.
+ */
+public class IndexedAStarSolver implements ShortestPathsSolver<Long> {
+    private SolverOutcome outcome;
+    private double timeSpan;
+    private double solutionWeight;
+    private List<Long> solution = Collections.emptyList();
+    private int numStatesExplored;
+
+    /** Solves with the graph's own estimate as the heuristic. */
+    public IndexedAStarSolver(IndexedGraph g, long start, long end, double timeout) {
+        this(g, g::estimatedDistance, start, end, timeout);
+    }
+
+    public IndexedAStarSolver(IndexedGraph g, LowerBound heuristic, long start, long end,
+                              double timeout) {
+        this(g, heuristic, start, end, Deadline.after(timeout));
+    }
+
+    /**
+     * Gives up with TIMEOUT once DEADLINE expires, keeping the number of
+     * states explored so far. The deadline is checked every
+     * Deadline.CHECK_INTERVAL polls.
+     */
+    public IndexedAStarSolver(IndexedGraph g, LowerBound heuristic, long start, long end,
+                              Deadline deadline) {
+        this(g, heuristic, null, start, end, deadline);
+    }
+
+    /**
+     * Same as above, but only follows the edges FLAGS allows toward the
+     * cell of the goal, or every edge if FLAGS is null.
+     */
+    public IndexedAStarSolver(IndexedGraph g, LowerBound heuristic, ArcFlags flags,
+                              long start, long end, Deadline deadline) {
+        long began = System.nanoTime();
+        int polls = 0;
+        int from = g.indexOf(start);
+        int to = g.indexOf(end);
+        outcome = SolverOutcome.UNSOLVABLE;
+        if (from < 0 || to < 0) {
+            timeSpan = (System.nanoTime() - began) / 1e9;
+            return;
+        }
+        int goalCell = flags == null ? -1 : flags.cell(to);
+        SearchWorkspace w = SearchWorkspace.acquire(g.numVertices(), 0);
+        IntDaryHeap pq = w.heap();
+        pq.insert(from, heuristic.lowerBound(from, to));
+        w.set(from, 0, -1);
+        numStatesExplored = 1;
+        while (!pq.isEmpty()) {
+            int v = pq.poll();
+            if (deadline.check(++polls)) {
+                outcome = SolverOutcome.TIMEOUT;
+                break;
+            }
+            if (v == to) {
+                outcome = SolverOutcome.SOLVED;
+                solutionWeight = w.dist(to);
+                List<Long> path = new ArrayList<>();
+                for (int x = to; x != -1; x = w.parent(x)) {
+                    path.add(g.idOf(x));
+                }
+                Collections.reverse(path);
+                solution = path;
+                break;
+            }
+            double d = w.dist(v);
+            for (int e = g.outBegin(v); e < g.outEnd(v); e++) {
+                if (flags != null && !flags.allows(e, goalCell)) {
+                    continue;
+                }
+                int t = g.target(e);
+                double nd = d + g.weight(e);
+                if (!w.reached(t)) {
+                    numStatesExplored++;
+                } else if (nd >= w.dist(t)) {
+                    continue;
+                }
+                w.set(t, nd, v);
+                pq.insertOrChange(t, nd + heuristic.lowerBound(t, to));
+            }
+        }
+        timeSpan = (System.nanoTime() - began) / 1e9;
+    }
+
+    public SolverOutcome outcome() {
+        return outcome;
+    }
+
+    public List<Long> solution() {
+        return solution;
+    }
+
+    public double solutionWeight() {
+        return solutionWeight;
+    }
+
+    public int numStatesExplored() {
+        return numStatesExplored;
+    }
+
+    public double explorationTime() {
+        return timeSpan;
+    }
+}
@@ -0,0 +1,47 @@
+package bearmaps.utils.graph;
+
+/**
+ * Primitive sibling of AStarGraph. Vertices are dense int indices in
+ * [0, numVertices()) and the outgoing edges of a vertex V are the int
+ * edge indices in [outBegin(V), outEnd(V)), so a search can walk the
+ * graph without boxing or allocating a WeightedEdge per expansion.
+ */
+public interface IndexedGraph {
+    /* Returns the number of vertices in this graph. */
+    int numVertices();
+
+    /* Returns the index of the vertex with external id ID, or -1 if there
+       is no such vertex. */
+    int indexOf(long id);
+
+    /* Returns the external id of the vertex with index V. */
+    long idOf(int v);
+
+    /* Returns the index of the first outgoing edge of V. */
+    int outBegin(int v);
+
+    /* Returns one past the index of the last outgoing edge of V. */
+    int outEnd(int v);
+
+    /* Returns the index of the first incoming edge slot of V. Slots are
+       numbered separately from edges; see inEdge and source. */
+    int inBegin(int v);
+
+    /* Returns one past the index of the last incoming edge slot of V. */
+    int inEnd(int v);
+
+    /* Returns the edge index of incoming slot I, for use with weight(). */
+    int inEdge(int i);
+
+    /* Returns the vertex index that the edge in incoming slot I comes from. */
+    int source(int i);
+
+    /* Returns the vertex index that edge E points to. */
+    int target(int e);
+
+    /* Returns the weight of edge E. */
+    double weight(int e);
+
+    /* Same contract as AStarGraph.estimatedDistanceToGoal, on indices. */
+    double estimatedDistance(int v, int goal);
+}
@@ -0,0 +1,133 @@
+package bearmaps.utils.graph;
+
+import bearmaps.utils.graph.streetmap.StreetMapGraph;
+import bearmaps.utils.pq.IntDaryHeap;
+
+import java.util.Arrays;
+
+/**
+ * The vertices reachable from a source within a distance budget, found by
+ * a Dijkstra search that stops at the budget instead of at a goal. The
+ * search runs on this thread's SearchWorkspace, and only the settled
+ * vertices and their distances are kept, in order of distance, so the
+ * area reachable within any smaller budget is a prefix of them.
+ */
+public class Isochrone {
+    private final double budget;
+    private final int[] vertices;
+    private final double[] dist;
+
+    /** Settles every vertex of G within BUDGET of vertex index SOURCE. */
+    public Isochrone(IndexedGraph g, int source, double budget) {
+        this.budget = budget;
+        SearchWorkspace ws = SearchWorkspace.acquire(g.numVertices(), 0);
+        IntDaryHeap pq = ws.heap();
+        int[] settled = new int[64];
+        double[] settledDist = new double[64];
+        int size = 0;
+        ws.set(source, 0, -1);
+        pq.insert(source, 0);
+        while (!pq.isEmpty()) {
+            int v = pq.poll();
+            double d = ws.dist(v);
+            if (size == settled.length) {
+                settled = Arrays.copyOf(settled, 2 * size);
+                settledDist = Arrays.copyOf(settledDist, 2 * size);
+            }
+            settled[size] = v;
+            settledDist[size++] = d;
+            for (int e = g.outBegin(v); e < g.outEnd(v); e++) {
+                int t = g.target(e);
+                double nd = d + g.weight(e);
+                if (nd <= budget && nd < ws.dist(t)) {
+                    ws.set(t, nd, v);
+                    pq.insertOrChange(t, nd);
+                }
+            }
+        }
+        vertices = Arrays.copyOf(settled, size);
+        dist = Arrays.copyOf(settledDist, size);
+    }
+
+    /** Returns the budget the search was run with. */
+    public double budget() {
+        return budget;
+    }
+
+    /** Returns the number of vertices within the budget. */
+    public int size() {
+        return vertices.length;
+    }
+
+    /** Returns the number of vertices within WITHIN, which is at most the budget. */
+    public int size(double within) {
+        int i = Arrays.binarySearch(dist, within);
+        if (i < 0) {
+            return -i - 1;
+        }
+        /* Include every vertex at exactly WITHIN. */
+        while (i < dist.length && dist[i] == within) {
+            i++;
+        }
+        return i;
+    }
+
+    /** Returns the index of the Ith closest vertex. */
+    public int vertex(int i) {
+        return vertices[i];
+    }
+
+    /** Returns the distance of the Ith closest vertex. */
+    public double dist(int i) {
+        return dist[i];
+    }
+
+    /**
+     * Returns the convex hull of the vertices within WITHIN as a closed ring
+     * of {lon, lat} points in counterclockwise order, computed with the
+     * monotone chain algorithm on the coordinates of G.
+     */
+    public double[][] boundary(StreetMapGraph g, double within) {
+        int n = size(within);
+        /* Sort by longitude, then latitude, through boxed indices. */
+        Integer[] byLon = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            byLon[i] = vertices[i];
+        }
+        Arrays.sort(byLon, (a, b) -> g.lonAt(a) != g.lonAt(b)
+                ? Double.compare(g.lonAt(a), g.lonAt(b))
+                : Double.compare(g.latAt(a), g.latAt(b)));
+        if (n < 3) {
+            double[][] ring = new double[n][];
+            for (int i = 0; i < n; i++) {
+                ring[i] = new double[]{g.lonAt(byLon[i]), g.latAt(byLon[i])};
+            }
+            return ring;
+        }
+        int[] hull = new int[2 * n];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            while (k >= 2 && cross(g, hull[k - 2], hull[k - 1], byLon[i]) <= 0) {
+                k--;
+            }
+            hull[k++] = byLon[i];
+        }
+        for (int i = n - 2, lower = k + 1; i >= 0; i--) {
+            while (k >= lower && cross(g, hull[k - 2], hull[k - 1], byLon[i]) <= 0) {
+                k--;
+            }
+            hull[k++] = byLon[i];
+        }
+        double[][] ring = new double[k][];
+        for (int i = 0; i < k; i++) {
+            ring[i] = new double[]{g.lonAt(hull[i]), g.latAt(hull[i])};
+        }
+        return ring;
+    }
+
+    /** Returns the cross product of OA and OB, positive for a left turn. */
+    private static double cross(StreetMapGraph g, int o, int a, int b) {
+        return (g.lonAt(a) - g.lonAt(o)) * (g.latAt(b) - g.latAt(o))
+                - (g.latAt(a) - g.latAt(o)) * (g.lonAt(b) - g.lonAt(o));
+    }
+}
@@ -0,0 +1,13 @@
+package bearmaps.utils.graph;
+
+/**
+ * A lower bound on shortest path distances between vertex indices of an
+ * IndexedGraph, such as IndexedGraph::estimatedDistance. Solvers that use it
+ * as a potential need it to be consistent: lowerBound(u, t) is at most the
+ * weight of edge (u, v) plus lowerBound(v, t).
+ */
+@FunctionalInterface
+public interface LowerBound {
+    /* Returns a lower bound on the distance from V to GOAL. */
+    double lowerBound(int v, int goal);
+}
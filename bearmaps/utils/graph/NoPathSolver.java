@@ -0,0 +1,35 @@
+package bearmaps.utils.graph;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The answer to a query whose goal is known to be unreachable from its
+ * start without searching, for instance because Components says so.
+ */
+public class NoPathSolver<Vertex> implements ShortestPathsSolver<Vertex> {
+    @Override
+    public SolverOutcome outcome() {
+        return SolverOutcome.UNSOLVABLE;
+    }
+
+    @Override
+    public List<Vertex> solution() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public double solutionWeight() {
+        return 0;
+    }
+
+    @Override
+    public int numStatesExplored() {
+        return 0;
+    }
+
+    @Override
+    public double explorationTime() {
+        return 0;
+    }
+}
@@ -0,0 +1,64 @@
+package bearmaps.utils.graph;
+
+import bearmaps.utils.pq.IntDaryHeap;
+
+import java.util.stream.IntStream;
+
+/**
+ * Distance tables by one Dijkstra sweep per source, each stopping as soon as
+ * every target is settled. Sweeps for different sources run in parallel,
+ * each in its own thread's SearchWorkspace. Used when there is no
+ * contraction hierarchy to run ManyToMany on.
+ */
+public class OneToMany {
+    private OneToMany() {
+    }
+
+    /**
+     * Returns the distance from vertex index SOURCES[i] to TARGETS[j] at
+     * [i][j], or infinity if there is no path.
+     */
+    public static double[][] distances(IndexedGraph g, int[] sources, int[] targets) {
+        double[][] table = new double[sources.length][];
+        IntStream.range(0, sources.length).parallel()
+                .forEach(i -> table[i] = distances(g, sources[i], targets));
+        return table;
+    }
+
+    /** Returns the distance from SOURCE to each of TARGETS, or infinity if there is no path. */
+    public static double[] distances(IndexedGraph g, int source, int[] targets) {
+        SearchWorkspace ws = SearchWorkspace.acquire(g.numVertices(), 0);
+        /* Targets are marked by a non-NaN aux value until they are settled. */
+        int remaining = 0;
+        for (int t : targets) {
+            if (Double.isNaN(ws.aux(t))) {
+                ws.setAux(t, 1);
+                remaining++;
+            }
+        }
+        IntDaryHeap pq = ws.heap();
+        ws.set(source, 0, -1);
+        pq.insert(source, 0);
+        while (remaining > 0 && !pq.isEmpty()) {
+            int v = pq.poll();
+            if (ws.aux(v) == 1) {
+                ws.setAux(v, 0);
+                remaining--;
+            }
+            double d = ws.dist(v);
+            for (int e = g.outBegin(v); e < g.outEnd(v); e++) {
+                int t = g.target(e);
+                if (d + g.weight(e) < ws.dist(t)) {
+                    ws.set(t, d + g.weight(e), v);
+                    pq.insertOrChange(t, d + g.weight(e));
+                }
+            }
+        }
+        double[] row = new double[targets.length];
+        for (int j = 0; j < targets.length; j++) {
+            /* A target still marked 1 was never settled, so it is unreachable. */
+            row[j] = ws.aux(targets[j]) == 1 ? Double.POSITIVE_INFINITY : ws.dist(targets[j]);
+        }
+        return row;
+    }
+}
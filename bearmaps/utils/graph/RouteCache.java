@@ -0,0 +1,172 @@
+package bearmaps.utils.graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Solved routes by (start, end) vertex id, least recently used first. The
+ * cache is bounded both by the number of routes and by their total weight,
+ * which is the number of vertices on them, so a few very long routes cannot
+ * hold more memory than many short ones. All methods are thread safe; the
+ * solver of a miss runs outside the lock, so two threads that miss on the
+ * same pair at once may both solve it.
+ *
+ * A hit returns a solver that did no work: its solution is the cached
+ * route, and it reports no states explored and no time spent, so callers
+ * that report search statistics should tell hits apart with isHit. Only
+ * SOLVED and UNSOLVABLE outcomes are cached, since a TIMEOUT may succeed
+ * later.
+ */
+public class RouteCache {
+    public static final int DEFAULT_ENTRIES = 1024;
+    public static final long DEFAULT_WEIGHT = 1 << 20;
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final LinkedHashMap<Key, Route> routes = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long hits;
+    private long misses;
+
+    private static final class Key {
+        final long start;
+        final long end;
+
+        Key(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).start == start && ((Key) o).end == end;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(start, end);
+        }
+    }
+
+    /** A cached answer, which reports no work as a solver. */
+    private static final class Route implements ShortestPathsSolver<Long> {
+        final SolverOutcome outcome;
+        final List<Long> solution;
+        final double solutionWeight;
+
+        Route(ShortestPathsSolver<Long> solver) {
+            outcome = solver.outcome();
+            solution = Collections.unmodifiableList(new ArrayList<>(solver.solution()));
+            solutionWeight = solver.solutionWeight();
+        }
+
+        long weight() {
+            /* Count the entry itself, so empty routes still take room. */
+            return solution.size() + 1;
+        }
+
+        public SolverOutcome outcome() {
+            return outcome;
+        }
+
+        public List<Long> solution() {
+            return solution;
+        }
+
+        public double solutionWeight() {
+            return solutionWeight;
+        }
+
+        public int numStatesExplored() {
+            return 0;
+        }
+
+        public double explorationTime() {
+            return 0;
+        }
+    }
+
+    public RouteCache() {
+        this(DEFAULT_ENTRIES, DEFAULT_WEIGHT);
+    }
+
+    /** Holds at most MAXENTRIES routes with at most MAXWEIGHT vertices in total. */
+    public RouteCache(int maxEntries, long maxWeight) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the cached route from START to END, or the solver returned by
+     * SOLVE if there is none, caching its route.
+     */
+    public ShortestPathsSolver<Long> get(long start, long end,
+                                         Supplier<ShortestPathsSolver<Long>> solve) {
+        Key key = new Key(start, end);
+        synchronized (this) {
+            Route route = routes.get(key);
+            if (route != null) {
+                hits++;
+                return route;
+            }
+            misses++;
+        }
+        ShortestPathsSolver<Long> solver = solve.get();
+        if (solver.outcome() == SolverOutcome.SOLVED
+                || solver.outcome() == SolverOutcome.UNSOLVABLE) {
+            put(key, new Route(solver));
+        }
+        return solver;
+    }
+
+    /** Returns true if SOLVER is a cached route that get returned on a hit. */
+    public static boolean isHit(ShortestPathsSolver<Long> solver) {
+        return solver instanceof Route;
+    }
+
+    private synchronized void put(Key key, Route route) {
+        if (route.weight() > maxWeight) {
+            return;
+        }
+        Route old = routes.put(key, route);
+        if (old != null) {
+            weight -= old.weight();
+        }
+        weight += route.weight();
+        Iterator<Route> eldest = routes.values().iterator();
+        while (routes.size() > maxEntries || weight > maxWeight) {
+            weight -= eldest.next().weight();
+            eldest.remove();
+        }
+    }
+
+    /** Forgets every route, for when the graph or its weights change. */
+    public synchronized void clear() {
+        routes.clear();
+        weight = 0;
+    }
+
+    /** Returns the number of cached routes. */
+    public synchronized int size() {
+        return routes.size();
+    }
+
+    /** Returns the total number of vertices on the cached routes. */
+    public synchronized long weight() {
+        return weight;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+}
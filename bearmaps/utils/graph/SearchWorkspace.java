@@ -0,0 +1,138 @@
+package bearmaps.utils.graph;
+
+import bearmaps.utils.pq.IntDaryHeap;
+
+import java.util.Arrays;
+
+/**
+ * Scratch arrays for one search over the vertex indices of a graph, pooled
+ * per thread so that a query allocates nothing once its thread has run a
+ * query on a graph of the same size. Entries are tagged with the epoch of
+ * the search that wrote them, and reset() starts a new epoch, so clearing
+ * takes O(1) instead of refilling arrays the size of the graph.
+ *
+ * Each thread keeps SLOTS workspaces for each of the last MAX_SIZES sizes
+ * it searched, so searches over graphs of different sizes, such as the
+ * street graph and the core of its chains, take turns without evicting
+ * each other. A search with two directions holds one slot per direction,
+ * and a search over the edges of a graph takes slot 2, which keeps it
+ * apart even if there are as many edges as vertices. A workspace belongs
+ * to the thread that acquired it until its next acquire; a search may
+ * hand it to a helper thread while the acquiring thread waits for that
+ * helper.
+ */
+public class SearchWorkspace {
+    /** Number of workspaces each thread keeps per size. */
+    public static final int SLOTS = 3;
+    /** Number of sizes each thread keeps workspaces for. */
+    public static final int MAX_SIZES = 4;
+
+    private static final ThreadLocal<Pool> POOL = ThreadLocal.withInitial(Pool::new);
+
+    /* The workspaces of one thread: SLOTS of them for each size in sizes,
+       and when each size was last acquired, to evict the least recent. */
+    private static final class Pool {
+        final int[] sizes = new int[MAX_SIZES];
+        final SearchWorkspace[][] slots = new SearchWorkspace[MAX_SIZES][];
+        final long[] lastUsed = new long[MAX_SIZES];
+        long clock;
+
+        SearchWorkspace[] slotsFor(int n) {
+            clock++;
+            int victim = 0;
+            for (int i = 0; i < MAX_SIZES; i++) {
+                if (slots[i] != null && sizes[i] == n) {
+                    lastUsed[i] = clock;
+                    return slots[i];
+                }
+                if (slots[victim] != null && (slots[i] == null || lastUsed[i] < lastUsed[victim])) {
+                    victim = i;
+                }
+            }
+            sizes[victim] = n;
+            slots[victim] = new SearchWorkspace[SLOTS];
+            lastUsed[victim] = clock;
+            return slots[victim];
+        }
+    }
+
+    private final double[] dist;
+    private final int[] parent;
+    private final int[] stamp;
+    private final double[] aux;
+    private final int[] auxStamp;
+    private final IntDaryHeap heap;
+    private int epoch;
+
+    private SearchWorkspace(int n) {
+        dist = new double[n];
+        parent = new int[n];
+        stamp = new int[n];
+        aux = new double[n];
+        auxStamp = new int[n];
+        heap = new IntDaryHeap(n);
+    }
+
+    /**
+     * Returns this thread's workspace number SLOT for a graph of N vertices,
+     * reset for a new search.
+     */
+    public static SearchWorkspace acquire(int n, int slot) {
+        SearchWorkspace[] pool = POOL.get().slotsFor(n);
+        SearchWorkspace w = pool[slot];
+        if (w == null) {
+            w = new SearchWorkspace(n);
+            pool[slot] = w;
+        }
+        w.reset();
+        return w;
+    }
+
+    /** Forgets every distance, parent and aux value, and empties the heap. */
+    public void reset() {
+        heap.clear();
+        epoch++;
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            Arrays.fill(auxStamp, 0);
+            epoch = 1;
+        }
+    }
+
+    /** Returns true if V has been given a distance in this search. */
+    public boolean reached(int v) {
+        return stamp[v] == epoch;
+    }
+
+    /** Returns the distance of V, or infinity if it has not been reached. */
+    public double dist(int v) {
+        return stamp[v] == epoch ? dist[v] : Double.POSITIVE_INFINITY;
+    }
+
+    /** Returns the parent of V. Only meaningful if V has been reached. */
+    public int parent(int v) {
+        return parent[v];
+    }
+
+    /** Sets the distance and parent of V. */
+    public void set(int v, double d, int p) {
+        dist[v] = d;
+        parent[v] = p;
+        stamp[v] = epoch;
+    }
+
+    /** Returns the value a search cached for V, or NaN if there is none. */
+    public double aux(int v) {
+        return auxStamp[v] == epoch ? aux[v] : Double.NaN;
+    }
+
+    public void setAux(int v, double value) {
+        aux[v] = value;
+        auxStamp[v] = epoch;
+    }
+
+    /** Returns the heap, which is empty after reset(). */
+    public IntDaryHeap heap() {
+        return heap;
+    }
+}
@@ -10,6 +10,13 @@ public interface ShortestPathsSolver<Vertex> {
     SolverOutcome outcome();
     List<Vertex> solution();
     double solutionWeight();
+
+    /**
+     * Returns the number of states the search reached, that is gave a
+     * tentative distance, whether or not it went on to settle them. States
+     * are vertices, or directed edges for a search with turn costs, so only
+     * counts of searches over the same states compare.
+     */
     int numStatesExplored();
     double explorationTime();
 }
@@ -0,0 +1,42 @@
+package bearmaps.utils.graph.alt;
+
+import bearmaps.utils.graph.AStarGraph;
+import bearmaps.utils.graph.IndexedGraph;
+import bearmaps.utils.graph.WeightedEdge;
+
+import java.util.List;
+
+/**
+ * View of a graph whose estimatedDistanceToGoal is the larger of the graph's
+ * own estimate and the landmark lower bound, so AStarSolver runs as ALT
+ * without any change to the solver. Both bounds are consistent, and so is
+ * their maximum.
+ */
+public class LandmarkGraph implements AStarGraph<Long> {
+    private final AStarGraph<Long> graph;
+    private final IndexedGraph indexed;
+    private final Landmarks landmarks;
+
+    public <G extends AStarGraph<Long> & IndexedGraph> LandmarkGraph(G graph,
+                                                                      Landmarks landmarks) {
+        this.graph = graph;
+        this.indexed = graph;
+        this.landmarks = landmarks;
+    }
+
+    @Override
+    public List<WeightedEdge<Long>> neighbors(Long v) {
+        return graph.neighbors(v);
+    }
+
+    @Override
+    public double estimatedDistanceToGoal(Long s, Long goal) {
+        double estimate = graph.estimatedDistanceToGoal(s, goal);
+        int v = indexed.indexOf(s);
+        int t = indexed.indexOf(goal);
+        if (v < 0 || t < 0) {
+            return estimate;
+        }
+        return Math.max(estimate, landmarks.lowerBound(v, t));
+    }
+}
@@ -0,0 +1,168 @@
+package bearmaps.utils.graph.alt;
+
+import bearmaps.utils.graph.IndexedGraph;
+import bearmaps.utils.graph.LowerBound;
+import bearmaps.utils.graph.streetmap.GraphSnapshot;
+import bearmaps.utils.pq.IntDaryHeap;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Landmark distance tables for the ALT heuristic (A*, landmarks, triangle
+ * inequality). For every landmark L the exact distances d(L, v) and d(v, L)
+ * are stored for all vertices v, and by the triangle inequality
+ * d(v, t) >= d(L, t) - d(L, v) and d(v, t) >= d(v, L) - d(t, L).
+ * The maximum over all landmarks is a consistent lower bound that is much
+ * tighter than the straight-line distance when the road network detours.
+ *
+ * Landmarks are chosen by farthest selection: each new landmark is the
+ * vertex farthest from all landmarks chosen so far, which spreads them
+ * around the edge of the map where the bounds are best.
+ */
+public class Landmarks implements LowerBound {
+    /** Number of landmarks used when none is given. */
+    public static final int DEFAULT_COUNT = 8;
+
+    private final int[] landmarks;
+    /** from[i][v] is d(landmarks[i], v). */
+    private final double[][] from;
+    /** to[i][v] is d(v, landmarks[i]). */
+    private final double[][] to;
+
+    private Landmarks(int[] landmarks, double[][] from, double[][] to) {
+        this.landmarks = landmarks;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Chooses up to COUNT landmarks in G and computes their distance tables.
+     * Fewer are chosen if the graph runs out of distinct far-away vertices.
+     */
+    public static Landmarks select(IndexedGraph g, int count) {
+        int n = g.numVertices();
+        int start = 0;
+        while (start < n && g.outBegin(start) == g.outEnd(start)) {
+            start++;
+        }
+        if (start == n) {
+            return new Landmarks(new int[0], new double[0][], new double[0][]);
+        }
+        double[] fromStart = dijkstra(g, false, start);
+        double[] closest = new double[n];
+        Arrays.fill(closest, Double.POSITIVE_INFINITY);
+        int next = farthest(fromStart, fromStart);
+
+        int[] chosen = new int[count];
+        double[][] from = new double[count][];
+        double[][] to = new double[count][];
+        int k = 0;
+        while (k < count && next != -1) {
+            chosen[k] = next;
+            from[k] = dijkstra(g, false, next);
+            to[k] = dijkstra(g, true, next);
+            for (int v = 0; v < n; v++) {
+                closest[v] = Math.min(closest[v], from[k][v]);
+            }
+            k++;
+            next = farthest(closest, fromStart);
+        }
+        return new Landmarks(Arrays.copyOf(chosen, k), Arrays.copyOf(from, k),
+                Arrays.copyOf(to, k));
+    }
+
+    /* Returns the vertex with the largest positive finite DIST among those
+       reachable from the start vertex, or -1 if there is none. */
+    private static int farthest(double[] dist, double[] reachable) {
+        int best = -1;
+        double bestDist = 0;
+        for (int v = 0; v < dist.length; v++) {
+            if (reachable[v] != Double.POSITIVE_INFINITY && dist[v] > bestDist
+                    && dist[v] != Double.POSITIVE_INFINITY) {
+                best = v;
+                bestDist = dist[v];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns a lower bound on the distance from vertex V to vertex GOAL.
+     * Landmarks that cannot reach or be reached from both are skipped.
+     */
+    @Override
+    public double lowerBound(int v, int goal) {
+        double bound = 0;
+        for (int i = 0; i < landmarks.length; i++) {
+            double[] f = from[i];
+            if (f[v] != Double.POSITIVE_INFINITY && f[goal] != Double.POSITIVE_INFINITY) {
+                bound = Math.max(bound, f[goal] - f[v]);
+            }
+            double[] t = to[i];
+            if (t[v] != Double.POSITIVE_INFINITY && t[goal] != Double.POSITIVE_INFINITY) {
+                bound = Math.max(bound, t[v] - t[goal]);
+            }
+        }
+        return bound;
+    }
+
+    /** Returns the vertex indices of the landmarks. */
+    public int[] landmarks() {
+        return landmarks;
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        GraphSnapshot.writeInts(out, landmarks);
+        for (int i = 0; i < landmarks.length; i++) {
+            GraphSnapshot.writeDoubles(out, from[i]);
+            GraphSnapshot.writeDoubles(out, to[i]);
+        }
+    }
+
+    /** Reads tables written by write(). */
+    public static Landmarks read(ByteBuffer in) {
+        int[] landmarks = GraphSnapshot.readInts(in);
+        double[][] from = new double[landmarks.length][];
+        double[][] to = new double[landmarks.length][];
+        for (int i = 0; i < landmarks.length; i++) {
+            from[i] = GraphSnapshot.readDoubles(in);
+            to[i] = GraphSnapshot.readDoubles(in);
+        }
+        return new Landmarks(landmarks, from, to);
+    }
+
+    /**
+     * Distances from SOURCE to every vertex of G, or from every vertex to
+     * SOURCE if REVERSE.
+     */
+    private static double[] dijkstra(IndexedGraph g, boolean reverse, int source) {
+        double[] dist = new double[g.numVertices()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        dist[source] = 0;
+        IntDaryHeap pq = new IntDaryHeap(dist.length);
+        pq.insert(source, 0);
+        while (!pq.isEmpty()) {
+            int v = pq.poll();
+            if (reverse) {
+                for (int i = g.inBegin(v); i < g.inEnd(v); i++) {
+                    relax(dist, pq, g.source(i), dist[v] + g.weight(g.inEdge(i)));
+                }
+            } else {
+                for (int e = g.outBegin(v); e < g.outEnd(v); e++) {
+                    relax(dist, pq, g.target(e), dist[v] + g.weight(e));
+                }
+            }
+        }
+        return dist;
+    }
+
+    private static void relax(double[] dist, IntDaryHeap pq, int w, double d) {
+        if (d < dist[w]) {
+            dist[w] = d;
+            pq.insertOrChange(w, d);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package bearmaps.utils.graph.arcflags;
+
+import bearmaps.utils.graph.IndexedGraph;
+import bearmaps.utils.graph.SearchWorkspace;
+import bearmaps.utils.graph.streetmap.GraphSnapshot;
+import bearmaps.utils.pq.IntDaryHeap;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * Arc flags: the vertices are partitioned into at most 64 cells, and every
+ * edge has one bit per cell that is set if the edge starts a shortest path
+ * to some vertex of that cell. A search toward a goal in cell C only needs
+ * the edges whose bit C is set, which on road networks are few once the
+ * search is far from C.
+ *
+ * Cells are built by splitting the vertices at the coordinate median along
+ * the wider axis until there are enough of them. Every edge inside a cell
+ * gets that cell's bit. A shortest path into a cell from outside enters it
+ * at a boundary vertex, one with an edge in from another cell, so one
+ * backward Dijkstra per boundary vertex flags the edges of a shortest path
+ * from everywhere else. Those searches run in parallel, one per boundary
+ * vertex, each in its own thread's SearchWorkspace.
+ *
+ * Unlike a contraction hierarchy the flags keep the edges of the graph, so
+ * the search stays plain A*. The flags only hold for the weights they were
+ * built from: a changed weight can move shortest paths into any cell, so
+ * it needs the flags built again.
+ */
+public class ArcFlags {
+    /** Number of cells used when none is given. */
+    public static final int DEFAULT_CELLS = 32;
+    /** The flags of an edge are one long, so there can be no more cells than this. */
+    public static final int MAX_CELLS = 64;
+
+    /** Cell of each vertex. */
+    private final int[] cell;
+    /** Bit c of flags[e] is set if edge e starts a shortest path into cell c. */
+    private final long[] flags;
+
+    private ArcFlags(int[] cell, long[] flags) {
+        this.cell = cell;
+        this.flags = flags;
+    }
+
+    /**
+     * Partitions G into CELLS cells, using (X[v], Y[v]) as the position of
+     * vertex v, and computes the flags of every edge.
+     */
+    public static ArcFlags build(IndexedGraph g, double[] x, double[] y, int cells) {
+        if (cells < 1 || cells > MAX_CELLS) {
+            throw new IllegalArgumentException("Cells must be in [1, " + MAX_CELLS + "].");
+        }
+        int n = g.numVertices();
+        int[] all = new int[n];
+        for (int v = 0; v < n; v++) {
+            all[v] = v;
+        }
+        int[] cell = new int[n];
+        partition(all, 0, n, 0, cells, x, y, cell);
+
+        int numEdges = n == 0 ? 0 : g.outEnd(n - 1);
+        AtomicLongArray bits = new AtomicLongArray(numEdges);
+        int[] boundary = new int[n];
+        int numBoundary = 0;
+        for (int v = 0; v < n; v++) {
+            for (int e = g.outBegin(v); e < g.outEnd(v); e++) {
+                if (cell[g.target(e)] == cell[v]) {
+                    bits.set(e, bits.get(e) | 1L << cell[v]);
+                }
+            }
+            for (int i = g.inBegin(v); i < g.inEnd(v); i++) {
+                if (cell[g.source(i)] != cell[v]) {
+                    boundary[numBoundary++] = v;
+                    break;
+                }
+            }
+        }
+        int[] entries = boundary;
+        IntStream.range(0, numBoundary).parallel()
+                .forEach(i -> flagPathsTo(g, entries[i], 1L << cell[entries[i]], bits));
+
+        long[] flags = new long[numEdges];
+        for (int e = 0; e < numEdges; e++) {
+            flags[e] = bits.get(e);
+        }
+        return new ArcFlags(cell, flags);
+    }
+
+    /**
+     * Assigns the vertices SET[lo, hi) to the CELLS cells starting at FIRST,
+     * splitting them in proportion to the number of cells on each side.
+     */
+    private static void partition(int[] set, int lo, int hi, int first, int cells,
+                                  double[] x, double[] y, int[] cell) {
+        if (cells == 1 || hi - lo <= 1) {
+            for (int i = lo; i < hi; i++) {
+                cell[set[i]] = first;
+            }
+            return;
+        }
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = lo; i < hi; i++) {
+            minX = Math.min(minX, x[set[i]]);
+            maxX = Math.max(maxX, x[set[i]]);
+            minY = Math.min(minY, y[set[i]]);
+            maxY = Math.max(maxY, y[set[i]]);
+        }
+        double[] key = maxX - minX >= maxY - minY ? x : y;
+        int left = cells / 2;
+        int mid = lo + (int) ((long) (hi - lo) * left / cells);
+        select(set, lo, hi - 1, mid, key);
+        partition(set, lo, mid, first, left, x, y, cell);
+        partition(set, mid, hi, first + left, cells - left, x, y, cell);
+    }
+
+    /* Quickselect on SET[lo, hi]: moves the element of rank K by KEY into
+       position K, with smaller keys before it and larger keys after it. */
+    private static void select(int[] set, int lo, int hi, int k, double[] key) {
+        while (hi > lo) {
+            double pivot = key[set[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (key[set[i]] < pivot) {
+                    i++;
+                }
+                while (key[set[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = set[i];
+                    set[i] = set[j];
+                    set[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs Dijkstra backward from TARGET and sets BIT on the edge each vertex
+     * leaves by on its shortest path to TARGET.
+     */
+    private static void flagPathsTo(IndexedGraph g, int target, long bit, AtomicLongArray bits) {
+        SearchWorkspace ws = SearchWorkspace.acquire(g.numVertices(), 0);
+        IntDaryHeap pq = ws.heap();
+        ws.set(target, 0, -1);
+        pq.insert(target, 0);
+        while (!pq.isEmpty()) {
+            int v = pq.poll();
+            int e = ws.parent(v);
+            if (e != -1) {
+                long old = bits.get(e);
+                while ((old & bit) == 0 && !bits.compareAndSet(e, old, old | bit)) {
+                    old = bits.get(e);
+                }
+            }
+            double d = ws.dist(v);
+            for (int i = g.inBegin(v); i < g.inEnd(v); i++) {
+                int u = g.source(i);
+                double nd = d + g.weight(g.inEdge(i));
+                if (nd < ws.dist(u)) {
+                    ws.set(u, nd, g.inEdge(i));
+                    pq.insertOrChange(u, nd);
+                }
+            }
+        }
+    }
+
+    /** Returns the cell of vertex V. */
+    public int cell(int v) {
+        return cell[v];
+    }
+
+    /** Returns true if edge E may start a shortest path to a vertex of cell C. */
+    public boolean allows(int e, int c) {
+        return (flags[e] >>> c & 1) != 0;
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        GraphSnapshot.writeInts(out, cell);
+        GraphSnapshot.writeLongs(out, flags);
+    }
+
+    /** Reads flags written by write(). */
+    public static ArcFlags read(ByteBuffer in) {
+        int[] cell = GraphSnapshot.readInts(in);
+        long[] flags = GraphSnapshot.readLongs(in);
+        return new ArcFlags(cell, flags);
+    }
+}
@@ -0,0 +1,143 @@
+package bearmaps.utils.graph.ch;
+
+import bearmaps.utils.graph.IndexedGraph;
+import bearmaps.utils.graph.SearchWorkspace;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Shortest path query on a ContractionHierarchy. The forward search from
+ * the start only goes up arcs and the backward search from the end only
+ * goes down arcs, so each side reaches exactly the ancestors of its vertex
+ * in the elimination tree. Both sides therefore scan their ancestor chain
+ * once in rank order, with no priority queue, and the path meets at the
+ * common ancestor minimizing the sum of both distances. Shortcuts on the
+ * resulting path are unpacked through their middle vertices.
+ */
+public class CHSolver implements ShortestPathsSolver<Long> {
+    private SolverOutcome outcome;
+    private double timeSpan;
+    private double solutionWeight;
+    private LinkedList<Long> solution = new LinkedList<>();
+    private int numStatesExplored;
+
+    public CHSolver(ContractionHierarchy ch, IndexedGraph g, long start, long end) {
+        long began = System.nanoTime();
+        int from = g.indexOf(start);
+        int to = g.indexOf(end);
+        if (from < 0 || to < 0) {
+            outcome = SolverOutcome.UNSOLVABLE;
+            timeSpan = (System.nanoTime() - began) / 1e9;
+            return;
+        }
+        ContractionHierarchy.Metric m = ch.metric;
+        /* Distances are indexed by rank, and the parent of a rank is the arc
+           it was reached through. */
+        SearchWorkspace forward = SearchWorkspace.acquire(ch.size(), 0);
+        SearchWorkspace backward = SearchWorkspace.acquire(ch.size(), 1);
+        int s = ch.rank[from];
+        int t = ch.rank[to];
+
+        numStatesExplored = ch.searchUp(s, m.up, forward) + ch.searchUp(t, m.down, backward);
+
+        int meet = -1;
+        double best = Double.POSITIVE_INFINITY;
+        for (int x = s; x != -1; x = ch.parent(x)) {
+            if (forward.dist(x) + backward.dist(x) < best) {
+                best = forward.dist(x) + backward.dist(x);
+                meet = x;
+            }
+        }
+
+        if (meet == -1) {
+            outcome = SolverOutcome.UNSOLVABLE;
+        } else {
+            outcome = SolverOutcome.SOLVED;
+            solutionWeight = best;
+            List<Integer> ranks = new ArrayList<>();
+            ranks.add(s);
+            /* Arcs from s up to meet, collected backwards. */
+            List<Integer> arcs = new ArrayList<>();
+            for (int x = meet; x != s; x = ch.tail(forward.parent(x))) {
+                arcs.add(forward.parent(x));
+            }
+            for (int i = arcs.size() - 1; i >= 0; i--) {
+                unpack(ch, m, arcs.get(i), true, ranks);
+            }
+            for (int x = meet; x != t; x = ch.tail(backward.parent(x))) {
+                unpack(ch, m, backward.parent(x), false, ranks);
+            }
+            for (int r : ranks) {
+                solution.add(g.idOf(ch.vertexAt[r]));
+            }
+        }
+        timeSpan = (System.nanoTime() - began) / 1e9;
+    }
+
+    /**
+     * Appends the ranks that arc K passes through after its first vertex to
+     * RANKS. UP selects the direction from the lower rank to the higher one.
+     */
+    private static void unpack(ContractionHierarchy ch, ContractionHierarchy.Metric m,
+                               int k, boolean up, List<Integer> ranks) {
+        int[] stackArc = new int[16];
+        boolean[] stackUp = new boolean[16];
+        int size = 0;
+        stackArc[size] = k;
+        stackUp[size++] = up;
+        while (size > 0) {
+            size--;
+            int arc = stackArc[size];
+            boolean isUp = stackUp[size];
+            int low = ch.tail(arc);
+            int high = ch.upHead[arc];
+            int mid = isUp ? m.upMid[arc] : m.downMid[arc];
+            if (mid == -1) {
+                ranks.add(isUp ? high : low);
+                continue;
+            }
+            if (size + 2 > stackArc.length) {
+                stackArc = Arrays.copyOf(stackArc, 2 * stackArc.length);
+                stackUp = Arrays.copyOf(stackUp, 2 * stackUp.length);
+            }
+            /* low -> mid -> high when going up, high -> mid -> low going down;
+               push the second half first so the first half is unpacked first. */
+            if (isUp) {
+                stackArc[size] = ch.arc(mid, high);
+                stackUp[size++] = true;
+                stackArc[size] = ch.arc(mid, low);
+                stackUp[size++] = false;
+            } else {
+                stackArc[size] = ch.arc(mid, low);
+                stackUp[size++] = true;
+                stackArc[size] = ch.arc(mid, high);
+                stackUp[size++] = false;
+            }
+        }
+    }
+
+    public SolverOutcome outcome() {
+        return outcome;
+    }
+
+    public List<Long> solution() {
+        return solution;
+    }
+
+    public double solutionWeight() {
+        return solutionWeight;
+    }
+
+    public int numStatesExplored() {
+        return numStatesExplored;
+    }
+
+    public double explorationTime() {
+        return timeSpan;
+    }
+}
@@ -0,0 +1,384 @@
+package bearmaps.utils.graph.ch;
+
+import bearmaps.utils.graph.IndexedGraph;
+import bearmaps.utils.graph.SearchWorkspace;
+import bearmaps.utils.graph.streetmap.GraphSnapshot;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * A contraction hierarchy over an IndexedGraph, built in the customizable
+ * style: vertices are ranked by nested dissection and contracted in rank
+ * order, and every contraction adds all shortcuts between the contracted
+ * vertex's higher-ranked neighbors regardless of weights. This makes the
+ * set of shortcuts depend only on the road topology, so the offline step
+ * runs once and only customize() has to be repeated when weights change.
+ *
+ * Vertices are identified by rank inside the hierarchy. Each rank r stores
+ * its arcs to higher ranks, [upBegin[r], upBegin[r + 1]) of upHead, sorted
+ * by head rank. The lowest of them is r's parent in the elimination tree,
+ * and every higher neighbor of r is an ancestor of r in that tree, which is
+ * what the query in CHSolver relies on.
+ *
+ * Customization runs on all cores. The arcs of a rank only depend on the
+ * arcs of its lower neighbors, so ranks are grouped into levels, each one
+ * above the highest level among its lower neighbors, and the ranks of a
+ * level are customized in parallel. The hierarchy of one topology can be
+ * customized for several metrics at once with customized().
+ */
+public class ContractionHierarchy {
+    /** Vertex index of each rank. */
+    final int[] vertexAt;
+    /** Rank of each vertex index. */
+    final int[] rank;
+    final int[] upBegin;
+    final int[] upHead;
+    /* Derived from the arcs and never persisted: the arcs into each rank from
+       below, [downBegin[r], downBegin[r + 1]) of downArc, by ascending tail,
+       and the ranks of each level, [levelBegin[l], levelBegin[l + 1]) of
+       byLevel. */
+    private final int[] downBegin;
+    private final int[] downArc;
+    private final int[] levelBegin;
+    private final int[] byLevel;
+    /** The current weights. Replaced as a whole by customize(). */
+    volatile Metric metric;
+
+    /**
+     * Arc weights of one customization. For arc k from rank r up to rank h,
+     * up[k] is the length of the shortest r-to-h path through lower ranks
+     * and down[k] that of h-to-r. The mid arrays hold the rank the path goes
+     * through, or -1 if it is a single edge of the graph.
+     */
+    static class Metric {
+        final double[] up;
+        final double[] down;
+        final int[] upMid;
+        final int[] downMid;
+
+        Metric(double[] up, double[] down, int[] upMid, int[] downMid) {
+            this.up = up;
+            this.down = down;
+            this.upMid = upMid;
+            this.downMid = downMid;
+        }
+    }
+
+    private ContractionHierarchy(int[] vertexAt, int[] upBegin, int[] upHead) {
+        this.vertexAt = vertexAt;
+        this.upBegin = upBegin;
+        this.upHead = upHead;
+        int n = vertexAt.length;
+        rank = new int[n];
+        for (int r = 0; r < n; r++) {
+            rank[vertexAt[r]] = r;
+        }
+
+        downBegin = new int[n + 1];
+        for (int h : upHead) {
+            downBegin[h + 1]++;
+        }
+        for (int r = 0; r < n; r++) {
+            downBegin[r + 1] += downBegin[r];
+        }
+        downArc = new int[upHead.length];
+        int[] next = Arrays.copyOf(downBegin, n);
+        int[] level = new int[n];
+        int numLevels = n == 0 ? 0 : 1;
+        for (int r = 0; r < n; r++) {
+            for (int k = upBegin[r]; k < upBegin[r + 1]; k++) {
+                int h = upHead[k];
+                downArc[next[h]++] = k;
+                level[h] = Math.max(level[h], level[r] + 1);
+                numLevels = Math.max(numLevels, level[h] + 1);
+            }
+        }
+        levelBegin = new int[numLevels + 1];
+        for (int r = 0; r < n; r++) {
+            levelBegin[level[r] + 1]++;
+        }
+        for (int l = 0; l < numLevels; l++) {
+            levelBegin[l + 1] += levelBegin[l];
+        }
+        byLevel = new int[n];
+        next = Arrays.copyOf(levelBegin, numLevels);
+        for (int r = 0; r < n; r++) {
+            byLevel[next[level[r]]++] = r;
+        }
+    }
+
+    /** A hierarchy sharing the topology of OTHER, which has no metric yet. */
+    private ContractionHierarchy(ContractionHierarchy other) {
+        vertexAt = other.vertexAt;
+        rank = other.rank;
+        upBegin = other.upBegin;
+        upHead = other.upHead;
+        downBegin = other.downBegin;
+        downArc = other.downArc;
+        levelBegin = other.levelBegin;
+        byLevel = other.byLevel;
+    }
+
+    /**
+     * Builds the hierarchy of G and customizes it with G's weights. (X[v], Y[v])
+     * is the position of vertex v, used to compute the order.
+     */
+    public static ContractionHierarchy build(IndexedGraph g, double[] x, double[] y) {
+        int[] vertexAt = NestedDissection.order(g, x, y);
+        int n = vertexAt.length;
+        int[] rank = new int[n];
+        for (int r = 0; r < n; r++) {
+            rank[vertexAt[r]] = r;
+        }
+
+        /* Higher-ranked neighbors of each rank in the graph, in either
+           direction. A self-loop would make a rank its own parent, so it is
+           skipped; it is never on a shortest path anyway. */
+        int[] begin = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            for (int e = g.outBegin(v); e < g.outEnd(v); e++) {
+                if (g.target(e) != v) {
+                    begin[Math.min(rank[v], rank[g.target(e)]) + 1]++;
+                }
+            }
+        }
+        for (int r = 0; r < n; r++) {
+            begin[r + 1] += begin[r];
+        }
+        int[] higher = new int[begin[n]];
+        int[] fill = Arrays.copyOf(begin, n);
+        for (int v = 0; v < n; v++) {
+            for (int e = g.outBegin(v); e < g.outEnd(v); e++) {
+                int a = rank[v];
+                int b = rank[g.target(e)];
+                if (a != b) {
+                    higher[fill[Math.min(a, b)]++] = Math.max(a, b);
+                }
+            }
+        }
+
+        /* Contract in rank order. The remaining higher neighbors of r become a
+           clique, which is recorded by handing them to r's lowest higher
+           neighbor, since that is the next of them to be contracted. */
+        int[][] inherited = new int[n][];
+        int[] inheritedSize = new int[n];
+        int[][] up = new int[n][];
+        int numArcs = 0;
+        int[] scratch = new int[16];
+        for (int r = 0; r < n; r++) {
+            int size = begin[r + 1] - begin[r] + inheritedSize[r];
+            if (scratch.length < size) {
+                scratch = new int[Math.max(size, 2 * scratch.length)];
+            }
+            System.arraycopy(higher, begin[r], scratch, 0, begin[r + 1] - begin[r]);
+            if (inheritedSize[r] > 0) {
+                System.arraycopy(inherited[r], 0, scratch, begin[r + 1] - begin[r],
+                        inheritedSize[r]);
+                inherited[r] = null;
+            }
+            Arrays.sort(scratch, 0, size);
+            int unique = 0;
+            for (int i = 0; i < size; i++) {
+                if (unique == 0 || scratch[unique - 1] != scratch[i]) {
+                    scratch[unique++] = scratch[i];
+                }
+            }
+            up[r] = Arrays.copyOf(scratch, unique);
+            numArcs += unique;
+            if (unique > 1) {
+                int p = scratch[0];
+                int needed = inheritedSize[p] + unique - 1;
+                if (inherited[p] == null) {
+                    inherited[p] = new int[Math.max(needed, 8)];
+                } else if (inherited[p].length < needed) {
+                    inherited[p] = Arrays.copyOf(inherited[p],
+                            Math.max(needed, 2 * inherited[p].length));
+                }
+                System.arraycopy(scratch, 1, inherited[p], inheritedSize[p], unique - 1);
+                inheritedSize[p] = needed;
+            }
+        }
+
+        int[] upBegin = new int[n + 1];
+        int[] upHead = new int[numArcs];
+        for (int r = 0; r < n; r++) {
+            upBegin[r + 1] = upBegin[r] + up[r].length;
+            System.arraycopy(up[r], 0, upHead, upBegin[r], up[r].length);
+            up[r] = null;
+        }
+        ContractionHierarchy ch = new ContractionHierarchy(vertexAt, upBegin, upHead);
+        ch.customize(g);
+        return ch;
+    }
+
+    /**
+     * Recomputes all arc weights from the edge weights of G, which must have
+     * the same vertices and edges the hierarchy was built from. Queries that
+     * are already running keep using the previous weights.
+     */
+    public void customize(IndexedGraph g) {
+        metric = metricOf(g);
+    }
+
+    /**
+     * Returns a hierarchy with the same order and arcs as this one, and so
+     * the same queries, customized with the weights of G instead. Only the
+     * weights are new; everything else is shared with this hierarchy.
+     */
+    public ContractionHierarchy customized(IndexedGraph g) {
+        ContractionHierarchy ch = new ContractionHierarchy(this);
+        ch.metric = metricOf(g);
+        return ch;
+    }
+
+    /*
+     * Every lower triangle {r, a, b} with r < a < b offers a path between a
+     * and b through r. The arcs of rank a are only written while a is
+     * customized, from the arcs of its lower neighbors r, which are in lower
+     * levels and so final by then. Lower neighbors are tried by ascending
+     * rank, so ties are broken the same however the levels are scheduled.
+     */
+    private Metric metricOf(IndexedGraph g) {
+        double[] up = new double[upHead.length];
+        double[] down = new double[upHead.length];
+        int[] upMid = new int[upHead.length];
+        int[] downMid = new int[upHead.length];
+        for (int l = 0; l + 1 < levelBegin.length; l++) {
+            IntStream.range(levelBegin[l], levelBegin[l + 1]).parallel().forEach(i -> {
+                int a = byLevel[i];
+                initialize(g, a, up, down, upMid, downMid);
+                for (int t = downBegin[a]; t < downBegin[a + 1]; t++) {
+                    int ra = downArc[t];
+                    int r = tail(ra);
+                    for (int j = ra + 1; j < upBegin[r + 1]; j++) {
+                        int k = arc(a, upHead[j]);
+                        double viaUp = down[ra] + up[j];
+                        if (viaUp < up[k]) {
+                            up[k] = viaUp;
+                            upMid[k] = r;
+                        }
+                        double viaDown = down[j] + up[ra];
+                        if (viaDown < down[k]) {
+                            down[k] = viaDown;
+                            downMid[k] = r;
+                        }
+                    }
+                }
+            });
+        }
+        return new Metric(up, down, upMid, downMid);
+    }
+
+    /* Sets the arcs of rank R to the weights of the edges of G between their
+       ends, or infinity where there is no edge. */
+    private void initialize(IndexedGraph g, int r, double[] up, double[] down,
+                            int[] upMid, int[] downMid) {
+        for (int k = upBegin[r]; k < upBegin[r + 1]; k++) {
+            up[k] = Double.POSITIVE_INFINITY;
+            down[k] = Double.POSITIVE_INFINITY;
+            upMid[k] = -1;
+            downMid[k] = -1;
+        }
+        int v = vertexAt[r];
+        for (int e = g.outBegin(v); e < g.outEnd(v); e++) {
+            int h = rank[g.target(e)];
+            if (h > r) {
+                int k = arc(r, h);
+                up[k] = Math.min(up[k], g.weight(e));
+            }
+        }
+        for (int i = g.inBegin(v); i < g.inEnd(v); i++) {
+            int h = rank[g.source(i)];
+            if (h > r) {
+                int k = arc(r, h);
+                down[k] = Math.min(down[k], g.weight(g.inEdge(i)));
+            }
+        }
+    }
+
+    /** Returns the number of vertices in the hierarchy. */
+    public int size() {
+        return vertexAt.length;
+    }
+
+    /** Returns the number of arcs, including the graph's own edges. */
+    public int numArcs() {
+        return upHead.length;
+    }
+
+    /** Returns the parent of rank R in the elimination tree, or -1 for a root. */
+    int parent(int r) {
+        return upBegin[r] < upBegin[r + 1] ? upHead[upBegin[r]] : -1;
+    }
+
+    /**
+     * Scans the ancestors of rank R in order, relaxing their arcs to higher
+     * ranks with WEIGHTS, which is the up weights of a metric for a forward
+     * search and the down weights for a backward one. WS starts from a
+     * distance of 0 at R and ends with every distance the search found, with
+     * the arc each rank was reached through as its parent. Returns the
+     * number of ranks the search reached, R included.
+     */
+    int searchUp(int r, double[] weights, SearchWorkspace ws) {
+        int reached = 0;
+        ws.set(r, 0, -1);
+        for (int x = r; x != -1; x = parent(x)) {
+            if (!ws.reached(x)) {
+                continue;
+            }
+            reached++;
+            double d = ws.dist(x);
+            for (int k = upBegin[x]; k < upBegin[x + 1]; k++) {
+                int h = upHead[k];
+                if (d + weights[k] < ws.dist(h)) {
+                    ws.set(h, d + weights[k], k);
+                }
+            }
+        }
+        return reached;
+    }
+
+    /** Returns the index of the arc from rank LOW up to rank HIGH, which must exist. */
+    int arc(int low, int high) {
+        return Arrays.binarySearch(upHead, upBegin[low], upBegin[low + 1], high);
+    }
+
+    /** Returns the lower rank of arc K. */
+    int tail(int k) {
+        int r = Arrays.binarySearch(upBegin, k);
+        if (r < 0) {
+            return -r - 2;
+        }
+        /* Skip ranks without arcs, which share their upBegin with the next rank. */
+        while (upBegin[r + 1] == k) {
+            r++;
+        }
+        return r;
+    }
+
+    /** Writes the order, arcs and current weights to OUT. */
+    public void write(DataOutputStream out) throws IOException {
+        Metric m = metric;
+        GraphSnapshot.writeInts(out, vertexAt);
+        GraphSnapshot.writeInts(out, upBegin);
+        GraphSnapshot.writeInts(out, upHead);
+        GraphSnapshot.writeDoubles(out, m.up);
+        GraphSnapshot.writeDoubles(out, m.down);
+        GraphSnapshot.writeInts(out, m.upMid);
+        GraphSnapshot.writeInts(out, m.downMid);
+    }
+
+    /** Reads a hierarchy written by write(). */
+    public static ContractionHierarchy read(ByteBuffer in) {
+        ContractionHierarchy ch = new ContractionHierarchy(GraphSnapshot.readInts(in),
+                GraphSnapshot.readInts(in), GraphSnapshot.readInts(in));
+        double[] up = GraphSnapshot.readDoubles(in);
+        double[] down = GraphSnapshot.readDoubles(in);
+        ch.metric = new Metric(up, down, GraphSnapshot.readInts(in), GraphSnapshot.readInts(in));
+        return ch;
+    }
+}
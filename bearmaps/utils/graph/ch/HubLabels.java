@@ -0,0 +1,281 @@
+package bearmaps.utils.graph.ch;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.graph.SearchWorkspace;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Hub labels derived from a ContractionHierarchy. Every vertex has a
+ * forward label of (hub, distance) pairs for hubs it can reach and a
+ * backward label for hubs that can reach it, each sorted by hub rank, such
+ * that every shortest path from s to t passes through a hub in both the
+ * forward label of s and the backward label of t. A distance query is a
+ * single merge of two sorted primitive arrays, with no search at all.
+ *
+ * Labels are built top-down: the forward label of a rank is itself plus
+ * the forward labels of the ranks its up arcs lead to, shifted by the arc
+ * weights, and likewise backward. Ranks at the same depth below the roots
+ * of the hierarchy do not depend on each other and are labeled in
+ * parallel. A hub whose distance in the label is beaten by going through
+ * another hub of the label is pruned, which keeps labels to a fraction of
+ * the upward search spaces.
+ *
+ * The labels are written to their own file, laid out so that open() can
+ * map it and answer queries from the mapping without copying it:
+ * <pre>java bearmaps.utils.graph.ch.HubLabels berkeley.snapshot berkeley.labels</pre>
+ */
+public class HubLabels {
+    private static final long MAGIC = 0x424D41504C41424CL; // "BMAPLABL"
+    /** Magic, vertex count, forward and backward entry counts, padding. */
+    private static final int HEADER_BYTES = 24;
+
+    /** Labels of vertex index v are [begin[v], begin[v + 1]) of hub and dist. */
+    private final IntBuffer forwardBegin;
+    private final IntBuffer forwardHub;
+    private final DoubleBuffer forwardDist;
+    private final IntBuffer backwardBegin;
+    private final IntBuffer backwardHub;
+    private final DoubleBuffer backwardDist;
+
+    private HubLabels(IntBuffer forwardBegin, IntBuffer forwardHub, DoubleBuffer forwardDist,
+                      IntBuffer backwardBegin, IntBuffer backwardHub, DoubleBuffer backwardDist) {
+        this.forwardBegin = forwardBegin;
+        this.forwardHub = forwardHub;
+        this.forwardDist = forwardDist;
+        this.backwardBegin = backwardBegin;
+        this.backwardHub = backwardHub;
+        this.backwardDist = backwardDist;
+    }
+
+    /** Computes the labels of every vertex of CH with its current weights. */
+    public static HubLabels build(ContractionHierarchy ch) {
+        ContractionHierarchy.Metric m = ch.metric;
+        int n = ch.size();
+
+        /* Depth 0 are the roots; every up arc leads to a smaller depth. */
+        int[] depth = new int[n];
+        int maxDepth = 0;
+        for (int r = n - 1; r >= 0; r--) {
+            for (int k = ch.upBegin[r]; k < ch.upBegin[r + 1]; k++) {
+                depth[r] = Math.max(depth[r], depth[ch.upHead[k]] + 1);
+            }
+            maxDepth = Math.max(maxDepth, depth[r]);
+        }
+        int[] levelBegin = new int[maxDepth + 2];
+        for (int r = 0; r < n; r++) {
+            levelBegin[depth[r] + 1]++;
+        }
+        for (int d = 0; d <= maxDepth; d++) {
+            levelBegin[d + 1] += levelBegin[d];
+        }
+        int[] byLevel = new int[n];
+        int[] fill = Arrays.copyOf(levelBegin, maxDepth + 1);
+        for (int r = 0; r < n; r++) {
+            byLevel[fill[depth[r]]++] = r;
+        }
+
+        int[][] fHub = new int[n][];
+        double[][] fDist = new double[n][];
+        int[][] bHub = new int[n][];
+        double[][] bDist = new double[n][];
+        for (int d = 0; d <= maxDepth; d++) {
+            IntStream.range(levelBegin[d], levelBegin[d + 1]).parallel().forEach(i -> {
+                int r = byLevel[i];
+                label(ch, r, m.up, fHub, fDist, bHub, bDist);
+                label(ch, r, m.down, bHub, bDist, fHub, fDist);
+            });
+        }
+
+        /* Flattened and indexed by vertex rather than rank, so queries need no rank lookup. */
+        int[] fBegin = new int[n + 1];
+        int[] bBegin = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            fBegin[v + 1] = fBegin[v] + fHub[ch.rank[v]].length;
+            bBegin[v + 1] = bBegin[v] + bHub[ch.rank[v]].length;
+        }
+        int[] fHubs = new int[fBegin[n]];
+        double[] fDists = new double[fBegin[n]];
+        int[] bHubs = new int[bBegin[n]];
+        double[] bDists = new double[bBegin[n]];
+        for (int v = 0; v < n; v++) {
+            int r = ch.rank[v];
+            System.arraycopy(fHub[r], 0, fHubs, fBegin[v], fHub[r].length);
+            System.arraycopy(fDist[r], 0, fDists, fBegin[v], fDist[r].length);
+            System.arraycopy(bHub[r], 0, bHubs, bBegin[v], bHub[r].length);
+            System.arraycopy(bDist[r], 0, bDists, bBegin[v], bDist[r].length);
+        }
+        return new HubLabels(IntBuffer.wrap(fBegin), IntBuffer.wrap(fHubs),
+                DoubleBuffer.wrap(fDists), IntBuffer.wrap(bBegin), IntBuffer.wrap(bHubs),
+                DoubleBuffer.wrap(bDists));
+    }
+
+    /**
+     * Computes the label of rank R in one direction, whose arc weights are
+     * WEIGHTS and whose finished labels are HUB and DIST, pruning it with
+     * the labels of the other direction, OTHERHUB and OTHERDIST.
+     */
+    private static void label(ContractionHierarchy ch, int r, double[] weights,
+                              int[][] hub, double[][] dist,
+                              int[][] otherHub, double[][] otherDist) {
+        SearchWorkspace ws = SearchWorkspace.acquire(ch.size(), 0);
+        int[] touched = new int[16];
+        int size = 0;
+        ws.set(r, 0, -1);
+        touched[size++] = r;
+        for (int k = ch.upBegin[r]; k < ch.upBegin[r + 1]; k++) {
+            if (weights[k] == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+            int h = ch.upHead[k];
+            for (int i = 0; i < hub[h].length; i++) {
+                int x = hub[h][i];
+                double d = weights[k] + dist[h][i];
+                if (d < ws.dist(x)) {
+                    if (!ws.reached(x)) {
+                        if (size == touched.length) {
+                            touched = Arrays.copyOf(touched, 2 * size);
+                        }
+                        touched[size++] = x;
+                    }
+                    ws.set(x, d, -1);
+                }
+            }
+        }
+        Arrays.sort(touched, 0, size);
+
+        int[] keptHub = new int[size];
+        double[] keptDist = new double[size];
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            int x = touched[i];
+            double d = ws.dist(x);
+            boolean dominated = false;
+            /* R itself is at distance 0, and its other label may not be done yet. */
+            for (int j = 0; x != r && j < otherHub[x].length && !dominated; j++) {
+                int y = otherHub[x][j];
+                dominated = ws.reached(y) && ws.dist(y) + otherDist[x][j] < d;
+            }
+            if (!dominated) {
+                keptHub[kept] = x;
+                keptDist[kept++] = d;
+            }
+        }
+        hub[r] = Arrays.copyOf(keptHub, kept);
+        dist[r] = Arrays.copyOf(keptDist, kept);
+    }
+
+    /** Returns the distance from vertex index FROM to vertex index TO, or infinity. */
+    public double distance(int from, int to) {
+        int i = forwardBegin.get(from);
+        int iEnd = forwardBegin.get(from + 1);
+        int j = backwardBegin.get(to);
+        int jEnd = backwardBegin.get(to + 1);
+        double best = Double.POSITIVE_INFINITY;
+        while (i < iEnd && j < jEnd) {
+            int a = forwardHub.get(i);
+            int b = backwardHub.get(j);
+            if (a < b) {
+                i++;
+            } else if (a > b) {
+                j++;
+            } else {
+                best = Math.min(best, forwardDist.get(i++) + backwardDist.get(j++));
+            }
+        }
+        return best;
+    }
+
+    /** Returns the number of vertices labeled. */
+    public int size() {
+        return forwardBegin.limit() - 1;
+    }
+
+    /** Returns the number of entries in all labels of both directions. */
+    public long numEntries() {
+        return (long) forwardHub.limit() + backwardHub.limit();
+    }
+
+    /** Writes the labels to the file at PATH in the layout open() maps. */
+    public void write(String path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(path)))) {
+            out.writeLong(MAGIC);
+            out.writeInt(size());
+            out.writeInt(forwardHub.limit());
+            out.writeInt(backwardHub.limit());
+            out.writeInt(0);
+            /* Doubles first, so they stay 8-byte aligned in the mapping. */
+            for (int i = 0; i < forwardDist.limit(); i++) {
+                out.writeDouble(forwardDist.get(i));
+            }
+            for (int i = 0; i < backwardDist.limit(); i++) {
+                out.writeDouble(backwardDist.get(i));
+            }
+            for (IntBuffer ints : new IntBuffer[]{forwardBegin, backwardBegin,
+                    forwardHub, backwardHub}) {
+                for (int i = 0; i < ints.limit(); i++) {
+                    out.writeInt(ints.get(i));
+                }
+            }
+        }
+    }
+
+    /** Maps the labels written to the file at PATH into memory. */
+    public static HubLabels open(String path) throws IOException {
+        ByteBuffer file;
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (file.getLong(0) != MAGIC) {
+            throw new IOException("Not a hub label file.");
+        }
+        int n = file.getInt(8);
+        int forwardEntries = file.getInt(12);
+        int backwardEntries = file.getInt(16);
+        int at = HEADER_BYTES;
+        DoubleBuffer forwardDist = slice(file, at, 8 * forwardEntries).asDoubleBuffer();
+        at += 8 * forwardEntries;
+        DoubleBuffer backwardDist = slice(file, at, 8 * backwardEntries).asDoubleBuffer();
+        at += 8 * backwardEntries;
+        IntBuffer forwardBegin = slice(file, at, 4 * (n + 1)).asIntBuffer();
+        at += 4 * (n + 1);
+        IntBuffer backwardBegin = slice(file, at, 4 * (n + 1)).asIntBuffer();
+        at += 4 * (n + 1);
+        IntBuffer forwardHub = slice(file, at, 4 * forwardEntries).asIntBuffer();
+        at += 4 * forwardEntries;
+        IntBuffer backwardHub = slice(file, at, 4 * backwardEntries).asIntBuffer();
+        return new HubLabels(forwardBegin, forwardHub, forwardDist,
+                backwardBegin, backwardHub, backwardDist);
+    }
+
+    private static ByteBuffer slice(ByteBuffer file, int offset, int length) {
+        ByteBuffer view = file.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: HubLabels <snapshot or osm xml file> <label file>");
+            return;
+        }
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(args[0]);
+        if (graph.contractionHierarchy() == null) {
+            graph.buildContractionHierarchy();
+        }
+        build(graph.contractionHierarchy()).write(args[1]);
+    }
+}
@@ -0,0 +1,82 @@
+package bearmaps.utils.graph.ch;
+
+import bearmaps.utils.graph.SearchWorkspace;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Distance tables on a ContractionHierarchy with the bucket algorithm. A
+ * backward upward search from every target leaves (target, distance)
+ * entries in a bucket at each rank it reaches. A forward upward search from
+ * every source then scans the buckets of the ranks it reaches, and the best
+ * sum over the common ranks is the distance. Each search only visits one
+ * ancestor chain, so a table costs about (sources + targets) point-to-point
+ * queries instead of sources * targets. Sources are searched in parallel.
+ */
+public class ManyToMany {
+    private ManyToMany() {
+    }
+
+    /**
+     * Returns the distance from vertex index SOURCES[i] to TARGETS[j] at
+     * [i][j], or infinity if there is no path.
+     */
+    public static double[][] distances(ContractionHierarchy ch, int[] sources, int[] targets) {
+        ContractionHierarchy.Metric m = ch.metric;
+
+        /* Bucket entries as linked lists: bucketHead[r] is the first entry at
+           rank r, and next links entries of the same rank. */
+        int[] bucketHead = new int[ch.size()];
+        Arrays.fill(bucketHead, -1);
+        int capacity = 16;
+        int[] next = new int[capacity];
+        int[] entryTarget = new int[capacity];
+        double[] entryDist = new double[capacity];
+        int entries = 0;
+        SearchWorkspace ws = SearchWorkspace.acquire(ch.size(), 1);
+        for (int j = 0; j < targets.length; j++) {
+            ws.reset();
+            int t = ch.rank[targets[j]];
+            ch.searchUp(t, m.down, ws);
+            for (int x = t; x != -1; x = ch.parent(x)) {
+                if (!ws.reached(x)) {
+                    continue;
+                }
+                if (entries == capacity) {
+                    capacity *= 2;
+                    next = Arrays.copyOf(next, capacity);
+                    entryTarget = Arrays.copyOf(entryTarget, capacity);
+                    entryDist = Arrays.copyOf(entryDist, capacity);
+                }
+                next[entries] = bucketHead[x];
+                entryTarget[entries] = j;
+                entryDist[entries] = ws.dist(x);
+                bucketHead[x] = entries++;
+            }
+        }
+
+        double[][] table = new double[sources.length][targets.length];
+        int[] bucketNext = next;
+        int[] bucketTarget = entryTarget;
+        double[] bucketDist = entryDist;
+        IntStream.range(0, sources.length).parallel().forEach(i -> {
+            double[] row = table[i];
+            Arrays.fill(row, Double.POSITIVE_INFINITY);
+            SearchWorkspace forward = SearchWorkspace.acquire(ch.size(), 0);
+            int s = ch.rank[sources[i]];
+            ch.searchUp(s, m.up, forward);
+            for (int x = s; x != -1; x = ch.parent(x)) {
+                if (!forward.reached(x)) {
+                    continue;
+                }
+                double d = forward.dist(x);
+                for (int e = bucketHead[x]; e != -1; e = bucketNext[e]) {
+                    int j = bucketTarget[e];
+                    row[j] = Math.min(row[j], d + bucketDist[e]);
+                }
+            }
+        });
+        return table;
+    }
+}
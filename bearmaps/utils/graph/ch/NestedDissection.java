@@ -0,0 +1,184 @@
+package bearmaps.utils.graph.ch;
+
+import bearmaps.utils.graph.IndexedGraph;
+
+import java.util.Arrays;
+
+/**
+ * Computes a contraction order by geometric nested dissection. The vertex
+ * set is split at the coordinate median along its wider axis, and the
+ * vertices on one side that touch the other side form a separator. Both
+ * halves are ordered recursively before the separator, so separators get
+ * the highest ranks. On road networks this keeps the number of shortcuts
+ * added by contraction small without any witness searches.
+ */
+class NestedDissection {
+    /** Sets at most this large are not split any further. */
+    private static final int LEAF_SIZE = 8;
+
+    private final int[] adjBegin;
+    private final int[] adj;
+    private final double[] x;
+    private final double[] y;
+    /* Which part of the current split a vertex is in, valid when stamp matches. */
+    private final int[] side;
+    private final int[] stamp;
+    private int currentStamp;
+    private final int[] order;
+    private int next;
+
+    private NestedDissection(IndexedGraph g, double[] x, double[] y) {
+        int n = g.numVertices();
+        this.x = x;
+        this.y = y;
+        int[] degree = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            for (int e = g.outBegin(v); e < g.outEnd(v); e++) {
+                degree[v + 1]++;
+                degree[g.target(e) + 1]++;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            degree[v + 1] += degree[v];
+        }
+        adjBegin = degree;
+        adj = new int[adjBegin[n]];
+        int[] fill = Arrays.copyOf(adjBegin, n);
+        for (int v = 0; v < n; v++) {
+            for (int e = g.outBegin(v); e < g.outEnd(v); e++) {
+                adj[fill[v]++] = g.target(e);
+                adj[fill[g.target(e)]++] = v;
+            }
+        }
+        side = new int[n];
+        stamp = new int[n];
+        order = new int[n];
+    }
+
+    /**
+     * Returns the vertices of G in contraction order, using (X[v], Y[v]) as
+     * the position of vertex v.
+     */
+    static int[] order(IndexedGraph g, double[] x, double[] y) {
+        NestedDissection nd = new NestedDissection(g, x, y);
+        int[] all = new int[g.numVertices()];
+        for (int v = 0; v < all.length; v++) {
+            all[v] = v;
+        }
+        nd.dissect(all);
+        return nd.order;
+    }
+
+    private void dissect(int[] set) {
+        if (set.length <= LEAF_SIZE) {
+            for (int v : set) {
+                order[next++] = v;
+            }
+            return;
+        }
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int v : set) {
+            minX = Math.min(minX, x[v]);
+            maxX = Math.max(maxX, x[v]);
+            minY = Math.min(minY, y[v]);
+            maxY = Math.max(maxY, y[v]);
+        }
+        double[] key = maxX - minX >= maxY - minY ? x : y;
+        int mid = set.length / 2;
+        select(set, mid, key);
+
+        /* Side 1 is [0, mid), side 2 is [mid, length). */
+        currentStamp++;
+        for (int i = 0; i < set.length; i++) {
+            side[set[i]] = i < mid ? 1 : 2;
+            stamp[set[i]] = currentStamp;
+        }
+        int boundary1 = 0;
+        int boundary2 = 0;
+        for (int v : set) {
+            if (touchesOtherSide(v)) {
+                if (side[v] == 1) {
+                    boundary1++;
+                } else {
+                    boundary2++;
+                }
+            }
+        }
+        int separatorSide = boundary1 <= boundary2 ? 1 : 2;
+        int[] separator = new int[Math.min(boundary1, boundary2)];
+        int[] first = new int[set.length];
+        int[] second = new int[set.length];
+        int s = 0;
+        int a = 0;
+        int b = 0;
+        for (int v : set) {
+            if (side[v] == separatorSide && touchesOtherSide(v)) {
+                separator[s++] = v;
+            } else if (side[v] == 1) {
+                first[a++] = v;
+            } else {
+                second[b++] = v;
+            }
+        }
+        if (a == 0 || b == 0) {
+            /* No progress, e.g. every vertex is on the boundary. */
+            for (int v : set) {
+                order[next++] = v;
+            }
+            return;
+        }
+        dissect(Arrays.copyOf(first, a));
+        dissect(Arrays.copyOf(second, b));
+        for (int v : separator) {
+            order[next++] = v;
+        }
+    }
+
+    /* True if V has a neighbor on the other side of the current split. */
+    private boolean touchesOtherSide(int v) {
+        for (int i = adjBegin[v]; i < adjBegin[v + 1]; i++) {
+            int w = adj[i];
+            if (stamp[w] == currentStamp && side[w] != side[v]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* Quickselect: moves the K-th smallest of SET by KEY into position K, with
+       smaller keys before it and larger keys after it. */
+    private static void select(int[] set, int k, double[] key) {
+        int lo = 0;
+        int hi = set.length - 1;
+        while (hi > lo) {
+            double pivot = key[set[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (key[set[i]] < pivot) {
+                    i++;
+                }
+                while (key[set[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = set[i];
+                    set[i] = set[j];
+                    set[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package bearmaps.utils.graph.chain;
+
+import bearmaps.utils.graph.IndexedGraph;
+
+import java.util.Arrays;
+
+/**
+ * The routing core of an IndexedGraph with its degree-2 chains collapsed.
+ * A vertex is a chain vertex if it only connects two other vertices, either
+ * both ways, with one edge to and one edge from each, or one way, with one
+ * edge in from one and one edge out to the other. Such vertices are only
+ * shape points of a way, so every maximal path through them between two
+ * core vertices becomes a single core edge whose weight is the length of
+ * the path and whose geometry is the list of chain vertices on it.
+ *
+ * Core vertices and core edges have their own dense indices. Each chain
+ * vertex lies on one core edge per direction it can be passed in, at most
+ * two, and records where, so a search can start or end in the middle of a
+ * chain. ChainSolver does that.
+ */
+public class ChainGraph {
+    private static final byte CORE = 0;
+    private static final byte TWO_WAY = 1;
+    private static final byte ONE_WAY = 2;
+
+    private final IndexedGraph graph;
+    /** Core index of each vertex of the graph, or -1 for chain vertices. */
+    final int[] coreOf;
+    /** Vertex of the graph of each core index. */
+    final int[] vertexAt;
+    /** Out-edges of core vertex c are [begin[c], begin[c + 1]). */
+    final int[] begin;
+    final int[] tail;
+    final int[] head;
+    final double[] weight;
+    /** Chain vertices of core edge j are geometry [geomBegin[j], geomBegin[j + 1]). */
+    final int[] geomBegin;
+    final int[] geomVertex;
+    /** Length of the path from the tail of the core edge to each geometry vertex. */
+    final double[] geomDist;
+    /** Geometry index of chain vertex v on its core edges, in slots 2v and 2v + 1, or -1. */
+    final int[] onChain;
+
+    private ChainGraph(IndexedGraph graph, int[] coreOf, int[] vertexAt, int[] begin,
+                       int[] tail, int[] head, double[] weight, int[] geomBegin,
+                       int[] geomVertex, double[] geomDist, int[] onChain) {
+        this.graph = graph;
+        this.coreOf = coreOf;
+        this.vertexAt = vertexAt;
+        this.begin = begin;
+        this.tail = tail;
+        this.head = head;
+        this.weight = weight;
+        this.geomBegin = geomBegin;
+        this.geomVertex = geomVertex;
+        this.geomDist = geomDist;
+        this.onChain = onChain;
+    }
+
+    /** Collapses the degree-2 chains of G. Takes time linear in the size of G. */
+    public static ChainGraph build(IndexedGraph g) {
+        int n = g.numVertices();
+        byte[] kind = new byte[n];
+        for (int v = 0; v < n; v++) {
+            kind[v] = classify(g, v);
+        }
+
+        /* Every chain ends at core vertices unless it is a cycle of chain
+           vertices, which is made to end at one of them. */
+        boolean[] covered = new boolean[n];
+        for (int v = 0; v < n; v++) {
+            if (kind[v] == CORE) {
+                cover(g, kind, covered, v);
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            if (kind[v] != CORE && !covered[v]) {
+                kind[v] = CORE;
+                cover(g, kind, covered, v);
+            }
+        }
+
+        int[] coreOf = new int[n];
+        int numCore = 0;
+        int numEdges = 0;
+        for (int v = 0; v < n; v++) {
+            if (kind[v] == CORE) {
+                coreOf[v] = numCore++;
+                numEdges += g.outEnd(v) - g.outBegin(v);
+            } else {
+                coreOf[v] = -1;
+            }
+        }
+        int[] vertexAt = new int[numCore];
+        int[] begin = new int[numCore + 1];
+        int[] tail = new int[numEdges];
+        int[] head = new int[numEdges];
+        double[] weight = new double[numEdges];
+        int[] geomBegin = new int[numEdges + 1];
+        int[] geomVertex = new int[16];
+        double[] geomDist = new double[16];
+        int[] onChain = new int[2 * n];
+        Arrays.fill(onChain, -1);
+        int j = 0;
+        int size = 0;
+        for (int v = 0; v < n; v++) {
+            if (kind[v] != CORE) {
+                continue;
+            }
+            int c = coreOf[v];
+            vertexAt[c] = v;
+            begin[c] = j;
+            for (int e = g.outBegin(v); e < g.outEnd(v); e++) {
+                int prev = v;
+                int w = g.target(e);
+                double d = g.weight(e);
+                while (kind[w] != CORE) {
+                    if (size == geomVertex.length) {
+                        geomVertex = Arrays.copyOf(geomVertex, 2 * size);
+                        geomDist = Arrays.copyOf(geomDist, 2 * size);
+                    }
+                    geomVertex[size] = w;
+                    geomDist[size] = d;
+                    onChain[onChain[2 * w] == -1 ? 2 * w : 2 * w + 1] = size++;
+                    int next = next(g, w, prev);
+                    d += g.weight(next);
+                    prev = w;
+                    w = g.target(next);
+                }
+                tail[j] = c;
+                head[j] = w;
+                weight[j] = d;
+                geomBegin[++j] = size;
+            }
+        }
+        begin[numCore] = j;
+        for (int i = 0; i < numEdges; i++) {
+            head[i] = coreOf[head[i]];
+        }
+        return new ChainGraph(g, coreOf, vertexAt, begin, tail, head, weight, geomBegin,
+                Arrays.copyOf(geomVertex, size), Arrays.copyOf(geomDist, size), onChain);
+    }
+
+    private static byte classify(IndexedGraph g, int v) {
+        int out = g.outEnd(v) - g.outBegin(v);
+        int in = g.inEnd(v) - g.inBegin(v);
+        if (out == 1 && in == 1) {
+            int a = g.source(g.inBegin(v));
+            int b = g.target(g.outBegin(v));
+            return a != b && a != v && b != v ? ONE_WAY : CORE;
+        }
+        if (out == 2 && in == 2) {
+            int a = g.target(g.outBegin(v));
+            int b = g.target(g.outBegin(v) + 1);
+            int s0 = g.source(g.inBegin(v));
+            int s1 = g.source(g.inBegin(v) + 1);
+            boolean sameNeighbors = (s0 == a && s1 == b) || (s0 == b && s1 == a);
+            return a != b && a != v && b != v && sameNeighbors ? TWO_WAY : CORE;
+        }
+        return CORE;
+    }
+
+    /** Returns the out-edge of chain vertex V that continues a path coming from PREV. */
+    private static int next(IndexedGraph g, int v, int prev) {
+        int e = g.outBegin(v);
+        return g.target(e) != prev ? e : e + 1;
+    }
+
+    /** Marks the chain vertices on the paths out of core vertex V as covered. */
+    private static void cover(IndexedGraph g, byte[] kind, boolean[] covered, int v) {
+        for (int e = g.outBegin(v); e < g.outEnd(v); e++) {
+            int prev = v;
+            int w = g.target(e);
+            while (kind[w] != CORE) {
+                covered[w] = true;
+                int next = next(g, w, prev);
+                prev = w;
+                w = g.target(next);
+            }
+        }
+    }
+
+    /** Returns the graph this is the core of. */
+    public IndexedGraph graph() {
+        return graph;
+    }
+
+    /** Returns the number of core vertices. */
+    public int numVertices() {
+        return vertexAt.length;
+    }
+
+    /** Returns the number of core edges. */
+    public int numEdges() {
+        return head.length;
+    }
+
+    /** Returns the number of chain vertices collapsed into core edges. */
+    public int numChainVertices() {
+        return coreOf.length - vertexAt.length;
+    }
+}
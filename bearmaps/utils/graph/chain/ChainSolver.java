@@ -0,0 +1,230 @@
+package bearmaps.utils.graph.chain;
+
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.IndexedGraph;
+import bearmaps.utils.graph.LowerBound;
+import bearmaps.utils.graph.SearchWorkspace;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.pq.IntDaryHeap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A* on the core of a ChainGraph. Only core vertices are expanded, and the
+ * path is expanded back to every vertex of the graph at the end.
+ *
+ * A start in the middle of a chain enters the core at the heads of the
+ * core edges it lies on, at its distance to them along the chain. An end in
+ * the middle of a chain is reached from the tails of its core edges, so
+ * settling such a tail offers a path; the search stops once no key in the
+ * heap can beat the best path offered. A start and end on the same core
+ * edge, in order, also offer the direct path between them.
+ */
+public class ChainSolver implements ShortestPathsSolver<Long> {
+    private SolverOutcome outcome;
+    private double timeSpan;
+    private double solutionWeight;
+    private List<Long> solution = Collections.emptyList();
+    private int numStatesExplored;
+
+    public ChainSolver(ChainGraph cg, LowerBound heuristic, long start, long end,
+                       Deadline deadline) {
+        long began = System.nanoTime();
+        IndexedGraph g = cg.graph();
+        int from = g.indexOf(start);
+        int to = g.indexOf(end);
+        outcome = SolverOutcome.UNSOLVABLE;
+        if (from < 0 || to < 0) {
+            timeSpan = (System.nanoTime() - began) / 1e9;
+            return;
+        }
+        if (from == to) {
+            outcome = SolverOutcome.SOLVED;
+            solution = Collections.singletonList(start);
+            timeSpan = (System.nanoTime() - began) / 1e9;
+            return;
+        }
+
+        /* Core vertices the path can leave the core from, and the geometry
+           index of the end on the core edge it then follows, or -1 if the
+           end is the core vertex itself. */
+        int[] exitCore = {-1, -1};
+        int[] exitGeom = {-1, -1};
+        if (cg.coreOf[to] != -1) {
+            exitCore[0] = cg.coreOf[to];
+        } else {
+            for (int slot = 0; slot < 2; slot++) {
+                int gi = cg.onChain[2 * to + slot];
+                if (gi != -1) {
+                    exitCore[slot] = cg.tail[edgeOf(cg, gi)];
+                    exitGeom[slot] = gi;
+                }
+            }
+        }
+
+        double best = Double.POSITIVE_INFINITY;
+        /* How the best path ends: at core vertex bestCore and then along
+           geometry bestGeom, or directly from the start along a core edge
+           if bestCore is -1. */
+        int bestCore = -1;
+        int bestGeom = -1;
+        int directFrom = -1;
+
+        SearchWorkspace w = SearchWorkspace.acquire(cg.numVertices(), 0);
+        IntDaryHeap pq = w.heap();
+        if (cg.coreOf[from] != -1) {
+            int c = cg.coreOf[from];
+            w.set(c, 0, -1);
+            pq.insert(c, heuristic.lowerBound(from, to));
+            numStatesExplored++;
+        } else {
+            for (int slot = 0; slot < 2; slot++) {
+                int gi = cg.onChain[2 * from + slot];
+                if (gi == -1) {
+                    continue;
+                }
+                int j = edgeOf(cg, gi);
+                int h = cg.head[j];
+                double d = cg.weight[j] - cg.geomDist[gi];
+                /* Parents below -1 mark entering the core along edge -2 - parent. */
+                if (d < w.dist(h)) {
+                    if (!w.reached(h)) {
+                        numStatesExplored++;
+                    }
+                    w.set(h, d, -2 - j);
+                    pq.insertOrChange(h, d + heuristic.lowerBound(cg.vertexAt[h], to));
+                }
+                for (int t = 0; t < 2; t++) {
+                    int gt = exitGeom[t];
+                    if (gt > gi && gt < cg.geomBegin[j + 1]
+                            && cg.geomDist[gt] - cg.geomDist[gi] < best) {
+                        best = cg.geomDist[gt] - cg.geomDist[gi];
+                        bestGeom = gt;
+                        directFrom = gi;
+                    }
+                }
+            }
+        }
+
+        int polls = 0;
+        while (!pq.isEmpty() && pq.peekKey() < best) {
+            int c = pq.poll();
+            if (deadline.check(++polls)) {
+                outcome = SolverOutcome.TIMEOUT;
+                timeSpan = (System.nanoTime() - began) / 1e9;
+                return;
+            }
+            double d = w.dist(c);
+            for (int t = 0; t < 2; t++) {
+                if (exitCore[t] == c) {
+                    double offered = d + (exitGeom[t] == -1 ? 0 : cg.geomDist[exitGeom[t]]);
+                    if (offered < best) {
+                        best = offered;
+                        bestCore = c;
+                        bestGeom = exitGeom[t];
+                    }
+                }
+            }
+            for (int j = cg.begin[c]; j < cg.begin[c + 1]; j++) {
+                int h = cg.head[j];
+                double nd = d + cg.weight[j];
+                if (nd < w.dist(h)) {
+                    if (!w.reached(h)) {
+                        numStatesExplored++;
+                    }
+                    w.set(h, nd, j);
+                    pq.insertOrChange(h, nd + heuristic.lowerBound(cg.vertexAt[h], to));
+                }
+            }
+        }
+
+        if (best < Double.POSITIVE_INFINITY) {
+            outcome = SolverOutcome.SOLVED;
+            solutionWeight = best;
+            solution = unpack(cg, g, from, bestCore, bestGeom, directFrom, w);
+        }
+        timeSpan = (System.nanoTime() - began) / 1e9;
+    }
+
+    /** Returns the core edge whose geometry contains index GI. */
+    private static int edgeOf(ChainGraph cg, int gi) {
+        int j = Arrays.binarySearch(cg.geomBegin, gi);
+        if (j < 0) {
+            return -j - 2;
+        }
+        /* Skip edges without geometry, which share their geomBegin with the next edge. */
+        while (cg.geomBegin[j + 1] == gi) {
+            j++;
+        }
+        return j;
+    }
+
+    /** Expands the path found to every vertex of the graph, from start to end. */
+    private static List<Long> unpack(ChainGraph cg, IndexedGraph g, int from, int bestCore,
+                                     int bestGeom, int directFrom, SearchWorkspace w) {
+        List<Long> path = new ArrayList<>();
+        if (bestCore == -1) {
+            path.add(g.idOf(from));
+            for (int gi = directFrom + 1; gi <= bestGeom; gi++) {
+                path.add(g.idOf(cg.geomVertex[gi]));
+            }
+            return path;
+        }
+        /* Collected backwards from the end. */
+        if (bestGeom != -1) {
+            for (int gi = bestGeom; gi >= cg.geomBegin[edgeOf(cg, bestGeom)]; gi--) {
+                path.add(g.idOf(cg.geomVertex[gi]));
+            }
+        }
+        int c = bestCore;
+        while (true) {
+            path.add(g.idOf(cg.vertexAt[c]));
+            int p = w.parent(c);
+            if (p == -1) {
+                break;
+            }
+            if (p >= 0) {
+                for (int gi = cg.geomBegin[p + 1] - 1; gi >= cg.geomBegin[p]; gi--) {
+                    path.add(g.idOf(cg.geomVertex[gi]));
+                }
+                c = cg.tail[p];
+            } else {
+                int j = -2 - p;
+                int gs = cg.onChain[2 * from] >= cg.geomBegin[j]
+                        && cg.onChain[2 * from] < cg.geomBegin[j + 1]
+                        ? cg.onChain[2 * from] : cg.onChain[2 * from + 1];
+                for (int gi = cg.geomBegin[j + 1] - 1; gi > gs; gi--) {
+                    path.add(g.idOf(cg.geomVertex[gi]));
+                }
+                path.add(g.idOf(from));
+                break;
+            }
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    public SolverOutcome outcome() {
+        return outcome;
+    }
+
+    public List<Long> solution() {
+        return solution;
+    }
+
+    public double solutionWeight() {
+        return solutionWeight;
+    }
+
+    public int numStatesExplored() {
+        return numStatesExplored;
+    }
+
+    public double explorationTime() {
+        return timeSpan;
+    }
+}
@@ -33,7 +33,7 @@ public class GraphBuildingHandler extends DefaultHandler {
      * roads, but in practice we walk all over them with such impunity that we forget cars can
      * actually drive on them.
      */
-    private static final Set<String> ALLOWED_HIGHWAY_TYPES = new HashSet<>(Arrays.asList
+    static final Set<String> ALLOWED_HIGHWAY_TYPES = new HashSet<>(Arrays.asList
             ("motorway", "trunk", "primary", "secondary", "tertiary", "unclassified",
                     "residential", "living_street", "motorway_link", "trunk_link", "primary_link",
                     "secondary_link", "tertiary_link"));
@@ -44,6 +44,17 @@ public class GraphBuildingHandler extends DefaultHandler {
     private final StreetMapGraph g;
 
     private String wayName = "";
+    private long wayId;
+    private int roadClass = -1;
+    private String maxSpeed = null;
+
+    /* Members and tags of the relation being read; see TurnRestrictions. */
+    private boolean restriction = false;
+    private String restrictionType = null;
+    private long fromWay = -1;
+    private long via = -1;
+    private long toWay = -1;
+    private boolean viaWay = false;
 
     public GraphBuildingHandler(StreetMapGraph g) {
         this.g = g;
@@ -79,6 +90,7 @@ public class GraphBuildingHandler extends DefaultHandler {
         } else if (qName.equals("way")) {
             /* We encountered a new <way...> tag. */
             activeState = "way";
+            wayId = Long.parseLong(attributes.getValue("id"));
 //            System.out.println("Beginning a way...");
         } else if (activeState.equals("way") && qName.equals("nd")) {
             /* While looking at a way, we found a <nd...> tag. */
@@ -91,11 +103,37 @@ public class GraphBuildingHandler extends DefaultHandler {
             if (k.equals("highway")) {
                 //System.out.println("Highway type: " + v);
                 validWay = ALLOWED_HIGHWAY_TYPES.contains(v);
+                roadClass = RoadClass.of(v);
             } else if (k.equals("name")) {
                 //System.out.println("Way Name: " + v);
                 wayName = v;
+            } else if (k.equals("maxspeed")) {
+                maxSpeed = v;
             }
 //            System.out.println("Tag with k=" + k + ", v=" + v + ".");
+        } else if (qName.equals("relation")) {
+            activeState = "relation";
+        } else if (activeState.equals("relation") && qName.equals("member")) {
+            /* While looking at a relation, we found a <member...> tag. */
+            String type = attributes.getValue("type");
+            String role = attributes.getValue("role");
+            long ref = Long.parseLong(attributes.getValue("ref"));
+            if (type.equals("way") && role.equals("from")) {
+                fromWay = ref;
+            } else if (type.equals("way") && role.equals("to")) {
+                toWay = ref;
+            } else if (role.equals("via")) {
+                via = ref;
+                viaWay = !type.equals("node");
+            }
+        } else if (activeState.equals("relation") && qName.equals("tag")) {
+            String k = attributes.getValue("k");
+            String v = attributes.getValue("v");
+            if (k.equals("type")) {
+                restriction = v.equals("restriction");
+            } else if (k.equals("restriction")) {
+                restrictionType = v;
+            }
         } else if (activeState.equals("node") && qName.equals("tag") && attributes.getValue("k")
                 .equals("name")) {
 //            System.out.println("Node's name: " + attributes.getValue("v"));
@@ -119,12 +157,23 @@ public class GraphBuildingHandler extends DefaultHandler {
         if (qName.equals("way")) {
             /* We are done looking at a way. (We finished looking at the nodes, speeds, etc...)*/
             if (validWay) {
+                int speed = RoadClass.speed(roadClass, maxSpeed);
                 for (int i = 0; i < nodePath.size() - 1; i++) {
                     long fromID = nodePath.get(i);
                     long toID = nodePath.get(i + 1);
-                    g.addWeightedEdge(fromID, toID, wayName);
-                    g.addWeightedEdge(toID, fromID, wayName);
+                    g.addWeightedEdge(fromID, toID, wayName, roadClass, speed);
+                    g.addWeightedEdge(toID, fromID, wayName, roadClass, speed);
+                }
+                long[] refs = new long[nodePath.size()];
+                for (int i = 0; i < refs.length; i++) {
+                    refs[i] = nodePath.get(i);
                 }
+                g.addWay(wayId, refs);
+            }
+            clearStates();
+        } else if (qName.equals("relation")) {
+            if (restriction && !viaWay && fromWay != -1 && via != -1 && toWay != -1) {
+                g.addTurnRestriction(fromWay, via, toWay, restrictionType);
             }
             clearStates();
         } else if (qName.equals("node")) {
@@ -141,5 +190,13 @@ public class GraphBuildingHandler extends DefaultHandler {
         validWay = false;
         nodePath = new ArrayList<>();
         wayName = "";
+        roadClass = -1;
+        maxSpeed = null;
+        restriction = false;
+        restrictionType = null;
+        fromWay = -1;
+        via = -1;
+        toWay = -1;
+        viaWay = false;
     }
 }
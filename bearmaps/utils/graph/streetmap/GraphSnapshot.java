@@ -0,0 +1,245 @@
+package bearmaps.utils.graph.streetmap;
+
+import bearmaps.AugmentedStreetMapGraph;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Versioned binary snapshot of a street graph and its indexes, so the server
+ * can start without re-parsing the OSM XML. The file starts with a header
+ * (magic, version, section count) followed by a table of contents of
+ * (tag, offset, length) entries; each section is a sequence of length-prefixed
+ * primitive arrays written with the helpers below. Opening a snapshot maps the
+ * whole file with FileChannel.map and hands out read-only slices per section.
+ *
+ * Run main to write a snapshot from an OSM XML file. This is also where the
+ * contraction hierarchy is built, since that is too slow to do at startup,
+ * or the arc flags instead if the last argument is arcflags:
+ * <pre>
+ * java bearmaps.utils.graph.streetmap.GraphSnapshot \
+ *     berkeley.osm.xml berkeley.snapshot [ch|arcflags]
+ * </pre>
+ */
+public class GraphSnapshot {
+    /** Bump VERSION whenever the layout of any section changes. */
+    private static final long MAGIC = 0x424D41505342494EL; // "BMAPSBIN"
+    private static final int VERSION = 1;
+
+    /** Section tags. */
+    public static final int GRAPH = 1;
+    public static final int SPATIAL_INDEX = 2;
+    public static final int SEARCH_INDEX = 3;
+    public static final int CONTRACTION_HIERARCHY = 4;
+    public static final int LANDMARKS = 5;
+    public static final int ARC_FLAGS = 6;
+    public static final int TURN_RESTRICTIONS = 7;
+    public static final int ROAD_CLASSES = 8;
+
+    private final ByteBuffer file;
+    private final int[] tags;
+    private final long[] offsets;
+    private final long[] lengths;
+
+    private GraphSnapshot(ByteBuffer file) throws IOException {
+        this.file = file;
+        if (file.getLong() != MAGIC) {
+            throw new IOException("Not a graph snapshot.");
+        }
+        int version = file.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version + ".");
+        }
+        int count = file.getInt();
+        tags = new int[count];
+        offsets = new long[count];
+        lengths = new long[count];
+        for (int i = 0; i < count; i++) {
+            tags[i] = file.getInt();
+            offsets[i] = file.getLong();
+            lengths[i] = file.getLong();
+        }
+    }
+
+    /** Maps the snapshot at PATH into memory and reads its table of contents. */
+    public static GraphSnapshot open(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            return new GraphSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size()));
+        }
+    }
+
+    /** Returns true if the file at PATH starts with the snapshot magic number. */
+    public static boolean isSnapshot(String path) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(path))) {
+            return in.readLong() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Returns true if this snapshot has a section tagged TAG. */
+    public boolean hasSection(int tag) {
+        for (int t : tags) {
+            if (t == tag) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns a read-only view of the section tagged TAG. */
+    public ByteBuffer section(int tag) throws IOException {
+        for (int i = 0; i < tags.length; i++) {
+            if (tags[i] == tag) {
+                ByteBuffer view = file.duplicate();
+                view.position((int) offsets[i]);
+                view.limit((int) (offsets[i] + lengths[i]));
+                return view.slice();
+            }
+        }
+        throw new IOException("Snapshot has no section " + tag + ".");
+    }
+
+    public static byte[] readBytes(ByteBuffer in) {
+        byte[] values = new byte[in.getInt()];
+        in.get(values);
+        return values;
+    }
+
+    public static int[] readInts(ByteBuffer in) {
+        int[] values = new int[in.getInt()];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + 4 * values.length);
+        return values;
+    }
+
+    public static long[] readLongs(ByteBuffer in) {
+        long[] values = new long[in.getInt()];
+        in.asLongBuffer().get(values);
+        in.position(in.position() + 8 * values.length);
+        return values;
+    }
+
+    public static double[] readDoubles(ByteBuffer in) {
+        double[] values = new double[in.getInt()];
+        in.asDoubleBuffer().get(values);
+        in.position(in.position() + 8 * values.length);
+        return values;
+    }
+
+    public static String[] readStrings(ByteBuffer in) {
+        String[] values = new String[in.getInt()];
+        for (int i = 0; i < values.length; i++) {
+            int length = in.getInt();
+            if (length >= 0) {
+                byte[] bytes = new byte[length];
+                in.get(bytes);
+                values[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+        return values;
+    }
+
+    public static void writeBytes(DataOutputStream out, byte[] values) throws IOException {
+        out.writeInt(values.length);
+        out.write(values);
+    }
+
+    public static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int v : values) {
+            out.writeInt(v);
+        }
+    }
+
+    public static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long v : values) {
+            out.writeLong(v);
+        }
+    }
+
+    public static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+        out.writeInt(values.length);
+        for (double v : values) {
+            out.writeDouble(v);
+        }
+    }
+
+    public static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+        out.writeInt(values.length);
+        for (String v : values) {
+            if (v == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] bytes = v.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Collects sections in memory and writes the header, table of contents
+     * and sections to disk on close().
+     */
+    public static class Writer implements Closeable {
+        private final String path;
+        private final List<Integer> sectionTags = new ArrayList<>();
+        private final List<ByteArrayOutputStream> sections = new ArrayList<>();
+
+        public Writer(String path) {
+            this.path = path;
+        }
+
+        /** Starts a new section tagged TAG and returns the stream to write it to. */
+        public DataOutputStream section(int tag) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            sectionTags.add(tag);
+            sections.add(bytes);
+            return new DataOutputStream(bytes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(path)))) {
+                out.writeLong(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(sections.size());
+                long offset = 16 + 20L * sections.size();
+                for (int i = 0; i < sections.size(); i++) {
+                    out.writeInt(sectionTags.get(i));
+                    out.writeLong(offset);
+                    out.writeLong(sections.get(i).size());
+                    offset += sections.get(i).size();
+                }
+                for (ByteArrayOutputStream section : sections) {
+                    section.writeTo(out);
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3
+                || args.length == 3 && !args[2].equals("ch") && !args[2].equals("arcflags")) {
+            System.out.println("Usage: GraphSnapshot <osm xml file> <snapshot file> [ch|arcflags]");
+            return;
+        }
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(args[0]);
+        if (args.length == 3 && args[2].equals("arcflags")) {
+            graph.buildArcFlags();
+        } else {
+            graph.buildContractionHierarchy();
+        }
+        graph.writeSnapshot(args[1]);
+    }
+}
@@ -0,0 +1,496 @@
+package bearmaps.utils.graph.streetmap;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ *  Reads an OSM PBF file into a StreetMapGraph without converting it to XML.
+ *  See <a href="https://wiki.openstreetmap.org/wiki/PBF_Format">the PBF format</a>.
+ *
+ *  The file is a sequence of blobs. Each is a 4-byte length, a BlobHeader
+ *  message, then a Blob message holding a zlib-compressed HeaderBlock or
+ *  PrimitiveBlock. This reader pulls blobs off the file in order, inflates
+ *  and decodes them on a thread pool, and applies the decoded blocks in
+ *  file order through addNode, addWeightedEdge, addWay and
+ *  addTurnRestriction. It applies the same highway filter, naming and
+ *  restriction rules as GraphBuildingHandler. Only the
+ *  protobuf fields needed for the graph are decoded; everything else is
+ *  skipped by wire type.
+ */
+class PBFReader {
+    /** Upper bound on blocks decoded ahead of the one being applied. */
+    private static final int MAX_IN_FLIGHT = 4 * Runtime.getRuntime().availableProcessors();
+
+    /** Reads FILENAME into G, which must be in its building state. */
+    static void read(String filename, StreetMapGraph g) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors());
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(filename), 1 << 16))) {
+            Deque<Future<Block>> inFlight = new ArrayDeque<>();
+            while (true) {
+                int headerLength;
+                try {
+                    headerLength = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] header = new byte[headerLength];
+                in.readFully(header);
+                String type = null;
+                int dataSize = 0;
+                Message h = new Message(header, 0, header.length);
+                while (h.next()) {
+                    if (h.field == 1) {
+                        type = h.string();
+                    } else if (h.field == 3) {
+                        dataSize = (int) h.varint;
+                    }
+                }
+                byte[] blob = new byte[dataSize];
+                in.readFully(blob);
+                if ("OSMData".equals(type)) {
+                    inFlight.add(pool.submit(() -> decodeBlock(inflate(blob))));
+                    if (inFlight.size() >= MAX_IN_FLIGHT) {
+                        inFlight.poll().get().applyTo(g);
+                    }
+                } else if ("OSMHeader".equals(type)) {
+                    checkHeader(inflate(blob));
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                inFlight.poll().get().applyTo(g);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + filename, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not read " + filename, e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Returns the uncompressed contents of a Blob message. */
+    private static byte[] inflate(byte[] blob) throws IOException {
+        Message m = new Message(blob, 0, blob.length);
+        byte[] raw = null;
+        int rawSize = 0;
+        int zlibStart = -1;
+        int zlibEnd = -1;
+        while (m.next()) {
+            if (m.field == 1) {
+                raw = m.bytes();
+            } else if (m.field == 2) {
+                rawSize = (int) m.varint;
+            } else if (m.field == 3) {
+                zlibStart = m.start;
+                zlibEnd = m.end;
+            } else if (m.field >= 4 && m.wireType == 2) {
+                throw new IOException("Unsupported PBF blob compression.");
+            }
+        }
+        if (raw != null) {
+            return raw;
+        }
+        if (zlibStart < 0) {
+            throw new IOException("PBF blob has no data.");
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(blob, zlibStart, zlibEnd - zlibStart);
+            byte[] data = new byte[rawSize];
+            int n = 0;
+            while (n < rawSize && !inflater.finished()) {
+                int inflated = inflater.inflate(data, n, rawSize - n);
+                /* A truncated stream runs out of input before it is finished
+                   and would otherwise be retried forever. */
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated PBF blob.");
+                }
+                n += inflated;
+            }
+            return data;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt PBF blob.", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Rejects files that need features this reader does not implement. */
+    private static void checkHeader(byte[] data) throws IOException {
+        Message m = new Message(data, 0, data.length);
+        while (m.next()) {
+            if (m.field == 4) {
+                String feature = m.string();
+                if (!feature.equals("OsmSchema-V0.6") && !feature.equals("DenseNodes")) {
+                    throw new IOException("Unsupported PBF feature " + feature + ".");
+                }
+            }
+        }
+    }
+
+    /** Decodes a PrimitiveBlock. */
+    private static Block decodeBlock(byte[] data) {
+        Block block = new Block();
+        List<int[]> groups = new ArrayList<>();
+        long granularity = 100;
+        long latOffset = 0;
+        long lonOffset = 0;
+        Message m = new Message(data, 0, data.length);
+        while (m.next()) {
+            if (m.field == 1) {
+                Message table = m.message();
+                List<String> strings = new ArrayList<>();
+                while (table.next()) {
+                    if (table.field == 1) {
+                        strings.add(table.string());
+                    }
+                }
+                block.strings = strings.toArray(new String[0]);
+            } else if (m.field == 2) {
+                groups.add(new int[]{m.start, m.end});
+            } else if (m.field == 17) {
+                granularity = m.varint;
+            } else if (m.field == 19) {
+                latOffset = m.varint;
+            } else if (m.field == 20) {
+                lonOffset = m.varint;
+            }
+        }
+        block.granularity = granularity;
+        block.latOffset = latOffset;
+        block.lonOffset = lonOffset;
+        for (int[] group : groups) {
+            Message g = new Message(data, group[0], group[1]);
+            while (g.next()) {
+                if (g.field == 1) {
+                    block.readNode(g.message());
+                } else if (g.field == 2) {
+                    block.readDenseNodes(g.message());
+                } else if (g.field == 3) {
+                    block.readWay(g.message());
+                } else if (g.field == 4) {
+                    block.readRelation(g.message());
+                }
+            }
+        }
+        return block;
+    }
+
+    /** The nodes, accepted ways and turn restrictions of one PrimitiveBlock, in file order. */
+    private static class Block {
+        String[] strings = new String[0];
+        long granularity;
+        long latOffset;
+        long lonOffset;
+        List<Node> nodes = new ArrayList<>();
+        List<long[]> wayRefs = new ArrayList<>();
+        List<String> wayNames = new ArrayList<>();
+        List<Long> wayIds = new ArrayList<>();
+        List<int[]> wayClasses = new ArrayList<>();
+        TurnRestrictions restrictions = new TurnRestrictions();
+
+        double lat(long raw) {
+            return 1e-9 * (latOffset + granularity * raw);
+        }
+
+        double lon(long raw) {
+            return 1e-9 * (lonOffset + granularity * raw);
+        }
+
+        void readNode(Message m) {
+            long id = 0;
+            long lat = 0;
+            long lon = 0;
+            long[] keys = new long[0];
+            long[] vals = new long[0];
+            while (m.next()) {
+                if (m.field == 1) {
+                    id = zigzag(m.varint);
+                } else if (m.field == 2) {
+                    keys = m.packed(false);
+                } else if (m.field == 3) {
+                    vals = m.packed(false);
+                } else if (m.field == 8) {
+                    lat = zigzag(m.varint);
+                } else if (m.field == 9) {
+                    lon = zigzag(m.varint);
+                }
+            }
+            Node node = Node.of(id, lat(lat), lon(lon));
+            for (int i = 0; i < keys.length; i++) {
+                if (strings[(int) keys[i]].equals("name")) {
+                    node.setName(strings[(int) vals[i]]);
+                }
+            }
+            nodes.add(node);
+        }
+
+        void readDenseNodes(Message m) {
+            long[] ids = new long[0];
+            long[] lats = new long[0];
+            long[] lons = new long[0];
+            long[] keysVals = new long[0];
+            while (m.next()) {
+                if (m.field == 1) {
+                    ids = m.packed(true);
+                } else if (m.field == 8) {
+                    lats = m.packed(true);
+                } else if (m.field == 9) {
+                    lons = m.packed(true);
+                } else if (m.field == 10) {
+                    keysVals = m.packed(false);
+                }
+            }
+            long id = 0;
+            long lat = 0;
+            long lon = 0;
+            int kv = 0;
+            for (int i = 0; i < ids.length; i++) {
+                id += ids[i];
+                lat += lats[i];
+                lon += lons[i];
+                Node node = Node.of(id, lat(lat), lon(lon));
+                while (kv < keysVals.length && keysVals[kv] != 0) {
+                    if (strings[(int) keysVals[kv]].equals("name")) {
+                        node.setName(strings[(int) keysVals[kv + 1]]);
+                    }
+                    kv += 2;
+                }
+                kv++;
+                nodes.add(node);
+            }
+        }
+
+        void readWay(Message m) {
+            long id = 0;
+            long[] keys = new long[0];
+            long[] vals = new long[0];
+            long[] refs = new long[0];
+            while (m.next()) {
+                if (m.field == 1) {
+                    id = m.varint;
+                } else if (m.field == 2) {
+                    keys = m.packed(false);
+                } else if (m.field == 3) {
+                    vals = m.packed(false);
+                } else if (m.field == 8) {
+                    refs = m.packed(true);
+                }
+            }
+            boolean validWay = false;
+            String wayName = "";
+            int roadClass = -1;
+            String maxSpeed = null;
+            for (int i = 0; i < keys.length; i++) {
+                String k = strings[(int) keys[i]];
+                if (k.equals("highway")) {
+                    validWay = GraphBuildingHandler.ALLOWED_HIGHWAY_TYPES.contains(
+                            strings[(int) vals[i]]);
+                    roadClass = RoadClass.of(strings[(int) vals[i]]);
+                } else if (k.equals("name")) {
+                    wayName = strings[(int) vals[i]];
+                } else if (k.equals("maxspeed")) {
+                    maxSpeed = strings[(int) vals[i]];
+                }
+            }
+            if (validWay) {
+                for (int i = 1; i < refs.length; i++) {
+                    refs[i] += refs[i - 1];
+                }
+                wayRefs.add(refs);
+                wayNames.add(wayName);
+                wayIds.add(id);
+                wayClasses.add(new int[]{roadClass, RoadClass.speed(roadClass, maxSpeed)});
+            }
+        }
+
+        /* Member types are 0 for a node and 1 for a way. */
+        void readRelation(Message m) {
+            long[] keys = new long[0];
+            long[] vals = new long[0];
+            long[] roles = new long[0];
+            long[] memberIds = new long[0];
+            long[] types = new long[0];
+            while (m.next()) {
+                if (m.field == 2) {
+                    keys = m.packed(false);
+                } else if (m.field == 3) {
+                    vals = m.packed(false);
+                } else if (m.field == 8) {
+                    roles = m.packed(false);
+                } else if (m.field == 9) {
+                    memberIds = m.packed(true);
+                } else if (m.field == 10) {
+                    types = m.packed(false);
+                }
+            }
+            boolean restriction = false;
+            String restrictionType = null;
+            for (int i = 0; i < keys.length; i++) {
+                String k = strings[(int) keys[i]];
+                if (k.equals("type")) {
+                    restriction = strings[(int) vals[i]].equals("restriction");
+                } else if (k.equals("restriction")) {
+                    restrictionType = strings[(int) vals[i]];
+                }
+            }
+            if (!restriction) {
+                return;
+            }
+            long fromWay = -1;
+            long via = -1;
+            long toWay = -1;
+            boolean viaWay = false;
+            long ref = 0;
+            for (int i = 0; i < memberIds.length; i++) {
+                ref += memberIds[i];
+                String role = strings[(int) roles[i]];
+                if (types[i] == 1 && role.equals("from")) {
+                    fromWay = ref;
+                } else if (types[i] == 1 && role.equals("to")) {
+                    toWay = ref;
+                } else if (role.equals("via")) {
+                    via = ref;
+                    viaWay = types[i] != 0;
+                }
+            }
+            if (!viaWay && fromWay != -1 && via != -1 && toWay != -1) {
+                restrictions.add(fromWay, via, toWay, restrictionType);
+            }
+        }
+
+        /* Same steps as GraphBuildingHandler.endElement. */
+        void applyTo(StreetMapGraph g) {
+            for (Node node : nodes) {
+                g.addNode(node);
+            }
+            for (int w = 0; w < wayRefs.size(); w++) {
+                long[] nodePath = wayRefs.get(w);
+                int[] roadClass = wayClasses.get(w);
+                for (int i = 0; i < nodePath.length - 1; i++) {
+                    g.addWeightedEdge(nodePath[i], nodePath[i + 1], wayNames.get(w),
+                            roadClass[0], roadClass[1]);
+                    g.addWeightedEdge(nodePath[i + 1], nodePath[i], wayNames.get(w),
+                            roadClass[0], roadClass[1]);
+                }
+                g.addWay(wayIds.get(w), nodePath);
+            }
+            g.addTurnRestrictions(restrictions);
+        }
+    }
+
+    private static long zigzag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    /**
+     * Cursor over the fields of one protobuf message in DATA[start, end).
+     * After next() returns true, FIELD and WIRETYPE describe the current
+     * field; varint fields are decoded into VARINT and length-delimited
+     * fields span [START, END).
+     */
+    private static class Message {
+        private final byte[] data;
+        private int pos;
+        private final int limit;
+        int field;
+        int wireType;
+        long varint;
+        int start;
+        int end;
+
+        Message(byte[] data, int from, int to) {
+            this.data = data;
+            this.pos = from;
+            this.limit = to;
+        }
+
+        boolean next() {
+            if (pos >= limit) {
+                return false;
+            }
+            long key = readVarint();
+            field = (int) (key >>> 3);
+            wireType = (int) (key & 7);
+            switch (wireType) {
+                case 0:
+                    varint = readVarint();
+                    break;
+                case 1:
+                    pos += 8;
+                    break;
+                case 2:
+                    int length = (int) readVarint();
+                    start = pos;
+                    end = pos + length;
+                    pos = end;
+                    break;
+                case 5:
+                    pos += 4;
+                    break;
+                default:
+                    throw new IllegalStateException("Unsupported wire type " + wireType);
+            }
+            return true;
+        }
+
+        private long readVarint() {
+            long result = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                result |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return result;
+        }
+
+        Message message() {
+            return new Message(data, start, end);
+        }
+
+        String string() {
+            return new String(data, start, end - start, StandardCharsets.UTF_8);
+        }
+
+        byte[] bytes() {
+            byte[] copy = new byte[end - start];
+            System.arraycopy(data, start, copy, 0, copy.length);
+            return copy;
+        }
+
+        /* Decodes a packed repeated varint field, zigzag-decoding if SIGNED. */
+        long[] packed(boolean signed) {
+            Message values = message();
+            long[] result = new long[16];
+            int n = 0;
+            while (values.pos < values.limit) {
+                if (n == result.length) {
+                    result = Arrays.copyOf(result, n * 2);
+                }
+                long v = values.readVarint();
+                result[n++] = signed ? zigzag(v) : v;
+            }
+            return Arrays.copyOf(result, n);
+        }
+    }
+}
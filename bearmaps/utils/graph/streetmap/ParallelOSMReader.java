@@ -0,0 +1,549 @@
+package bearmaps.utils.graph.streetmap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ *  Reads an OSM XML file in two passes. The first pass cuts the file into
+ *  chunks that start on a top-level element (node, way or relation) and
+ *  scans them in parallel on a ForkJoinPool. It keeps node coordinates and
+ *  names, the id, node refs, name, road class and speed of every way that
+ *  GraphBuildingHandler would accept, and the turn restriction relations.
+ *  The second pass, in StreetMapGraph.load, resolves the way refs against a
+ *  sorted primitive id table and builds the CSR arrays, and the
+ *  restrictions are then resolved against those.
+ *
+ *  The scanner applies the same rules as GraphBuildingHandler: which
+ *  highway types are allowed, the last name tag wins, and the first
+ *  definition of a node id wins. It only understands the subset of XML
+ *  that OSM dumps use: elements, attributes, comments and the predefined
+ *  and numeric entities.
+ */
+class ParallelOSMReader {
+    /** Target chunk size in bytes; chunks end at the next element boundary. */
+    private static final int CHUNK_SIZE = 8 << 20;
+
+    private static final byte[] NODE = bytes("node");
+    private static final byte[] WAY = bytes("way");
+    private static final byte[] RELATION = bytes("relation");
+    private static final byte[] ND = bytes("nd");
+    private static final byte[] TAG = bytes("tag");
+    private static final byte[] OSM = bytes("osm");
+    private static final byte[] ID = bytes("id");
+    private static final byte[] LAT = bytes("lat");
+    private static final byte[] LON = bytes("lon");
+    private static final byte[] REF = bytes("ref");
+    private static final byte[] K = bytes("k");
+    private static final byte[] V = bytes("v");
+    private static final byte[] MEMBER = bytes("member");
+    private static final byte[] TYPE = bytes("type");
+    private static final byte[] ROLE = bytes("role");
+
+    private static final int NONE = 0;
+    private static final int IN_NODE = 1;
+    private static final int IN_WAY = 2;
+    private static final int IN_RELATION = 3;
+
+    /** Reads FILENAME into G. */
+    static void read(String filename, StreetMapGraph g) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<Callable<Chunk>> tasks = new ArrayList<>();
+            long start = 0;
+            while (start < size) {
+                long end = start + CHUNK_SIZE >= size ? size
+                        : nextBoundary(channel, start + CHUNK_SIZE);
+                long chunkStart = start;
+                tasks.add(() -> scan(channel, chunkStart, end));
+                start = end;
+            }
+            for (Future<Chunk> result : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                chunks.add(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + filename, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not read " + filename, e.getCause());
+        }
+        merge(chunks, g);
+    }
+
+    /** Concatenates the chunks in file order and hands them to G.load. */
+    private static void merge(List<Chunk> chunks, StreetMapGraph g) {
+        int numNodes = 0;
+        int numEdges = 0;
+        for (Chunk c : chunks) {
+            numNodes += c.numNodes;
+            for (int w = 0; w < c.numWays; w++) {
+                numEdges += 2 * (c.wayStarts[w + 1] - c.wayStarts[w] - 1);
+            }
+        }
+        long[] nodeIds = new long[numNodes];
+        double[] nodeLats = new double[numNodes];
+        double[] nodeLons = new double[numNodes];
+        String[] nodeNames = new String[numNodes];
+        long[] from = new long[numEdges];
+        long[] to = new long[numEdges];
+        int[] wayName = new int[numEdges];
+        byte[] roadClass = new byte[numEdges];
+        byte[] speed = new byte[numEdges];
+        Map<String, Integer> nameIndex = new HashMap<>();
+        nameIndex.put(null, 0);
+        int n = 0;
+        int m = 0;
+        for (Chunk c : chunks) {
+            System.arraycopy(c.nodeIds, 0, nodeIds, n, c.numNodes);
+            System.arraycopy(c.nodeLats, 0, nodeLats, n, c.numNodes);
+            System.arraycopy(c.nodeLons, 0, nodeLons, n, c.numNodes);
+            System.arraycopy(c.nodeNames, 0, nodeNames, n, c.numNodes);
+            n += c.numNodes;
+            for (int w = 0; w < c.numWays; w++) {
+                Integer name = nameIndex.get(c.wayNames[w]);
+                if (name == null) {
+                    name = nameIndex.size();
+                    nameIndex.put(c.wayNames[w], name);
+                }
+                for (int r = c.wayStarts[w]; r < c.wayStarts[w + 1] - 1; r++) {
+                    from[m] = c.refs[r];
+                    to[m] = c.refs[r + 1];
+                    roadClass[m] = c.wayClasses[w];
+                    speed[m] = c.waySpeeds[w];
+                    wayName[m++] = name;
+                    from[m] = c.refs[r + 1];
+                    to[m] = c.refs[r];
+                    roadClass[m] = c.wayClasses[w];
+                    speed[m] = c.waySpeeds[w];
+                    wayName[m++] = name;
+                }
+            }
+        }
+        String[] nameTable = new String[nameIndex.size()];
+        for (Map.Entry<String, Integer> entry : nameIndex.entrySet()) {
+            nameTable[entry.getValue()] = entry.getKey();
+        }
+        g.load(nodeIds, nodeLats, nodeLons, nodeNames, numNodes,
+                from, to, wayName, roadClass, speed, numEdges, nameTable);
+
+        /* Only the refs of ways that some restriction names are kept. */
+        TurnRestrictions restrictions = new TurnRestrictions();
+        for (Chunk c : chunks) {
+            restrictions.addAll(c.restrictions);
+        }
+        if (restrictions.size() > 0) {
+            for (Chunk c : chunks) {
+                for (int w = 0; w < c.numWays; w++) {
+                    if (restrictions.names(c.wayIds[w])) {
+                        restrictions.addWay(c.wayIds[w], c.refs, c.wayStarts[w],
+                                c.wayStarts[w + 1]);
+                    }
+                }
+            }
+        }
+        g.restrictTurns(restrictions);
+    }
+
+    /** Returns the offset of the first top-level element at or after FROM. */
+    private static long nextBoundary(FileChannel channel, long from) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(1 << 16);
+        long position = from;
+        while (position < channel.size()) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read <= 0) {
+                break;
+            }
+            byte[] buf = window.array();
+            /* Leave room to look at the element name after the '<'. */
+            int limit = position + read >= channel.size() ? read : Math.max(1, read - 16);
+            for (int i = 0; i < limit; i++) {
+                if (buf[i] == '<' && i + 1 < read) {
+                    int nameEnd = nameEnd(buf, i + 1, read);
+                    if (matches(buf, i + 1, nameEnd, NODE) || matches(buf, i + 1, nameEnd, WAY)
+                            || matches(buf, i + 1, nameEnd, RELATION)
+                            || (buf[i + 1] == '/' && matches(buf, i + 2, nameEnd(buf, i + 2, read),
+                            OSM))) {
+                        return position + i;
+                    }
+                }
+            }
+            position += limit;
+        }
+        return channel.size();
+    }
+
+    /** Scans the bytes [START, END) of the file. */
+    private static Chunk scan(FileChannel channel, long start, long end) throws IOException {
+        byte[] buf = new byte[(int) (end - start)];
+        ByteBuffer target = ByteBuffer.wrap(buf);
+        while (target.hasRemaining()) {
+            if (channel.read(target, start + target.position()) < 0) {
+                break;
+            }
+        }
+        Chunk c = new Chunk();
+        c.scan(buf, target.position());
+        return c;
+    }
+
+    /** Nodes, accepted ways and turn restrictions found in one chunk, in file order. */
+    private static class Chunk {
+        long[] nodeIds = new long[1024];
+        double[] nodeLats = new double[1024];
+        double[] nodeLons = new double[1024];
+        String[] nodeNames = new String[1024];
+        int numNodes;
+
+        long[] refs = new long[4096];
+        int numRefs;
+        int[] wayStarts = new int[257];
+        String[] wayNames = new String[256];
+        long[] wayIds = new long[256];
+        byte[] wayClasses = new byte[256];
+        byte[] waySpeeds = new byte[256];
+        int numWays;
+
+        /* Restrictions found, and the members and tags of the relation being scanned. */
+        TurnRestrictions restrictions = new TurnRestrictions();
+        private boolean restriction;
+        private String restrictionType;
+        private long fromWay;
+        private long via;
+        private long toWay;
+        private boolean viaWay;
+
+        /* Attribute spans of the element being scanned. */
+        private int[] attrName = new int[32];
+        private int[] attrValue = new int[32];
+        private int numAttrs;
+
+        private int state = NONE;
+        private boolean validWay;
+        private String wayName;
+        private long wayId;
+        private int roadClass;
+        private String maxSpeed;
+
+        void scan(byte[] buf, int len) {
+            int i = 0;
+            while (i < len) {
+                if (buf[i] != '<') {
+                    i++;
+                    continue;
+                }
+                int j = i + 1;
+                if (j >= len) {
+                    break;
+                }
+                if (buf[j] == '!') {
+                    i = startsWith(buf, j, len, "!--") ? indexOf(buf, "-->", j, len) + 3
+                            : indexOf(buf, ">", j, len) + 1;
+                    continue;
+                }
+                if (buf[j] == '?') {
+                    i = indexOf(buf, ">", j, len) + 1;
+                    continue;
+                }
+                if (buf[j] == '/') {
+                    int nameEnd = nameEnd(buf, j + 1, len);
+                    endElement(buf, j + 1, nameEnd);
+                    i = indexOf(buf, ">", nameEnd, len) + 1;
+                    continue;
+                }
+                int nameEnd = nameEnd(buf, j, len);
+                i = readAttributes(buf, nameEnd, len);
+                boolean selfClosing = buf[i - 2] == '/';
+                startElement(buf, j, nameEnd);
+                if (selfClosing) {
+                    endElement(buf, j, nameEnd);
+                }
+            }
+        }
+
+        /* Records the attributes starting at I and returns the index just past the '>'. */
+        private int readAttributes(byte[] buf, int i, int len) {
+            numAttrs = 0;
+            while (i < len) {
+                byte b = buf[i];
+                if (b == '>') {
+                    return i + 1;
+                }
+                if (b == '/' || isSpace(b)) {
+                    i++;
+                    continue;
+                }
+                int nameStart = i;
+                while (i < len && buf[i] != '=' && !isSpace(buf[i])) {
+                    i++;
+                }
+                int nameStop = i;
+                while (i < len && buf[i] != '"' && buf[i] != '\'') {
+                    i++;
+                }
+                byte quote = buf[i];
+                int valueStart = ++i;
+                while (i < len && buf[i] != quote) {
+                    i++;
+                }
+                if (numAttrs == attrName.length / 2) {
+                    attrName = Arrays.copyOf(attrName, attrName.length * 2);
+                    attrValue = Arrays.copyOf(attrValue, attrValue.length * 2);
+                }
+                attrName[2 * numAttrs] = nameStart;
+                attrName[2 * numAttrs + 1] = nameStop;
+                attrValue[2 * numAttrs] = valueStart;
+                attrValue[2 * numAttrs + 1] = i;
+                numAttrs++;
+                i++;
+            }
+            return len;
+        }
+
+        /* Returns the attribute index whose name is NAME, or -1. */
+        private int attribute(byte[] buf, byte[] name) {
+            for (int a = 0; a < numAttrs; a++) {
+                if (matches(buf, attrName[2 * a], attrName[2 * a + 1], name)) {
+                    return a;
+                }
+            }
+            return -1;
+        }
+
+        private String value(byte[] buf, int a) {
+            return a < 0 ? null : decode(buf, attrValue[2 * a], attrValue[2 * a + 1]);
+        }
+
+        private void startElement(byte[] buf, int start, int end) {
+            if (matches(buf, start, end, NODE)) {
+                state = IN_NODE;
+                addNode(parseLong(buf, attribute(buf, ID)),
+                        Double.parseDouble(value(buf, attribute(buf, LAT))),
+                        Double.parseDouble(value(buf, attribute(buf, LON))));
+            } else if (matches(buf, start, end, WAY)) {
+                state = IN_WAY;
+                validWay = false;
+                wayName = "";
+                roadClass = -1;
+                maxSpeed = null;
+                wayId = parseLong(buf, attribute(buf, ID));
+                wayStarts[numWays] = numRefs;
+            } else if (state == IN_WAY && matches(buf, start, end, ND)) {
+                addRef(parseLong(buf, attribute(buf, REF)));
+            } else if (state == IN_WAY && matches(buf, start, end, TAG)) {
+                String k = value(buf, attribute(buf, K));
+                String v = value(buf, attribute(buf, V));
+                if (k.equals("highway")) {
+                    validWay = GraphBuildingHandler.ALLOWED_HIGHWAY_TYPES.contains(v);
+                    roadClass = RoadClass.of(v);
+                } else if (k.equals("name")) {
+                    wayName = v;
+                } else if (k.equals("maxspeed")) {
+                    maxSpeed = v;
+                }
+            } else if (matches(buf, start, end, RELATION)) {
+                state = IN_RELATION;
+                restriction = false;
+                restrictionType = null;
+                fromWay = -1;
+                via = -1;
+                toWay = -1;
+                viaWay = false;
+            } else if (state == IN_RELATION && matches(buf, start, end, MEMBER)) {
+                String type = value(buf, attribute(buf, TYPE));
+                String role = value(buf, attribute(buf, ROLE));
+                long ref = parseLong(buf, attribute(buf, REF));
+                if (type.equals("way") && role.equals("from")) {
+                    fromWay = ref;
+                } else if (type.equals("way") && role.equals("to")) {
+                    toWay = ref;
+                } else if (role.equals("via")) {
+                    via = ref;
+                    viaWay = !type.equals("node");
+                }
+            } else if (state == IN_RELATION && matches(buf, start, end, TAG)) {
+                String k = value(buf, attribute(buf, K));
+                String v = value(buf, attribute(buf, V));
+                if (k.equals("type")) {
+                    restriction = v.equals("restriction");
+                } else if (k.equals("restriction")) {
+                    restrictionType = v;
+                }
+            } else if (state == IN_NODE && matches(buf, start, end, TAG)
+                    && "name".equals(value(buf, attribute(buf, K)))) {
+                nodeNames[numNodes - 1] = value(buf, attribute(buf, V));
+            }
+        }
+
+        private void endElement(byte[] buf, int start, int end) {
+            if (matches(buf, start, end, WAY)) {
+                if (validWay && numRefs - wayStarts[numWays] > 1) {
+                    if (numWays + 1 == wayNames.length) {
+                        wayNames = Arrays.copyOf(wayNames, wayNames.length * 2);
+                        wayIds = Arrays.copyOf(wayIds, wayIds.length * 2);
+                        wayClasses = Arrays.copyOf(wayClasses, wayClasses.length * 2);
+                        waySpeeds = Arrays.copyOf(waySpeeds, waySpeeds.length * 2);
+                        wayStarts = Arrays.copyOf(wayStarts, wayStarts.length * 2);
+                    }
+                    wayNames[numWays] = wayName;
+                    wayIds[numWays] = wayId;
+                    wayClasses[numWays] = (byte) roadClass;
+                    waySpeeds[numWays] = (byte) RoadClass.speed(roadClass, maxSpeed);
+                    numWays++;
+                    wayStarts[numWays] = numRefs;
+                } else {
+                    numRefs = wayStarts[numWays];
+                }
+                state = NONE;
+            } else if (matches(buf, start, end, RELATION)) {
+                if (restriction && !viaWay && fromWay != -1 && via != -1 && toWay != -1) {
+                    restrictions.add(fromWay, via, toWay, restrictionType);
+                }
+                state = NONE;
+            } else if (matches(buf, start, end, NODE)) {
+                state = NONE;
+            }
+        }
+
+        private void addNode(long id, double lat, double lon) {
+            if (numNodes == nodeIds.length) {
+                int size = numNodes * 2;
+                nodeIds = Arrays.copyOf(nodeIds, size);
+                nodeLats = Arrays.copyOf(nodeLats, size);
+                nodeLons = Arrays.copyOf(nodeLons, size);
+                nodeNames = Arrays.copyOf(nodeNames, size);
+            }
+            nodeIds[numNodes] = id;
+            nodeLats[numNodes] = lat;
+            nodeLons[numNodes] = lon;
+            nodeNames[numNodes] = null;
+            numNodes++;
+        }
+
+        private void addRef(long ref) {
+            if (numRefs == refs.length) {
+                refs = Arrays.copyOf(refs, numRefs * 2);
+            }
+            refs[numRefs++] = ref;
+        }
+
+        private long parseLong(byte[] buf, int a) {
+            int i = attrValue[2 * a];
+            int end = attrValue[2 * a + 1];
+            boolean negative = buf[i] == '-';
+            if (negative) {
+                i++;
+            }
+            long result = 0;
+            for (; i < end; i++) {
+                result = result * 10 + (buf[i] - '0');
+            }
+            return negative ? -result : result;
+        }
+    }
+
+    /* Decodes an attribute value: UTF-8, entities, and whitespace normalized
+       to spaces as an XML parser would. */
+    private static String decode(byte[] buf, int start, int end) {
+        boolean plain = true;
+        for (int i = start; i < end && plain; i++) {
+            byte b = buf[i];
+            plain = b >= 0x20 && b != '&';
+        }
+        if (plain) {
+            return new String(buf, start, end - start, StandardCharsets.ISO_8859_1);
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        int i = start;
+        while (i < end) {
+            byte b = buf[i];
+            if (b == '&') {
+                int semi = i + 1;
+                while (semi < end && buf[semi] != ';') {
+                    semi++;
+                }
+                String entity = new String(buf, i + 1, semi - i - 1, StandardCharsets.ISO_8859_1);
+                switch (entity) {
+                    case "amp": sb.append('&'); break;
+                    case "lt": sb.append('<'); break;
+                    case "gt": sb.append('>'); break;
+                    case "quot": sb.append('"'); break;
+                    case "apos": sb.append('\''); break;
+                    default:
+                        if (entity.startsWith("#x")) {
+                            sb.appendCodePoint(Integer.parseInt(entity.substring(2), 16));
+                        } else if (entity.startsWith("#")) {
+                            sb.appendCodePoint(Integer.parseInt(entity.substring(1)));
+                        }
+                }
+                i = semi + 1;
+            } else if (b == '\t' || b == '\n' || b == '\r') {
+                sb.append(' ');
+                i++;
+            } else if (b >= 0) {
+                sb.append((char) b);
+                i++;
+            } else {
+                int j = i + 1;
+                while (j < end && (buf[j] & 0xC0) == 0x80) {
+                    j++;
+                }
+                sb.append(new String(buf, i, j - i, StandardCharsets.UTF_8));
+                i = j;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private static int nameEnd(byte[] buf, int i, int len) {
+        while (i < len && buf[i] != '>' && buf[i] != '/' && !isSpace(buf[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean matches(byte[] buf, int start, int end, byte[] name) {
+        if (end - start != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (buf[start + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith(byte[] buf, int i, int len, String s) {
+        return i + s.length() <= len && matches(buf, i, i + s.length(), bytes(s));
+    }
+
+    /* Returns the index of S in BUF at or after FROM, or LEN - 1 if absent. */
+    private static int indexOf(byte[] buf, String s, int from, int len) {
+        byte[] pattern = bytes(s);
+        for (int i = from; i + pattern.length <= len; i++) {
+            if (matches(buf, i, i + pattern.length, pattern)) {
+                return i;
+            }
+        }
+        return len - 1;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,82 @@
+package bearmaps.utils.graph.streetmap;
+
+/**
+ *  The road classes of the highway types GraphBuildingHandler accepts, so
+ *  an edge can keep its class in one byte, and the speeds driven on them.
+ *  See <a href="https://wiki.openstreetmap.org/wiki/Key:maxspeed">the
+ *  maxspeed tag</a>. Speeds are whole miles per hour, at most MAX_SPEED so
+ *  that they fit in an unsigned byte.
+ */
+public class RoadClass {
+    /** Highway types by class; class c is the highway type TYPES[c]. */
+    private static final String[] TYPES = {"motorway", "trunk", "primary", "secondary",
+        "tertiary", "unclassified", "residential", "living_street", "motorway_link",
+        "trunk_link", "primary_link", "secondary_link", "tertiary_link"};
+    /** Speed of each class in mph, for ways without a usable maxspeed tag. */
+    private static final int[] DEFAULT_SPEEDS = {65, 55, 45, 40, 35, 25, 25, 10, 45,
+        40, 35, 30, 25};
+
+    /** Class given to edges read from snapshots written before classes were kept. */
+    public static final int UNCLASSIFIED = 5;
+    public static final int MAX_SPEED = 255;
+    private static final double MPH_PER_KMH = 0.621371;
+
+    private RoadClass() {
+    }
+
+    /** Returns the class of the highway type HIGHWAY, or -1 if it is not routable. */
+    public static int of(String highway) {
+        for (int c = 0; c < TYPES.length; c++) {
+            if (TYPES[c].equals(highway)) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the highway type of class C. */
+    public static String name(int c) {
+        return TYPES[c];
+    }
+
+    /** Returns the number of classes. */
+    public static int count() {
+        return TYPES.length;
+    }
+
+    /** Returns the speed in mph of roads of class C that have no maxspeed tag. */
+    public static int defaultSpeed(int c) {
+        return DEFAULT_SPEEDS[c];
+    }
+
+    /**
+     * Returns the speed in mph of a way of class C whose maxspeed tag is
+     * MAXSPEED, which may be null. A bare number is in km/h and one ending
+     * in mph is in mph; only the first of several values counts. Anything
+     * else, such as none or a country code like US:urban, gives the default
+     * speed of the class.
+     */
+    public static int speed(int c, String maxspeed) {
+        if (maxspeed == null) {
+            return defaultSpeed(c);
+        }
+        String value = maxspeed.split(";")[0].trim();
+        boolean mph = value.endsWith("mph");
+        if (mph) {
+            value = value.substring(0, value.length() - 3).trim();
+        } else if (value.endsWith("km/h")) {
+            value = value.substring(0, value.length() - 4).trim();
+        }
+        double number;
+        try {
+            number = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return defaultSpeed(c);
+        }
+        long speed = Math.round(mph ? number : number * MPH_PER_KMH);
+        if (speed < 1) {
+            return defaultSpeed(c);
+        }
+        return (int) Math.min(speed, MAX_SPEED);
+    }
+}
@@ -0,0 +1,11 @@
+package bearmaps.utils.graph.streetmap;
+
+/** What a route minimizes; see StreetMapGraph.weighted. */
+public enum RoutingProfile {
+    /** Edges weigh their length in miles. */
+    SHORTEST,
+    /** Edges weigh the seconds it takes to drive them at their speed. */
+    FASTEST;
+
+    public static final double SECONDS_PER_HOUR = 3600;
+}
@@ -1,28 +1,97 @@
 package bearmaps.utils.graph.streetmap;
 
 import bearmaps.utils.graph.AStarGraph;
+import bearmaps.utils.graph.IndexedGraph;
 import bearmaps.utils.graph.WeightedEdge;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
-
-public class StreetMapGraph implements AStarGraph<Long> {
-    private Map<Long, Node> nodes = new HashMap<>();
-    private Map<Long, Set<WeightedEdge<Long>>> neighbors = new HashMap<>();
+import java.util.stream.IntStream;
+
+/**
+ * Street graph stored in compressed sparse row (CSR) form. Vertices are
+ * sorted by OSM id, so vertex index i holds ids[i], lats[i] and lons[i],
+ * and its outgoing edges are the entries [offsets[i], offsets[i + 1]) of
+ * targets, weights, edgeNames, edgeClasses and edgeSpeeds. Weights are
+ * lengths in miles; the class and speed of an edge are one byte each, so
+ * weighted() can turn them into travel times without another weight
+ * array. The incoming edges of i are the entries [inOffsets[i],
+ * inOffsets[i + 1]) of inEdges, which hold forward edge indices. While the
+ * OSM file is being read, nodes and edges are collected in build-time
+ * buffers that are dropped once load() has produced the arrays.
+ * Turns banned by OSM restriction relations are kept as sorted
+ * (in edge << 32 | out edge) pairs in bannedTurns. Live speed updates are
+ * kept apart from all of these, as the travel times of traffic, which
+ * updateSpeeds replaces as a whole so that searches never lock.
+ */
+public class StreetMapGraph implements AStarGraph<Long>, IndexedGraph {
+    /** XML files at least this large are read with ParallelOSMReader. */
+    public static final long PARALLEL_XML_THRESHOLD = 16 << 20;
+    /** Radius of the earth in miles, the unit of all weights and distances. */
+    private static final double EARTH_RADIUS = 3963;
+
+    private long[] ids = new long[0];
+    private double[] lats = new double[0];
+    private double[] lons = new double[0];
+    private String[] names = new String[0];
+    private int[] offsets = new int[1];
+    private int[] targets = new int[0];
+    private double[] weights = new double[0];
+    private int[] edgeNames = new int[0];
+    private String[] wayNames = new String[0];
+    /* RoadClass class and speed in mph of each edge, as unsigned bytes. */
+    private byte[] edgeClasses = new byte[0];
+    private byte[] edgeSpeeds = new byte[0];
+    private long[] bannedTurns = new long[0];
+    /* Reverse CSR, derived from the arrays above and never persisted. */
+    private int[] inOffsets = new int[1];
+    private int[] inEdges = new int[0];
+    private int[] sources = new int[0];
+    /* Planar coordinates in miles for the heuristic, derived from lats and
+       lons and never persisted; see buildProjection. */
+    private double[] xs = new double[0];
+    private double[] ys = new double[0];
+    /* The largest edge speed, derived and never persisted. */
+    private int maxSpeed = 1;
+    /* Travel times under the latest speed updates, or null if there are
+       none. Never persisted. */
+    private volatile TravelTimeGraph traffic;
+
+    /* Build-time buffers, only non-null while the graph is being read. */
+    private Map<Long, Node> pendingNodes;
+    private long[] pendingFrom;
+    private long[] pendingTo;
+    private int[] pendingName;
+    private byte[] pendingClass;
+    private byte[] pendingSpeed;
+    private int pendingEdges;
+    private Map<String, Integer> wayNameIndex;
+    private TurnRestrictions pendingRestrictions;
 
     private StreetMapGraph() {
     }
 
+    /**
+     * Reads the graph from FILENAME, which is a snapshot written by
+     * GraphSnapshot, an OSM PBF file if its name ends in .pbf, or else an
+     * OSM XML file.
+     */
     public StreetMapGraph(String filename) {
-        StreetMapGraph smg = StreetMapGraph.readFromXML(filename);
-        this.nodes = smg.nodes;
-        this.neighbors = smg.neighbors;
+        if (GraphSnapshot.isSnapshot(filename)) {
+            readFromSnapshot(filename);
+        } else if (filename.endsWith(".pbf")) {
+            readFromPBF(filename);
+        } else {
+            readFromXML(filename);
+        }
     }
 
     /**
@@ -31,24 +100,205 @@ public class StreetMapGraph implements AStarGraph<Long> {
      **/
     @Override
     public List<WeightedEdge<Long>> neighbors(Long v) {
-        Set<WeightedEdge<Long>> incidentSet = neighbors.get(v);
-        List<WeightedEdge<Long>> incidentList = new ArrayList<>();
-        for (WeightedEdge<Long> e : incidentSet) {
-            incidentList.add(e);
+        int i = indexOf(v);
+        List<WeightedEdge<Long>> incidentList = new ArrayList<>(offsets[i + 1] - offsets[i]);
+        for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+            WeightedEdge<Long> weightedEdge = new WeightedEdge<>(v, ids[targets[e]], weights[e]);
+            weightedEdge.setName(wayNames[edgeNames[e]]);
+            incidentList.add(weightedEdge);
         }
-
         return incidentList;
     }
 
     /**
-     * Returns the great-circle distance between S and GOAL. Assumes
-     * S and GOAL exist in this graph.
+     * Returns a lower bound on the great-circle distance between S and GOAL.
+     * Assumes S and GOAL exist in this graph.
      */
     @Override
     public double estimatedDistanceToGoal(Long s, Long goal) {
-        Node sNode = nodes.get(s);
-        Node goalNode = nodes.get(goal);
-        return distance(sNode.lon(), goalNode.lon(), sNode.lat(), goalNode.lat());
+        return estimatedDistance(indexOf(s), indexOf(goal));
+    }
+
+    @Override
+    public int numVertices() {
+        return ids.length;
+    }
+
+    @Override
+    public int indexOf(long id) {
+        int i = Arrays.binarySearch(ids, id);
+        return i >= 0 ? i : -1;
+    }
+
+    @Override
+    public long idOf(int v) {
+        return ids[v];
+    }
+
+    @Override
+    public int outBegin(int v) {
+        return offsets[v];
+    }
+
+    @Override
+    public int outEnd(int v) {
+        return offsets[v + 1];
+    }
+
+    @Override
+    public int target(int e) {
+        return targets[e];
+    }
+
+    @Override
+    public double weight(int e) {
+        return weights[e];
+    }
+
+    @Override
+    public int inBegin(int v) {
+        return inOffsets[v];
+    }
+
+    @Override
+    public int inEnd(int v) {
+        return inOffsets[v + 1];
+    }
+
+    @Override
+    public int inEdge(int i) {
+        return inEdges[i];
+    }
+
+    @Override
+    public int source(int i) {
+        return sources[i];
+    }
+
+    /* A lower bound on the great-circle distance, from the planar
+       coordinates of buildProjection. */
+    @Override
+    public double estimatedDistance(int v, int goal) {
+        double dx = xs[v] - xs[goal];
+        double dy = ys[v] - ys[goal];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /** Returns the latitude of the vertex with index V. */
+    public double latAt(int v) {
+        return lats[v];
+    }
+
+    /** Returns the longitude of the vertex with index V. */
+    public double lonAt(int v) {
+        return lons[v];
+    }
+
+    /**
+     * Returns true if a turn restriction bans leaving the target of edge IN
+     * by edge OUT after arriving along IN.
+     */
+    public boolean turnBanned(int in, int out) {
+        return bannedTurns.length > 0
+                && Arrays.binarySearch(bannedTurns, (long) in << 32 | out) >= 0;
+    }
+
+    /** Returns the number of (in edge, out edge) turns that restrictions ban. */
+    public int numBannedTurns() {
+        return bannedTurns.length;
+    }
+
+    /** Returns the RoadClass class of the way that edge E belongs to. */
+    public int roadClass(int e) {
+        return edgeClasses[e] & 0xFF;
+    }
+
+    /** Returns the speed of edge E in mph. */
+    public int speed(int e) {
+        return edgeSpeeds[e] & 0xFF;
+    }
+
+    /** Returns the largest speed of any edge in mph, or 1 if there are no edges. */
+    public int maxSpeed() {
+        return maxSpeed;
+    }
+
+    /**
+     * Returns this graph weighted by PROFILE. The view shares every array
+     * of this graph, so switching profiles per query costs nothing. FASTEST
+     * weighs the travel times of travelTimes().
+     */
+    public IndexedGraph weighted(RoutingProfile profile) {
+        return profile == RoutingProfile.FASTEST ? travelTimes() : this;
+    }
+
+    /**
+     * Returns the travel times under the latest speed updates, or at the
+     * speed of every edge if there are none. Later updates do not change
+     * the returned graph, so a search sees the same times throughout.
+     */
+    public TravelTimeGraph travelTimes() {
+        TravelTimeGraph times = traffic;
+        return times != null ? times : new TravelTimeGraph(this, null, maxSpeed);
+    }
+
+    /**
+     * Sets the speed of edge EDGES[i] to MPH[i] mph, on top of the updates
+     * before. Copies the travel times of the previous update, so it takes
+     * time in the number of edges, and searches that are already running
+     * keep the times they started with.
+     */
+    public synchronized void updateSpeeds(int[] edges, double[] mph) {
+        if (edges.length != mph.length) {
+            throw new IllegalArgumentException("Got " + edges.length + " edges but "
+                    + mph.length + " speeds.");
+        }
+        TravelTimeGraph times = travelTimes();
+        double[] seconds = new double[targets.length];
+        for (int e = 0; e < seconds.length; e++) {
+            seconds[e] = times.weight(e);
+        }
+        double topSpeed = times.topSpeed();
+        for (int i = 0; i < edges.length; i++) {
+            if (edges[i] < 0 || edges[i] >= seconds.length) {
+                throw new IllegalArgumentException("No edge " + edges[i] + ".");
+            }
+            if (!(mph[i] > 0) || Double.isInfinite(mph[i])) {
+                throw new IllegalArgumentException("Speed must be positive, got " + mph[i] + ".");
+            }
+            seconds[edges[i]] = weights[edges[i]] * RoutingProfile.SECONDS_PER_HOUR / mph[i];
+            topSpeed = Math.max(topSpeed, mph[i]);
+        }
+        traffic = new TravelTimeGraph(this, seconds, topSpeed);
+    }
+
+    /** Drops all speed updates, so edges are back at their own speed. */
+    public synchronized void clearTraffic() {
+        traffic = null;
+    }
+
+    /**
+     * Returns the index of the edge from the vertex with id FROM to the
+     * vertex with id TO, or -1 if there is none, for matching speed updates
+     * given by node ids to edges.
+     */
+    public int edgeIndex(long from, long to) {
+        int u = indexOf(from);
+        int v = indexOf(to);
+        if (u < 0 || v < 0) {
+            return -1;
+        }
+        for (int e = outBegin(u); e < outEnd(u); e++) {
+            if (targets[e] == v) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the name of the way that edge E belongs to, or null if it has none. */
+    public String edgeName(int e) {
+        return wayNames[edgeNames[e]];
     }
 
     /**
@@ -57,7 +307,7 @@ public class StreetMapGraph implements AStarGraph<Long> {
      **/
     private Set<Long> vertices() {
         Set<Long> vertices = new HashSet<>();
-        for (long id : nodes.keySet()) {
+        for (long id : ids) {
             vertices.add(id);
         }
 
@@ -65,65 +315,411 @@ public class StreetMapGraph implements AStarGraph<Long> {
     }
 
     /**
-     * Factory method. Creates and returns a graph from an OSM XML
-     * file. Assumes file is correctly formatted.
+     * Reads this graph from an OSM XML file. Assumes file is correctly
+     * formatted.
      */
-    private static StreetMapGraph readFromXML(String filename) {
-        StreetMapGraph smg = new StreetMapGraph();
+    private void readFromXML(String filename) {
+        if (new File(filename).length() >= PARALLEL_XML_THRESHOLD) {
+            try {
+                ParallelOSMReader.read(filename, this);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+        startBuilding();
         try {
             File inputFile = new File(filename);
             FileInputStream inputStream = new FileInputStream(inputFile);
             SAXParserFactory factory = SAXParserFactory.newInstance();
             SAXParser saxParser = factory.newSAXParser();
-            GraphBuildingHandler gbh = new GraphBuildingHandler(smg);
+            GraphBuildingHandler gbh = new GraphBuildingHandler(this);
             saxParser.parse(inputStream, gbh);
         } catch (ParserConfigurationException | SAXException | IOException e) {
             e.printStackTrace();
         }
 
-        smg.clean();
-        return smg;
+        compact();
+    }
+
+    /** Reads this graph from an OSM PBF file. */
+    private void readFromPBF(String filename) {
+        startBuilding();
+        try {
+            PBFReader.read(filename, this);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        compact();
+    }
+
+    /**
+     * Loads the CSR arrays from the GRAPH section of a snapshot, the edge
+     * classes and speeds from its ROAD_CLASSES section, and the banned turns
+     * from its TURN_RESTRICTIONS section. A snapshot written before either
+     * existed loads with every edge unclassified and no banned turns.
+     */
+    private void readFromSnapshot(String filename) {
+        try {
+            GraphSnapshot snapshot = GraphSnapshot.open(filename);
+            ByteBuffer in = snapshot.section(GraphSnapshot.GRAPH);
+            ids = GraphSnapshot.readLongs(in);
+            lats = GraphSnapshot.readDoubles(in);
+            lons = GraphSnapshot.readDoubles(in);
+            names = GraphSnapshot.readStrings(in);
+            offsets = GraphSnapshot.readInts(in);
+            targets = GraphSnapshot.readInts(in);
+            weights = GraphSnapshot.readDoubles(in);
+            edgeNames = GraphSnapshot.readInts(in);
+            wayNames = GraphSnapshot.readStrings(in);
+            if (snapshot.hasSection(GraphSnapshot.ROAD_CLASSES)) {
+                ByteBuffer classes = snapshot.section(GraphSnapshot.ROAD_CLASSES);
+                edgeClasses = GraphSnapshot.readBytes(classes);
+                edgeSpeeds = GraphSnapshot.readBytes(classes);
+            } else {
+                edgeClasses = new byte[targets.length];
+                edgeSpeeds = new byte[targets.length];
+                Arrays.fill(edgeClasses, (byte) RoadClass.UNCLASSIFIED);
+                Arrays.fill(edgeSpeeds, (byte) RoadClass.defaultSpeed(RoadClass.UNCLASSIFIED));
+            }
+            if (snapshot.hasSection(GraphSnapshot.TURN_RESTRICTIONS)) {
+                bannedTurns = GraphSnapshot.readLongs(
+                        snapshot.section(GraphSnapshot.TURN_RESTRICTIONS));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        buildReverse();
+        buildProjection();
+        buildMaxSpeed();
+    }
+
+    /** Writes this graph and any indexes built on top of it to a snapshot at PATH. */
+    public void writeSnapshot(String path) throws IOException {
+        try (GraphSnapshot.Writer snapshot = new GraphSnapshot.Writer(path)) {
+            writeSnapshot(snapshot);
+        }
+    }
+
+    /**
+     * Writes the CSR arrays as the GRAPH section of a snapshot, the edge
+     * classes and speeds as its ROAD_CLASSES section, and the banned turns
+     * as its TURN_RESTRICTIONS section.
+     */
+    protected void writeSnapshot(GraphSnapshot.Writer snapshot) throws IOException {
+        DataOutputStream out = snapshot.section(GraphSnapshot.GRAPH);
+        GraphSnapshot.writeLongs(out, ids);
+        GraphSnapshot.writeDoubles(out, lats);
+        GraphSnapshot.writeDoubles(out, lons);
+        GraphSnapshot.writeStrings(out, names);
+        GraphSnapshot.writeInts(out, offsets);
+        GraphSnapshot.writeInts(out, targets);
+        GraphSnapshot.writeDoubles(out, weights);
+        GraphSnapshot.writeInts(out, edgeNames);
+        GraphSnapshot.writeStrings(out, wayNames);
+        DataOutputStream classes = snapshot.section(GraphSnapshot.ROAD_CLASSES);
+        GraphSnapshot.writeBytes(classes, edgeClasses);
+        GraphSnapshot.writeBytes(classes, edgeSpeeds);
+        GraphSnapshot.writeLongs(snapshot.section(GraphSnapshot.TURN_RESTRICTIONS), bannedTurns);
+    }
+
+    private void startBuilding() {
+        pendingNodes = new HashMap<>();
+        pendingFrom = new long[1024];
+        pendingTo = new long[1024];
+        pendingName = new int[1024];
+        pendingClass = new byte[1024];
+        pendingSpeed = new byte[1024];
+        pendingEdges = 0;
+        wayNameIndex = new HashMap<>();
+        wayNameIndex.put(null, 0);
+        pendingRestrictions = new TurnRestrictions();
     }
 
     /** Adds a node to this graph, if it doesn't yet exist. **/
     void addNode(Node node) {
-        if (!nodes.containsKey(node.id())) {
-            nodes.put(node.id(), node);
-            neighbors.put(node.id(), new HashSet<>());
+        if (!pendingNodes.containsKey(node.id())) {
+            pendingNodes.put(node.id(), node);
         }
     }
 
-    /** Adds an edge to this graph, if FROMID and TOID are in this graph. Does
-     *  not add additional edge if edge already exists.
+    /** Adds an edge to this graph, if FROMID and TOID are in this graph,
+     *  on a way of RoadClass class ROADCLASS with speed SPEED in mph.
+     *  Duplicate edges are dropped when the graph is compacted.
      **/
-    void addWeightedEdge(long fromID, long toID, String name) {
-        if (nodes.containsKey(fromID) && nodes.containsKey(toID)) {
-            Node from = nodes.get(fromID);
-            Node to = nodes.get(toID);
-            double weight = distance(from.lon(), to.lon(), from.lat(), to.lat());
+    void addWeightedEdge(long fromID, long toID, String name, int roadClass, int speed) {
+        if (pendingNodes.containsKey(fromID) && pendingNodes.containsKey(toID)) {
+            if (pendingEdges == pendingFrom.length) {
+                pendingFrom = Arrays.copyOf(pendingFrom, pendingEdges * 2);
+                pendingTo = Arrays.copyOf(pendingTo, pendingEdges * 2);
+                pendingName = Arrays.copyOf(pendingName, pendingEdges * 2);
+                pendingClass = Arrays.copyOf(pendingClass, pendingEdges * 2);
+                pendingSpeed = Arrays.copyOf(pendingSpeed, pendingEdges * 2);
+            }
+            Integer nameIndex = wayNameIndex.get(name);
+            if (nameIndex == null) {
+                nameIndex = wayNameIndex.size();
+                wayNameIndex.put(name, nameIndex);
+            }
+            pendingFrom[pendingEdges] = fromID;
+            pendingTo[pendingEdges] = toID;
+            pendingName[pendingEdges] = nameIndex;
+            pendingClass[pendingEdges] = (byte) roadClass;
+            pendingSpeed[pendingEdges] = (byte) speed;
+            pendingEdges++;
+        }
+    }
+
+    /** Keeps the node refs of the accepted way with id ID for turn restrictions. */
+    void addWay(long id, long[] refs) {
+        pendingRestrictions.addWay(id, refs, 0, refs.length);
+    }
 
-            Set<WeightedEdge<Long>> edgeSet = neighbors.get(fromID);
-            WeightedEdge<Long> weightedEdge = new WeightedEdge<>(from.id(), to.id(), weight);
-            weightedEdge.setName(name);
-            edgeSet.add(weightedEdge);
+    /**
+     * Adds a turn restriction from way FROMWAY through node VIA onto way
+     * TOWAY, whose restriction tag is RESTRICTION.
+     */
+    void addTurnRestriction(long fromWay, long via, long toWay, String restriction) {
+        pendingRestrictions.add(fromWay, via, toWay, restriction);
+    }
+
+    /** Adds the turn restrictions of RESTRICTIONS, but not its ways. */
+    void addTurnRestrictions(TurnRestrictions restrictions) {
+        pendingRestrictions.addAll(restrictions);
+    }
+
+    /** Hands the build-time buffers to load() and drops them. */
+    private void compact() {
+        int n = pendingNodes.size();
+        long[] nodeIds = new long[n];
+        double[] nodeLats = new double[n];
+        double[] nodeLons = new double[n];
+        String[] nodeNames = new String[n];
+        int i = 0;
+        for (Node node : pendingNodes.values()) {
+            nodeIds[i] = node.id();
+            nodeLats[i] = node.lat();
+            nodeLons[i] = node.lon();
+            nodeNames[i] = node.name();
+            i++;
+        }
+        String[] nameTable = new String[wayNameIndex.size()];
+        for (Map.Entry<String, Integer> entry : wayNameIndex.entrySet()) {
+            nameTable[entry.getValue()] = entry.getKey();
         }
+        load(nodeIds, nodeLats, nodeLons, nodeNames, n,
+                pendingFrom, pendingTo, pendingName, pendingClass, pendingSpeed, pendingEdges,
+                nameTable);
+        restrictTurns(pendingRestrictions);
+
+        pendingNodes = null;
+        pendingFrom = null;
+        pendingTo = null;
+        pendingName = null;
+        pendingClass = null;
+        pendingSpeed = null;
+        wayNameIndex = null;
+        pendingRestrictions = null;
     }
 
     /**
-     * Removes vertices with 0 out-degree from graph. Note that this will
-     * cause issues if edges are not bidirectional.
-     **/
-    private void clean() {
-        List<Long> toRemove = new ArrayList<>();
-        for (long id : nodes.keySet()) {
-            if (neighbors(id).size() == 0 && nodes.get(id).name() == null) {
-                toRemove.add(id);
+     * Builds the CSR arrays from the first NUMNODES entries of the node arrays
+     * and the first NUMEDGES entries of the edge arrays. Edge i goes from the
+     * node with id FROM[i] to the node with id TO[i] along the way named
+     * NAMETABLE[WAYNAME[i]], of class ROADCLASS[i] and speed SPEED[i]. When
+     * an id appears more than once, its first occurrence wins; edges to
+     * unknown ids, repeated (from, to) pairs and self-loops, which a way
+     * repeating a node ref gives, are dropped. Vertices with 0 out-degree and
+     * no name are removed, as the old clean() did. Note that this will cause
+     * issues if edges are not bidirectional.
+     */
+    void load(long[] nodeIds, double[] nodeLats, double[] nodeLons, String[] nodeNames,
+              int numNodes, long[] from, long[] to, int[] wayName, byte[] roadClass,
+              byte[] speed, int numEdges, String[] nameTable) {
+        long[] sorted = Arrays.copyOf(nodeIds, numNodes);
+        Arrays.parallelSort(sorted);
+        int unique = 0;
+        for (int i = 0; i < numNodes; i++) {
+            if (unique == 0 || sorted[unique - 1] != sorted[i]) {
+                sorted[unique++] = sorted[i];
+            }
+        }
+        long[] all = Arrays.copyOf(sorted, unique);
+        int[] first = new int[unique];
+        Arrays.fill(first, -1);
+        for (int i = 0; i < numNodes; i++) {
+            int k = Arrays.binarySearch(all, nodeIds[i]);
+            if (first[k] < 0) {
+                first[k] = i;
+            }
+        }
+
+        /* Resolve edge endpoints against the sorted id table. */
+        int[] src = new int[numEdges];
+        int[] dst = new int[numEdges];
+        IntStream.range(0, numEdges).parallel().forEach(i -> {
+            src[i] = Arrays.binarySearch(all, from[i]);
+            dst[i] = Arrays.binarySearch(all, to[i]);
+        });
+        boolean[] keep = new boolean[unique];
+        for (int i = 0; i < numEdges; i++) {
+            if (src[i] >= 0 && dst[i] >= 0 && src[i] != dst[i]) {
+                keep[src[i]] = true;
+            }
+        }
+        int[] remap = new int[unique];
+        int n = 0;
+        for (int k = 0; k < unique; k++) {
+            if (keep[k] || nodeNames[first[k]] != null) {
+                remap[k] = n++;
+            } else {
+                remap[k] = -1;
+            }
+        }
+        ids = new long[n];
+        lats = new double[n];
+        lons = new double[n];
+        names = new String[n];
+        for (int k = 0; k < unique; k++) {
+            if (remap[k] >= 0) {
+                ids[remap[k]] = all[k];
+                lats[remap[k]] = nodeLats[first[k]];
+                lons[remap[k]] = nodeLons[first[k]];
+                names[remap[k]] = nodeNames[first[k]];
+            }
+        }
+
+        /* Counting sort of the edges by source index, keeping the order in
+           which they were read, then drop repeated (from, to) pairs. */
+        offsets = new int[n + 1];
+        for (int i = 0; i < numEdges; i++) {
+            if (src[i] >= 0 && dst[i] >= 0 && src[i] != dst[i]) {
+                src[i] = remap[src[i]];
+                dst[i] = remap[dst[i]];
+                offsets[src[i] + 1]++;
+            } else {
+                src[i] = -1;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] order = new int[offsets[n]];
+        int[] next = Arrays.copyOf(offsets, n);
+        for (int i = 0; i < numEdges; i++) {
+            if (src[i] >= 0) {
+                order[next[src[i]]++] = i;
+            }
+        }
+
+        targets = new int[order.length];
+        weights = new double[order.length];
+        edgeNames = new int[order.length];
+        edgeClasses = new byte[order.length];
+        edgeSpeeds = new byte[order.length];
+        int m = 0;
+        for (int v = 0; v < n; v++) {
+            int begin = m;
+            for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+                int i = order[k];
+                boolean duplicate = false;
+                for (int e = begin; e < m && !duplicate; e++) {
+                    duplicate = targets[e] == dst[i];
+                }
+                if (!duplicate) {
+                    targets[m] = dst[i];
+                    weights[m] = distance(lons[v], lons[dst[i]], lats[v], lats[dst[i]]);
+                    edgeNames[m] = wayName[i];
+                    edgeClasses[m] = roadClass[i];
+                    edgeSpeeds[m] = speed[i];
+                    m++;
+                }
+            }
+            offsets[v] = begin;
+        }
+        offsets[n] = m;
+        targets = Arrays.copyOf(targets, m);
+        weights = Arrays.copyOf(weights, m);
+        edgeNames = Arrays.copyOf(edgeNames, m);
+        edgeClasses = Arrays.copyOf(edgeClasses, m);
+        edgeSpeeds = Arrays.copyOf(edgeSpeeds, m);
+        wayNames = nameTable;
+        buildReverse();
+        buildProjection();
+        buildMaxSpeed();
+    }
+
+    private void buildMaxSpeed() {
+        maxSpeed = 1;
+        for (byte speed : edgeSpeeds) {
+            maxSpeed = Math.max(maxSpeed, speed & 0xFF);
+        }
+    }
+
+    /** Resolves RESTRICTIONS against the loaded graph into its banned turns. */
+    void restrictTurns(TurnRestrictions restrictions) {
+        bannedTurns = restrictions.bannedTurns(this);
+    }
+
+    /** Builds the incoming edge lists by a counting sort of the edges by target. */
+    private void buildReverse() {
+        int n = ids.length;
+        inOffsets = new int[n + 1];
+        for (int t : targets) {
+            inOffsets[t + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            inOffsets[v + 1] += inOffsets[v];
+        }
+        inEdges = new int[targets.length];
+        sources = new int[targets.length];
+        int[] next = Arrays.copyOf(inOffsets, n);
+        for (int v = 0; v < n; v++) {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int i = next[targets[e]]++;
+                inEdges[i] = e;
+                sources[i] = v;
             }
         }
+    }
 
-        for (long id : toRemove) {
-            nodes.remove(id);
-            neighbors.remove(id);
+    /**
+     * Projects every vertex onto a plane so that the straight-line distance
+     * between two projected vertices never exceeds their great-circle
+     * distance, which keeps estimatedDistance admissible. The haversine
+     * distance is 2R asin(sqrt(a)) with
+     *     a = sin^2(dphi / 2) + cos(phi1) cos(phi2) sin^2(dlambda / 2),
+     * and asin(x) >= x, cos(phi) >= C, the smallest cosine of a latitude in
+     * the graph, and sin(u) >= u (1 - U^2 / 6) for 0 <= u <= U, half the
+     * largest span of the graph in radians. Together these bound it from
+     * below by R k sqrt(dphi^2 + (C dlambda)^2), with k = 1 - U^2 / 6, which
+     * is the distance between (R k C lambda, R k phi) points.
+     */
+    private void buildProjection() {
+        int n = ids.length;
+        xs = new double[n];
+        ys = new double[n];
+        if (n == 0) {
+            return;
+        }
+        double minLat = lats[0];
+        double maxLat = lats[0];
+        double minLon = lons[0];
+        double maxLon = lons[0];
+        for (int v = 1; v < n; v++) {
+            minLat = Math.min(minLat, lats[v]);
+            maxLat = Math.max(maxLat, lats[v]);
+            minLon = Math.min(minLon, lons[v]);
+            maxLon = Math.max(maxLon, lons[v]);
+        }
+        double cos = Math.min(Math.cos(Math.toRadians(minLat)), Math.cos(Math.toRadians(maxLat)));
+        double halfSpan = Math.toRadians(Math.max(maxLat - minLat, maxLon - minLon)) / 2;
+        /* The last factor absorbs rounding in both computations. */
+        double k = Math.max(0, 1 - halfSpan * halfSpan / 6) * (1 - 1e-9);
+        for (int v = 0; v < n; v++) {
+            xs[v] = EARTH_RADIUS * k * cos * Math.toRadians(lons[v]);
+            ys[v] = EARTH_RADIUS * k * Math.toRadians(lats[v]);
         }
     }
 
@@ -188,7 +784,7 @@ public class StreetMapGraph implements AStarGraph<Long> {
         double a = Math.sin(dphi / 2.0) * Math.sin(dphi / 2.0);
         a += Math.cos(phi1) * Math.cos(phi2) * Math.sin(dlambda / 2.0) * Math.sin(dlambda / 2.0);
         double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        return 3963 * c;
+        return EARTH_RADIUS * c;
     }
 
     /**
@@ -197,10 +793,11 @@ public class StreetMapGraph implements AStarGraph<Long> {
      * @return The longitude of the vertex.
      */
     public double lon(long v) {
-        if (!nodes.containsKey(v)) {
+        int i = indexOf(v);
+        if (i < 0) {
             return 0.0;
         }
-        return nodes.get(v).lon();
+        return lons[i];
     }
 
     /**
@@ -209,10 +806,11 @@ public class StreetMapGraph implements AStarGraph<Long> {
      * @return The latitude of the vertex.
      */
     public double lat(long v) {
-        if (!nodes.containsKey(v)) {
+        int i = indexOf(v);
+        if (i < 0) {
             return 0.0;
         }
-        return nodes.get(v).lat();
+        return lats[i];
     }
 
     /**
@@ -221,16 +819,19 @@ public class StreetMapGraph implements AStarGraph<Long> {
      * @return The name of the vertex.
      */
     public String name(long v) {
-        if (!nodes.containsKey(v)) {
+        int i = indexOf(v);
+        if (i < 0) {
             return null;
         }
-        return nodes.get(v).name();
+        return names[i];
     }
 
     protected List<Node> getNodes() {
-        List<Node> nodes = new ArrayList<>();
-        for(Map.Entry<Long, Node> nodeEntry: this.nodes.entrySet()){
-            nodes.add(nodeEntry.getValue());
+        List<Node> nodes = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            Node node = Node.of(ids[i], lats[i], lons[i]);
+            node.setName(names[i]);
+            nodes.add(node);
         }
         return nodes;
     }
@@ -0,0 +1,108 @@
+package bearmaps.utils.graph.streetmap;
+
+import bearmaps.utils.graph.IndexedGraph;
+
+/**
+ * A StreetMapGraph whose edges weigh the seconds it takes to drive them.
+ * Everything but the weights is the graph's own. Without traffic the
+ * weights are computed from its lengths and speed bytes as they are asked
+ * for; with traffic they are the seconds StreetMapGraph.updateSpeeds
+ * computed, which never change once the graph is made. The estimate is the
+ * straight-line distance at the fastest speed of any edge, so it stays a
+ * lower bound on the travel time.
+ */
+public final class TravelTimeGraph implements IndexedGraph {
+    /** Seconds per mile at each speed byte; a speed of 0 only comes from a bad file. */
+    private static final double[] SECONDS_PER_MILE = new double[RoadClass.MAX_SPEED + 1];
+
+    static {
+        SECONDS_PER_MILE[0] = RoutingProfile.SECONDS_PER_HOUR;
+        for (int mph = 1; mph <= RoadClass.MAX_SPEED; mph++) {
+            SECONDS_PER_MILE[mph] = RoutingProfile.SECONDS_PER_HOUR / mph;
+        }
+    }
+
+    private final StreetMapGraph g;
+    /** Seconds of each edge under traffic, or null to use the speed bytes. */
+    private final double[] seconds;
+    private final double topSpeed;
+    private final double secondsPerMileAtTop;
+
+    /** Weighs G by SECONDS, or by its speeds if null; no edge is faster than TOPSPEED mph. */
+    TravelTimeGraph(StreetMapGraph g, double[] seconds, double topSpeed) {
+        this.g = g;
+        this.seconds = seconds;
+        this.topSpeed = topSpeed;
+        this.secondsPerMileAtTop = RoutingProfile.SECONDS_PER_HOUR / topSpeed;
+    }
+
+    /** Returns a speed in mph that no edge is faster than. */
+    public double topSpeed() {
+        return topSpeed;
+    }
+
+    /** Returns the fewest seconds it can take to drive MILES miles. */
+    public double leastSeconds(double miles) {
+        return miles * secondsPerMileAtTop;
+    }
+
+    @Override
+    public int numVertices() {
+        return g.numVertices();
+    }
+
+    @Override
+    public int indexOf(long id) {
+        return g.indexOf(id);
+    }
+
+    @Override
+    public long idOf(int v) {
+        return g.idOf(v);
+    }
+
+    @Override
+    public int outBegin(int v) {
+        return g.outBegin(v);
+    }
+
+    @Override
+    public int outEnd(int v) {
+        return g.outEnd(v);
+    }
+
+    @Override
+    public int inBegin(int v) {
+        return g.inBegin(v);
+    }
+
+    @Override
+    public int inEnd(int v) {
+        return g.inEnd(v);
+    }
+
+    @Override
+    public int inEdge(int i) {
+        return g.inEdge(i);
+    }
+
+    @Override
+    public int source(int i) {
+        return g.source(i);
+    }
+
+    @Override
+    public int target(int e) {
+        return g.target(e);
+    }
+
+    @Override
+    public double weight(int e) {
+        return seconds != null ? seconds[e] : g.weight(e) * SECONDS_PER_MILE[g.speed(e)];
+    }
+
+    @Override
+    public double estimatedDistance(int v, int goal) {
+        return g.estimatedDistance(v, goal) * secondsPerMileAtTop;
+    }
+}
@@ -0,0 +1,169 @@
+package bearmaps.utils.graph.streetmap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *  Turn restrictions collected from OSM relations while a file is read.
+ *  See <a href="https://wiki.openstreetmap.org/wiki/Relation:restriction">the
+ *  restriction relation</a>. A restriction names a from way, a via node and
+ *  a to way, and is either a no_* restriction, which bans turning from the
+ *  from way onto the to way at the via node, or an only_* restriction,
+ *  which bans every other turn off the from way there. Restrictions whose
+ *  via is a way are not supported and are dropped.
+ *
+ *  Relations usually come after the ways they name, so the node refs of
+ *  ways are kept by id until bannedTurns resolves the restrictions against
+ *  the loaded graph.
+ */
+class TurnRestrictions {
+    private final Map<Long, long[]> wayRefs = new HashMap<>();
+    /** Ways named by some restriction, so readers can skip keeping the rest. */
+    private final Set<Long> namedWays = new HashSet<>();
+    private long[] fromWays = new long[16];
+    private long[] vias = new long[16];
+    private long[] toWays = new long[16];
+    private boolean[] only = new boolean[16];
+    private int size;
+
+    /**
+     * Keeps the node refs REFS[from, to) of the way with id ID. REFS itself
+     * is kept if that is all of it, so the caller must not change it.
+     */
+    void addWay(long id, long[] refs, int from, int to) {
+        wayRefs.put(id, from == 0 && to == refs.length ? refs
+                : Arrays.copyOfRange(refs, from, to));
+    }
+
+    /** Returns true if some restriction added so far names the way with id ID. */
+    boolean names(long id) {
+        return namedWays.contains(id);
+    }
+
+    /**
+     * Adds the restriction from way FROMWAY through node VIA onto way TOWAY,
+     * whose restriction tag is RESTRICTION, such as no_left_turn. Tags that
+     * are neither no_* nor only_* are ignored.
+     */
+    void add(long fromWay, long via, long toWay, String restriction) {
+        if (restriction == null
+                || !restriction.startsWith("no_") && !restriction.startsWith("only_")) {
+            return;
+        }
+        if (size == vias.length) {
+            fromWays = Arrays.copyOf(fromWays, size * 2);
+            vias = Arrays.copyOf(vias, size * 2);
+            toWays = Arrays.copyOf(toWays, size * 2);
+            only = Arrays.copyOf(only, size * 2);
+        }
+        fromWays[size] = fromWay;
+        vias[size] = via;
+        toWays[size] = toWay;
+        only[size] = restriction.startsWith("only_");
+        size++;
+        namedWays.add(fromWay);
+        namedWays.add(toWay);
+    }
+
+    /** Adds the restrictions of OTHER, but not its ways. */
+    void addAll(TurnRestrictions other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.fromWays[i], other.vias[i], other.toWays[i],
+                    other.only[i] ? "only_" : "no_");
+        }
+    }
+
+    /** Returns the number of restrictions added. */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the turns of G that the restrictions ban, as sorted and
+     * distinct (in edge << 32 | out edge) pairs. Restrictions naming ways or
+     * nodes that did not make it into G are dropped.
+     */
+    long[] bannedTurns(StreetMapGraph g) {
+        long[] banned = new long[16];
+        int numBanned = 0;
+        for (int i = 0; i < size; i++) {
+            long[] from = wayRefs.get(fromWays[i]);
+            long[] to = wayRefs.get(toWays[i]);
+            int v = g.indexOf(vias[i]);
+            if (from == null || to == null || v < 0) {
+                continue;
+            }
+            for (long a : neighbors(from, vias[i])) {
+                int in = edge(g, g.indexOf(a), v);
+                if (in < 0) {
+                    continue;
+                }
+                long[] allowed = neighbors(to, vias[i]);
+                for (int out = g.outBegin(v); out < g.outEnd(v); out++) {
+                    boolean toWay = contains(allowed, g.idOf(g.target(out)));
+                    if (toWay != only[i]) {
+                        if (numBanned == banned.length) {
+                            banned = Arrays.copyOf(banned, numBanned * 2);
+                        }
+                        banned[numBanned++] = (long) in << 32 | out;
+                    }
+                }
+            }
+        }
+        Arrays.sort(banned, 0, numBanned);
+        int distinct = 0;
+        for (int i = 0; i < numBanned; i++) {
+            if (distinct == 0 || banned[distinct - 1] != banned[i]) {
+                banned[distinct++] = banned[i];
+            }
+        }
+        return Arrays.copyOf(banned, distinct);
+    }
+
+    /* Returns the nodes next to VIA along the way REFS. The via node of a
+       valid restriction ends both ways, but a node in the middle of a way
+       has a neighbor on each side, and both are kept. */
+    private static long[] neighbors(long[] refs, long via) {
+        long[] result = new long[2];
+        int n = 0;
+        for (int i = 0; i < refs.length; i++) {
+            if (refs[i] != via) {
+                continue;
+            }
+            for (int j : new int[]{i - 1, i + 1}) {
+                if (j >= 0 && j < refs.length && !contains(Arrays.copyOf(result, n), refs[j])) {
+                    if (n == result.length) {
+                        result = Arrays.copyOf(result, n * 2);
+                    }
+                    result[n++] = refs[j];
+                }
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /* Returns the edge from vertex index U to vertex index V, or -1. */
+    private static int edge(StreetMapGraph g, int u, int v) {
+        if (u < 0) {
+            return -1;
+        }
+        for (int e = g.outBegin(u); e < g.outEnd(u); e++) {
+            if (g.target(e) == v) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean contains(long[] values, long value) {
+        for (long x : values) {
+            if (x == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,123 @@
+package bearmaps.utils.graph.turn;
+
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.IndexedGraph;
+import bearmaps.utils.graph.LowerBound;
+import bearmaps.utils.graph.SearchWorkspace;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.pq.IntDaryHeap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A* whose states are the directed edges of an IndexedGraph rather than its
+ * vertices, so that the cost of going on from a vertex can depend on how
+ * the search got there. Following edge OUT after edge IN costs the weight of
+ * OUT plus the penalty TurnCosts gives the turn TurnTable classifies, and a
+ * banned turn is never taken. The heuristic of an edge is that of the
+ * vertex it leads to, which stays admissible since penalties are never
+ * negative.
+ *
+ * The search starts on every edge out of the start at no penalty and is
+ * done when it polls an edge into the end. There are a few times as many
+ * edges as vertices, so the states live in workspace slot 2 of this
+ * thread's SearchWorkspace, which is sized for the edges.
+ */
+public class EdgeBasedAStarSolver implements ShortestPathsSolver<Long> {
+    private SolverOutcome outcome;
+    private double timeSpan;
+    private double solutionWeight;
+    private List<Long> solution = Collections.emptyList();
+    private int numStatesExplored;
+
+    /**
+     * Solves from START to END in G, whose turns are TURNS, charging COSTS
+     * for them. Gives up with TIMEOUT once DEADLINE expires.
+     */
+    public EdgeBasedAStarSolver(IndexedGraph g, TurnTable turns, TurnCosts costs,
+                                LowerBound heuristic, long start, long end, Deadline deadline) {
+        long began = System.nanoTime();
+        int polls = 0;
+        int from = g.indexOf(start);
+        int to = g.indexOf(end);
+        outcome = SolverOutcome.UNSOLVABLE;
+        if (from < 0 || to < 0) {
+            timeSpan = (System.nanoTime() - began) / 1e9;
+            return;
+        }
+        if (from == to) {
+            outcome = SolverOutcome.SOLVED;
+            solution = Collections.singletonList(start);
+            timeSpan = (System.nanoTime() - began) / 1e9;
+            return;
+        }
+        int numEdges = g.numVertices() == 0 ? 0 : g.outEnd(g.numVertices() - 1);
+        SearchWorkspace w = SearchWorkspace.acquire(numEdges, 2);
+        IntDaryHeap pq = w.heap();
+        for (int e = g.outBegin(from); e < g.outEnd(from); e++) {
+            w.set(e, g.weight(e), -1);
+            pq.insertOrChange(e, g.weight(e) + heuristic.lowerBound(g.target(e), to));
+            numStatesExplored++;
+        }
+        while (!pq.isEmpty()) {
+            int in = pq.poll();
+            if (deadline.check(++polls)) {
+                outcome = SolverOutcome.TIMEOUT;
+                break;
+            }
+            int v = g.target(in);
+            if (v == to) {
+                outcome = SolverOutcome.SOLVED;
+                solutionWeight = w.dist(in);
+                List<Long> path = new ArrayList<>();
+                for (int e = in; e != -1; e = w.parent(e)) {
+                    path.add(g.idOf(g.target(e)));
+                }
+                path.add(start);
+                Collections.reverse(path);
+                solution = path;
+                break;
+            }
+            double d = w.dist(in);
+            for (int out = g.outBegin(v); out < g.outEnd(v); out++) {
+                double penalty = costs.penalty(turns.turn(in, out));
+                if (penalty == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+                double nd = d + penalty + g.weight(out);
+                if (!w.reached(out)) {
+                    numStatesExplored++;
+                } else if (nd >= w.dist(out)) {
+                    continue;
+                }
+                w.set(out, nd, in);
+                pq.insertOrChange(out, nd + heuristic.lowerBound(g.target(out), to));
+            }
+        }
+        timeSpan = (System.nanoTime() - began) / 1e9;
+    }
+
+    public SolverOutcome outcome() {
+        return outcome;
+    }
+
+    /** Returns the vertices of the route; a vertex may repeat if a U-turn or loop paid off. */
+    public List<Long> solution() {
+        return solution;
+    }
+
+    public double solutionWeight() {
+        return solutionWeight;
+    }
+
+    public int numStatesExplored() {
+        return numStatesExplored;
+    }
+
+    public double explorationTime() {
+        return timeSpan;
+    }
+}
@@ -0,0 +1,62 @@
+package bearmaps.utils.graph.turn;
+
+import bearmaps.Router.NavigationDirection;
+import bearmaps.utils.graph.streetmap.RoutingProfile;
+
+/**
+ * The penalty of each kind of turn in TurnTable, in the unit of the edge
+ * weights, so a search can add it to the weight of the edge it turns onto:
+ * miles for the SHORTEST profile, which is the default, and seconds for
+ * FASTEST. A banned turn always costs infinity.
+ */
+public class TurnCosts {
+    /** Miles a second of waiting is worth, at the 25 mph of a city street. */
+    public static final double MILES_PER_SECOND = 25.0 / 3600;
+
+    /**
+     * Seconds lost to each turn, roughly: crossing traffic to turn left costs
+     * more than turning right, and a U-turn most of all.
+     */
+    public static final TurnCosts DEFAULT = ofSeconds(0, 2, 2, 5, 15, 20, 10, 30);
+
+    /** No penalty for any turn, but still no banned ones. */
+    public static final TurnCosts RESTRICTIONS_ONLY = ofSeconds(0, 0, 0, 0, 0, 0, 0, 0);
+
+    private final double[] seconds;
+    private final double[] penalty;
+
+    private TurnCosts(double[] seconds, double scale) {
+        this.seconds = seconds;
+        penalty = new double[seconds.length];
+        for (int t = 0; t < penalty.length; t++) {
+            penalty[t] = seconds[t] * scale;
+        }
+        penalty[TurnTable.BANNED] = Double.POSITIVE_INFINITY;
+    }
+
+    /** Returns the costs, in miles, of turns that lose the given number of seconds. */
+    public static TurnCosts ofSeconds(double straight, double slightLeft, double slightRight,
+                                      double right, double left, double sharpLeft,
+                                      double sharpRight, double uTurn) {
+        double[] seconds = new double[TurnTable.NUM_TURNS];
+        seconds[NavigationDirection.STRAIGHT] = straight;
+        seconds[NavigationDirection.SLIGHT_LEFT] = slightLeft;
+        seconds[NavigationDirection.SLIGHT_RIGHT] = slightRight;
+        seconds[NavigationDirection.RIGHT] = right;
+        seconds[NavigationDirection.LEFT] = left;
+        seconds[NavigationDirection.SHARP_LEFT] = sharpLeft;
+        seconds[NavigationDirection.SHARP_RIGHT] = sharpRight;
+        seconds[TurnTable.U_TURN] = uTurn;
+        return new TurnCosts(seconds, MILES_PER_SECOND);
+    }
+
+    /** Returns the same costs in the unit PROFILE weighs edges in. */
+    public TurnCosts in(RoutingProfile profile) {
+        return new TurnCosts(seconds, profile == RoutingProfile.FASTEST ? 1 : MILES_PER_SECOND);
+    }
+
+    /** Returns the penalty of TURN, one of the turns of TurnTable. */
+    public double penalty(int turn) {
+        return penalty[turn];
+    }
+}
@@ -0,0 +1,140 @@
+package bearmaps.utils.graph.turn;
+
+import bearmaps.Router.NavigationDirection;
+import bearmaps.utils.graph.streetmap.StreetMapGraph;
+
+/**
+ * The kind of every turn of a StreetMapGraph, from an edge into a vertex
+ * onto an edge out of it: one of the NavigationDirection directions by the
+ * bearings of the two edges, U_TURN if it goes back where it came from, or
+ * BANNED if a turn restriction forbids it.
+ *
+ * Only intersections, vertices with at least three neighbors or a banned
+ * turn, get a table, one byte per pair of incoming and outgoing edges.
+ * Every other vertex is a bend or a dead end on a single road, where a
+ * turn is either following the road, which counts as STRAIGHT however the
+ * road curves, or a U-turn. Most vertices of a street graph are of that
+ * kind, so the tables take a fraction of what one per vertex would.
+ */
+public class TurnTable {
+    public static final int U_TURN = NavigationDirection.NUM_DIRECTIONS;
+    public static final int BANNED = U_TURN + 1;
+    /** Number of kinds of turn, so codes are in [0, NUM_TURNS). */
+    public static final int NUM_TURNS = BANNED + 1;
+
+    private final StreetMapGraph g;
+    /** Start of the table of vertex v in turns, or -1 if v has none. */
+    private final int[] tableAt;
+    /**
+     * The turn into vertex v by its incoming edge at in position
+     * inBegin(v) + i and out by edge e is turns[tableAt[v] + i * outDegree
+     * + (e - outBegin(v))].
+     */
+    private final byte[] turns;
+    private final int numTables;
+
+    private TurnTable(StreetMapGraph g, int[] tableAt, byte[] turns, int numTables) {
+        this.g = g;
+        this.tableAt = tableAt;
+        this.turns = turns;
+        this.numTables = numTables;
+    }
+
+    /** Classifies the turns at every intersection of G. */
+    public static TurnTable build(StreetMapGraph g) {
+        int n = g.numVertices();
+        int[] tableAt = new int[n];
+        int size = 0;
+        int numTables = 0;
+        for (int v = 0; v < n; v++) {
+            if (isIntersection(g, v)) {
+                tableAt[v] = size;
+                size += (g.inEnd(v) - g.inBegin(v)) * (g.outEnd(v) - g.outBegin(v));
+                numTables++;
+            } else {
+                tableAt[v] = -1;
+            }
+        }
+        byte[] turns = new byte[size];
+        for (int v = 0; v < n; v++) {
+            if (tableAt[v] < 0) {
+                continue;
+            }
+            int k = tableAt[v];
+            for (int i = g.inBegin(v); i < g.inEnd(v); i++) {
+                int u = g.source(i);
+                double in = NavigationDirection.bearing(g.lonAt(u), g.lonAt(v),
+                        g.latAt(u), g.latAt(v));
+                for (int e = g.outBegin(v); e < g.outEnd(v); e++) {
+                    int w = g.target(e);
+                    int turn;
+                    if (g.turnBanned(g.inEdge(i), e)) {
+                        turn = BANNED;
+                    } else if (w == u) {
+                        turn = U_TURN;
+                    } else {
+                        turn = NavigationDirection.getDirection(in, NavigationDirection.bearing(
+                                g.lonAt(v), g.lonAt(w), g.latAt(v), g.latAt(w)));
+                    }
+                    turns[k++] = (byte) turn;
+                }
+            }
+        }
+        return new TurnTable(g, tableAt, turns, numTables);
+    }
+
+    /* Returns true if V has at least three distinct neighbors or a banned turn. */
+    private static boolean isIntersection(StreetMapGraph g, int v) {
+        int first = -1;
+        int second = -1;
+        for (int i = g.inBegin(v); i < g.inEnd(v); i++) {
+            for (int e = g.outBegin(v); e < g.outEnd(v); e++) {
+                if (g.turnBanned(g.inEdge(i), e)) {
+                    return true;
+                }
+            }
+        }
+        for (int pass = 0; pass < 2; pass++) {
+            int begin = pass == 0 ? g.outBegin(v) : g.inBegin(v);
+            int end = pass == 0 ? g.outEnd(v) : g.inEnd(v);
+            for (int k = begin; k < end; k++) {
+                int w = pass == 0 ? g.target(k) : g.source(k);
+                if (first == -1 || first == w) {
+                    first = w;
+                } else if (second == -1 || second == w) {
+                    second = w;
+                } else {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the kind of turn from edge IN onto edge OUT, which must leave
+     * the vertex IN leads to.
+     */
+    public int turn(int in, int out) {
+        int v = g.target(in);
+        int i = g.inBegin(v);
+        while (g.inEdge(i) != in) {
+            i++;
+        }
+        if (tableAt[v] < 0) {
+            return g.target(out) == g.source(i) ? U_TURN : NavigationDirection.STRAIGHT;
+        }
+        int outDegree = g.outEnd(v) - g.outBegin(v);
+        return turns[tableAt[v] + (i - g.inBegin(v)) * outDegree + (out - g.outBegin(v))];
+    }
+
+    /** Returns the number of vertices with a table. */
+    public int numIntersections() {
+        return numTables;
+    }
+
+    /** Returns the number of turns kept in tables. */
+    public int numTurns() {
+        return turns.length;
+    }
+}
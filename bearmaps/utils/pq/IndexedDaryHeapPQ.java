@@ -0,0 +1,135 @@
+package bearmaps.utils.pq;
+
+import bearmaps.utils.graph.PriorityQueue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.NoSuchElementException;
+
+/* A PriorityQueue backed by a 4-ary min heap that also maps every item to
+   its position in the heap. contains is O(1), and insert, poll and
+   changePriority are O(log n), where MinHeapPQ scans the whole heap for
+   contains and changePriority. A 4-ary heap is half as deep as a binary
+   one and keeps the children of a node next to each other in memory. */
+public class IndexedDaryHeapPQ<T> implements PriorityQueue<T> {
+    private static final int D = 4;
+
+    private Object[] items = new Object[16];
+    private double[] priorities = new double[16];
+    private int size;
+    private HashMap<T, Integer> positions = new HashMap<>();
+
+    /* Returns the item with the smallest priority value, but does not remove
+       it. Throws a NoSuchElementException if the queue is empty. */
+    public T peek() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return item(0);
+    }
+
+    /* Inserts ITEM with the priority value PRIORITYVALUE. If ITEM is already
+       in the queue, throw an IllegalArgumentException. */
+    public void insert(T item, double priorityValue) {
+        if (positions.containsKey(item)) {
+            throw new IllegalArgumentException("Already contains " + item);
+        }
+        if (size == items.length) {
+            items = Arrays.copyOf(items, 2 * size);
+            priorities = Arrays.copyOf(priorities, 2 * size);
+        }
+        size++;
+        siftUp(size - 1, item, priorityValue);
+    }
+
+    /* Returns and removes the item with the smallest priority value. Throws a
+       NoSuchElementException if the queue is empty. */
+    public T poll() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        T min = item(0);
+        positions.remove(min);
+        size--;
+        if (size > 0) {
+            T last = item(size);
+            double lastPriority = priorities[size];
+            items[size] = null;
+            siftDown(0, last, lastPriority);
+        } else {
+            items[0] = null;
+        }
+        return min;
+    }
+
+    /* Changes the priority value of ITEM to PRIORITYVALUE, in either
+       direction. If ITEM is not in the queue, throw a NoSuchElementException. */
+    public void changePriority(T item, double priorityValue) {
+        Integer position = positions.get(item);
+        if (position == null) {
+            throw new NoSuchElementException();
+        }
+        if (priorityValue < priorities[position]) {
+            siftUp(position, item, priorityValue);
+        } else {
+            siftDown(position, item, priorityValue);
+        }
+    }
+
+    /* Returns the number of items in the queue. */
+    public int size() {
+        return size;
+    }
+
+    /* Returns true if ITEM is in the queue. */
+    public boolean contains(T item) {
+        return positions.containsKey(item);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T item(int position) {
+        return (T) items[position];
+    }
+
+    /* Moves ITEM with PRIORITY up from POSITION to where it belongs. */
+    private void siftUp(int position, T item, double priority) {
+        while (position > 0) {
+            int parent = (position - 1) / D;
+            if (priorities[parent] <= priority) {
+                break;
+            }
+            place(position, item(parent), priorities[parent]);
+            position = parent;
+        }
+        place(position, item, priority);
+    }
+
+    /* Moves ITEM with PRIORITY down from POSITION to where it belongs. */
+    private void siftDown(int position, T item, double priority) {
+        while (true) {
+            int first = D * position + 1;
+            if (first >= size) {
+                break;
+            }
+            int min = first;
+            int last = Math.min(first + D, size);
+            for (int c = first + 1; c < last; c++) {
+                if (priorities[c] < priorities[min]) {
+                    min = c;
+                }
+            }
+            if (priorities[min] >= priority) {
+                break;
+            }
+            place(position, item(min), priorities[min]);
+            position = min;
+        }
+        place(position, item, priority);
+    }
+
+    private void place(int position, T item, double priority) {
+        items[position] = item;
+        priorities[position] = priority;
+        positions.put(item, position);
+    }
+}
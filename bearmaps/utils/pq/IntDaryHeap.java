@@ -0,0 +1,156 @@
+package bearmaps.utils.pq;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/* A 4-ary min heap of int items in [0, capacity), such as the vertex indices
+   of an IndexedGraph, each with a double key. Positions are kept in an int
+   array indexed by item instead of a map, so no operation allocates and
+   contains is a single array read. */
+public class IntDaryHeap {
+    private static final int D = 4;
+
+    private final int[] heap;
+    private final double[] keys;
+    /* Position of each item in heap, or -1 if it is not in the heap. */
+    private final int[] positions;
+    private int size;
+
+    /* Creates an empty heap for items in [0, CAPACITY). */
+    public IntDaryHeap(int capacity) {
+        heap = new int[capacity];
+        keys = new double[capacity];
+        positions = new int[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    /* Returns the number of items in the heap. */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /* Returns true if ITEM is in the heap. */
+    public boolean contains(int item) {
+        return positions[item] >= 0;
+    }
+
+    /* Returns the key of ITEM, which must be in the heap. */
+    public double key(int item) {
+        return keys[positions[item]];
+    }
+
+    /* Inserts ITEM with KEY. If ITEM is already in the heap, throw an
+       IllegalArgumentException. */
+    public void insert(int item, double key) {
+        if (positions[item] >= 0) {
+            throw new IllegalArgumentException("Already contains " + item);
+        }
+        size++;
+        siftUp(size - 1, item, key);
+    }
+
+    /* Changes the key of ITEM to KEY, in either direction. If ITEM is not in
+       the heap, throw a NoSuchElementException. */
+    public void changeKey(int item, double key) {
+        int position = positions[item];
+        if (position < 0) {
+            throw new NoSuchElementException();
+        }
+        if (key < keys[position]) {
+            siftUp(position, item, key);
+        } else {
+            siftDown(position, item, key);
+        }
+    }
+
+    /* Inserts ITEM with KEY, or changes its key if it is already in the heap. */
+    public void insertOrChange(int item, double key) {
+        if (positions[item] >= 0) {
+            changeKey(item, key);
+        } else {
+            insert(item, key);
+        }
+    }
+
+    /* Returns the item with the smallest key without removing it. */
+    public int peek() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return heap[0];
+    }
+
+    /* Returns the smallest key. */
+    public double peekKey() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return keys[0];
+    }
+
+    /* Returns and removes the item with the smallest key. */
+    public int poll() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        int min = heap[0];
+        positions[min] = -1;
+        size--;
+        if (size > 0) {
+            siftDown(0, heap[size], keys[size]);
+        }
+        return min;
+    }
+
+    /* Removes every item. Takes time proportional to the items left. */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int position, int item, double key) {
+        while (position > 0) {
+            int parent = (position - 1) / D;
+            if (keys[parent] <= key) {
+                break;
+            }
+            place(position, heap[parent], keys[parent]);
+            position = parent;
+        }
+        place(position, item, key);
+    }
+
+    private void siftDown(int position, int item, double key) {
+        while (true) {
+            int first = D * position + 1;
+            if (first >= size) {
+                break;
+            }
+            int min = first;
+            int last = Math.min(first + D, size);
+            for (int c = first + 1; c < last; c++) {
+                if (keys[c] < keys[min]) {
+                    min = c;
+                }
+            }
+            if (keys[min] >= key) {
+                break;
+            }
+            place(position, heap[min], keys[min]);
+            position = min;
+        }
+        place(position, item, key);
+    }
+
+    private void place(int position, int item, double key) {
+        heap[position] = item;
+        keys[position] = key;
+        positions[item] = position;
+    }
+}
@@ -0,0 +1,42 @@
+package bearmaps.utils.pq;
+
+import bearmaps.utils.graph.IndexedGraph;
+import bearmaps.utils.graph.PriorityQueue;
+
+/* A PriorityQueue of the vertex ids of an IndexedGraph, backed by an
+   IntDaryHeap over their indices, so AStarSolver<Long> can run on the
+   primitive heap. Ids are mapped to indices with IndexedGraph.indexOf. */
+public class VertexIndexPQ implements PriorityQueue<Long> {
+    private final IndexedGraph graph;
+    private final IntDaryHeap heap;
+
+    public VertexIndexPQ(IndexedGraph graph) {
+        this.graph = graph;
+        this.heap = new IntDaryHeap(graph.numVertices());
+    }
+
+    public Long peek() {
+        return graph.idOf(heap.peek());
+    }
+
+    public void insert(Long item, double priorityValue) {
+        heap.insert(graph.indexOf(item), priorityValue);
+    }
+
+    public Long poll() {
+        return graph.idOf(heap.poll());
+    }
+
+    public void changePriority(Long item, double priorityValue) {
+        heap.changeKey(graph.indexOf(item), priorityValue);
+    }
+
+    public int size() {
+        return heap.size();
+    }
+
+    public boolean contains(Long item) {
+        int v = graph.indexOf(item);
+        return v >= 0 && heap.contains(v);
+    }
+}
@@ -0,0 +1,140 @@
+package bearmaps.utils.ps;
+
+/**
+ * KD-tree over points identified by int ids, stored implicitly in arrays:
+ * the subtree for the range [lo, hi) of tree has its root at the middle of
+ * the range and splits on x at even depths and y at odd depths. Since the
+ * whole tree is the permutation order(), it can be persisted and rebuilt in
+ * linear time with ofOrder. Distances are haversine, with x as longitude
+ * and y as latitude, like Point.distance.
+ */
+public class KDTreePointSet implements PointSet {
+    private final int[] tree;
+    private final double[] xs;
+    private final double[] ys;
+
+    /** Builds a tree over the points IDS, where point i is at (X[i], Y[i]). */
+    public KDTreePointSet(int[] ids, double[] x, double[] y) {
+        this(ids.clone(), x, y, true);
+    }
+
+    private KDTreePointSet(int[] tree, double[] x, double[] y, boolean build) {
+        this.tree = tree;
+        if (build) {
+            build(0, tree.length, true, x, y);
+        }
+        xs = new double[tree.length];
+        ys = new double[tree.length];
+        for (int i = 0; i < tree.length; i++) {
+            xs[i] = x[tree[i]];
+            ys[i] = y[tree[i]];
+        }
+    }
+
+    /** Recreates a tree from a permutation previously returned by order(). */
+    public static KDTreePointSet ofOrder(int[] order, double[] x, double[] y) {
+        return new KDTreePointSet(order, x, y, false);
+    }
+
+    /** Returns the ids in tree order, for persisting this tree. */
+    public int[] order() {
+        return tree;
+    }
+
+    /** Returns the number of points in this set. */
+    public int size() {
+        return tree.length;
+    }
+
+    @Override
+    public Point nearest(double x, double y) {
+        int i = nearestPosition(x, y);
+        return i < 0 ? null : new Point(xs[i], ys[i]);
+    }
+
+    /** Returns the id of the point closest to (X, Y), or -1 if the set is empty. */
+    public int nearestId(double x, double y) {
+        int i = nearestPosition(x, y);
+        return i < 0 ? -1 : tree[i];
+    }
+
+    private int nearestPosition(double x, double y) {
+        if (tree.length == 0) {
+            return -1;
+        }
+        double[] best = {-1, Double.POSITIVE_INFINITY};
+        nearest(0, tree.length, true, x, y, best);
+        return (int) best[0];
+    }
+
+    /* BEST holds the position of the closest point found so far and its distance. */
+    private void nearest(int lo, int hi, boolean splitX, double x, double y, double[] best) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        double d = Point.distance(x, xs[mid], y, ys[mid]);
+        if (d < best[1]) {
+            best[0] = mid;
+            best[1] = d;
+        }
+        boolean goLeft = splitX ? x < xs[mid] : y < ys[mid];
+        if (goLeft) {
+            nearest(lo, mid, !splitX, x, y, best);
+        } else {
+            nearest(mid + 1, hi, !splitX, x, y, best);
+        }
+        double toSplit = splitX ? Point.distance(x, xs[mid], y, y)
+                : Point.distance(x, x, y, ys[mid]);
+        if (toSplit < best[1]) {
+            if (goLeft) {
+                nearest(mid + 1, hi, !splitX, x, y, best);
+            } else {
+                nearest(lo, mid, !splitX, x, y, best);
+            }
+        }
+    }
+
+    /* Arranges tree[lo, hi) so that its middle element is the median along the
+       split axis, then recurses on both halves. */
+    private void build(int lo, int hi, boolean splitX, double[] x, double[] y) {
+        if (hi - lo <= 1) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, splitX ? x : y);
+        build(lo, mid, !splitX, x, y);
+        build(mid + 1, hi, !splitX, x, y);
+    }
+
+    /* Quickselect: moves the K-th smallest of tree[lo..hi] by KEY into position K. */
+    private void select(int lo, int hi, int k, double[] key) {
+        while (hi > lo) {
+            double pivot = key[tree[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (key[tree[i]] < pivot) {
+                    i++;
+                }
+                while (key[tree[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = tree[i];
+                    tree[i] = tree[j];
+                    tree[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+}
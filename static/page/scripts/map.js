@@ -167,12 +167,19 @@ $(function() {
     }
 
     function updateRoute() {
+        /* Send the token of the route this one replaces, so the server can drop it. */
         $.get({
             async: true,
             url: route_server,
-            data: route_params,
+            data: $.extend({route_token: params.route_token}, route_params),
             success: function(data) {
                 data = JSON.parse(data);
+                /* /raster draws the route whose token it is sent with the params. */
+                if (data.route_token) {
+                    params.route_token = data.route_token;
+                } else {
+                    delete params.route_token;
+                }
                 updateImg();
                 if (data.directions_success) {
                     $directionsText.html(data.directions);
@@ -407,7 +414,9 @@ $(function() {
         $.get({
             async: true,
             url: clear_route,
+            data: {route_token: params.route_token},
             success: function() {
+                delete params.route_token;
                 dest.style.visibility = 'hidden';
                 $directionsText.html('No routing directions to display.');
                 update();